@@ -0,0 +1,77 @@
+package avl.benchmark;
+
+import avl.AvlTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the search throughput of trees ordered by a general comparator, by the natural
+ * ordering and by an int key extractor
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComparatorBenchmark {
+
+  private static final int NUMBER_OF_ACCESSES = 1 << 20;
+
+  @Param({"1000", "1000000"})
+  public int size;
+
+  @Param({"COMPARATOR", "NATURAL_ORDER", "INT_KEY"})
+  public String ordering;
+
+  private AvlTree<Integer> avlTree;
+  private Integer[] accessedKeys;
+  private int nextAccess;
+
+  @Setup(Level.Trial)
+  public void createTree() {
+    switch (ordering) {
+      case "NATURAL_ORDER":
+        avlTree = AvlTree.naturalOrder();
+        break;
+      case "INT_KEY":
+        avlTree = AvlTree.comparingInt(key -> key);
+        break;
+      default:
+        avlTree = new AvlTree<>(Comparator.comparingInt((Integer key) -> key));
+        break;
+    }
+
+    Random random = new Random(1);
+    Integer[] keys = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = random.nextInt();
+      avlTree.insert(keys[i]);
+    }
+    accessedKeys = new Integer[NUMBER_OF_ACCESSES];
+    for (int i = 0; i < NUMBER_OF_ACCESSES; i++) {
+      accessedKeys[i] = keys[random.nextInt(size)];
+    }
+  }
+
+  @Benchmark
+  public boolean search() {
+    Integer key = accessedKeys[nextAccess];
+    nextAccess = (nextAccess + 1) & (NUMBER_OF_ACCESSES - 1);
+    return avlTree.contains(key);
+  }
+}
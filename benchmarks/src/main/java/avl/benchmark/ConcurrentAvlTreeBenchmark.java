@@ -0,0 +1,84 @@
+package avl.benchmark;
+
+import avl.AvlTree;
+import avl.ConcurrentAvlTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a 95% read, 5% write workload from every thread against a ConcurrentAvlTree and against an
+ * AvlTree guarded by synchronized. Run it with -t 1, 2, 4, ... to see how reads scale.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class ConcurrentAvlTreeBenchmark {
+
+  private static final int READ_PERCENTAGE = 95;
+
+  @Param({"100000", "1000000"})
+  public int treeSize;
+
+  private ConcurrentAvlTree<Integer> concurrentAvlTree;
+  private AvlTree<Integer> synchronizedAvlTree;
+
+  @Setup
+  public void createTrees() {
+    concurrentAvlTree = new ConcurrentAvlTree<>(Comparator.naturalOrder());
+    synchronizedAvlTree = new AvlTree<>(Comparator.naturalOrder());
+    for (int item = 0; item < treeSize; item += 2) {
+      concurrentAvlTree.insert(item);
+      synchronizedAvlTree.insert(item);
+    }
+  }
+
+  @Benchmark
+  public boolean concurrentAvlTree() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int item = random.nextInt(treeSize);
+    int operation = random.nextInt(100);
+    if (operation < READ_PERCENTAGE) {
+      return concurrentAvlTree.contains(item);
+    } else if (operation % 2 == 0) {
+      concurrentAvlTree.insert(item);
+    } else {
+      concurrentAvlTree.delete(item);
+    }
+    return false;
+  }
+
+  @Benchmark
+  public boolean synchronizedAvlTree() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int item = random.nextInt(treeSize);
+    int operation = random.nextInt(100);
+    synchronized (synchronizedAvlTree) {
+      if (operation < READ_PERCENTAGE) {
+        return synchronizedAvlTree.contains(item);
+      } else if (operation % 2 == 0) {
+        synchronizedAvlTree.insert(item);
+      } else {
+        synchronizedAvlTree.delete(item);
+      }
+    }
+    return false;
+  }
+}
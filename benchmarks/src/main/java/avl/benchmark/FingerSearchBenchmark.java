@@ -0,0 +1,92 @@
+package avl.benchmark;
+
+import avl.AvlTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compares operations that start at the top with the same operations through a cursor, for
+ * access patterns with key locality: appending almost sorted timestamps, which arrive up to
+ * JITTER positions out of order, and searching neighbouring keys of a tree of the given size
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FingerSearchBenchmark {
+
+  private static final int JITTER = 16;
+
+  @Param({"1000", "1000000"})
+  public int size;
+
+  private AvlTree<Long> appendTree;
+  private AvlTree<Long>.Cursor appendCursor;
+  private long nextTimestamp;
+  private Random random;
+
+  private AvlTree<Integer> lookupTree;
+  private AvlTree<Integer>.Cursor lookupCursor;
+  private int nextKey;
+
+  @Setup(Level.Trial)
+  public void createLookupTree() {
+    lookupTree = AvlTree.naturalOrder();
+    lookupTree.bulkLoad(IntStream.range(0, size).boxed());
+    lookupCursor = lookupTree.cursor();
+  }
+
+  @Setup(Level.Iteration)
+  public void createAppendTree() {
+    appendTree = AvlTree.naturalOrder();
+    appendCursor = appendTree.cursor();
+    nextTimestamp = 0;
+    random = new Random(1);
+  }
+
+  @Benchmark
+  public void appendFromTop() {
+    appendTree.insert(nextTimestamp());
+  }
+
+  @Benchmark
+  public void appendWithCursor() {
+    appendCursor.insert(nextTimestamp());
+  }
+
+  @Benchmark
+  public boolean searchNeighbourFromTop() {
+    return lookupTree.contains(nextKey());
+  }
+
+  @Benchmark
+  public boolean searchNeighbourWithCursor() {
+    return lookupCursor.contains(nextKey());
+  }
+
+  private Long nextTimestamp() {
+    nextTimestamp += JITTER;
+    return nextTimestamp - random.nextInt(JITTER) * JITTER + random.nextInt(JITTER);
+  }
+
+  private Integer nextKey() {
+    nextKey = (nextKey + 1 == size) ? 0 : nextKey + 1;
+    return nextKey;
+  }
+}
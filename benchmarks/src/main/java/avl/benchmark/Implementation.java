@@ -0,0 +1,194 @@
+package avl.benchmark;
+
+import avl.AvlMap;
+import avl.AvlTree;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Ordered structures compared by the benchmarks, behind a common interface. JMH runs every value
+ * of a parameter in its own fork, so the calls through the interface stay monomorphic.
+ */
+public enum Implementation {
+
+  AVL_TREE {
+    @Override
+    public OrderedKeySet create(Integer[] keys) {
+      AvlTree<Integer> avlTree = new AvlTree<>(Comparator.naturalOrder());
+      avlTree.insertAll(Arrays.asList(keys));
+      return new OrderedKeySet() {
+        @Override
+        public void insert(Integer key) {
+          avlTree.insert(key);
+        }
+
+        @Override
+        public boolean contains(Integer key) {
+          return avlTree.contains(key);
+        }
+
+        @Override
+        public void delete(Integer key) {
+          avlTree.delete(key);
+        }
+
+        @Override
+        public Integer successor(Integer key) {
+          return avlTree.higher(key);
+        }
+
+        @Override
+        public long sum() {
+          long sum = 0;
+          for (Integer key : avlTree) {
+            sum += key;
+          }
+          return sum;
+        }
+      };
+    }
+  },
+
+  AVL_MAP {
+    @Override
+    public OrderedKeySet create(Integer[] keys) {
+      AvlMap<Integer, Boolean> avlMap = new AvlMap<>();
+      for (Integer key : keys) {
+        avlMap.put(key, Boolean.TRUE);
+      }
+      return new OrderedKeySet() {
+        @Override
+        public void insert(Integer key) {
+          avlMap.put(key, Boolean.TRUE);
+        }
+
+        @Override
+        public boolean contains(Integer key) {
+          return avlMap.containsKey(key);
+        }
+
+        @Override
+        public void delete(Integer key) {
+          avlMap.remove(key);
+        }
+
+        @Override
+        public Integer successor(Integer key) {
+          return avlMap.higherKey(key);
+        }
+
+        @Override
+        public long sum() {
+          long sum = 0;
+          for (Integer key : avlMap.keySet()) {
+            sum += key;
+          }
+          return sum;
+        }
+      };
+    }
+  },
+
+  TREE_MAP {
+    @Override
+    public OrderedKeySet create(Integer[] keys) {
+      TreeMap<Integer, Boolean> treeMap = new TreeMap<>();
+      for (Integer key : keys) {
+        treeMap.put(key, Boolean.TRUE);
+      }
+      return new OrderedKeySet() {
+        @Override
+        public void insert(Integer key) {
+          treeMap.put(key, Boolean.TRUE);
+        }
+
+        @Override
+        public boolean contains(Integer key) {
+          return treeMap.containsKey(key);
+        }
+
+        @Override
+        public void delete(Integer key) {
+          treeMap.remove(key);
+        }
+
+        @Override
+        public Integer successor(Integer key) {
+          return treeMap.higherKey(key);
+        }
+
+        @Override
+        public long sum() {
+          long sum = 0;
+          for (Integer key : treeMap.keySet()) {
+            sum += key;
+          }
+          return sum;
+        }
+      };
+    }
+  },
+
+  CONCURRENT_SKIP_LIST_MAP {
+    @Override
+    public OrderedKeySet create(Integer[] keys) {
+      ConcurrentSkipListMap<Integer, Boolean> skipListMap = new ConcurrentSkipListMap<>();
+      for (Integer key : keys) {
+        skipListMap.put(key, Boolean.TRUE);
+      }
+      return new OrderedKeySet() {
+        @Override
+        public void insert(Integer key) {
+          skipListMap.put(key, Boolean.TRUE);
+        }
+
+        @Override
+        public boolean contains(Integer key) {
+          return skipListMap.containsKey(key);
+        }
+
+        @Override
+        public void delete(Integer key) {
+          skipListMap.remove(key);
+        }
+
+        @Override
+        public Integer successor(Integer key) {
+          return skipListMap.higherKey(key);
+        }
+
+        @Override
+        public long sum() {
+          long sum = 0;
+          for (Integer key : skipListMap.keySet()) {
+            sum += key;
+          }
+          return sum;
+        }
+      };
+    }
+  };
+
+  /**
+   * @return A structure holding keys
+   */
+  public abstract OrderedKeySet create(Integer[] keys);
+
+  public interface OrderedKeySet {
+    void insert(Integer key);
+
+    boolean contains(Integer key);
+
+    void delete(Integer key);
+
+    Integer successor(Integer key);
+
+    /**
+     * Iterates over every key in ascending order
+     */
+    long sum();
+  }
+}
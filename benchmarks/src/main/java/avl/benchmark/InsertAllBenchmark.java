@@ -0,0 +1,76 @@
+package avl.benchmark;
+
+import avl.AvlTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserts a batch of random items into a tree, either with insertAll or with a loop over insert
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsertAllBenchmark {
+
+  @Param({"100000", "1000000"})
+  public int treeSize;
+
+  @Param({"10000", "100000"})
+  public int batchSize;
+
+  private List<Integer> initialItems;
+  private List<Integer> batch;
+  private AvlTree<Integer> avlTree;
+
+  @Setup(Level.Trial)
+  public void createItems() {
+    Random random = new Random(1);
+    initialItems = new ArrayList<>(treeSize);
+    for (int i = 0; i < treeSize; i++) {
+      initialItems.add(random.nextInt());
+    }
+    batch = new ArrayList<>(batchSize);
+    for (int i = 0; i < batchSize; i++) {
+      batch.add(random.nextInt());
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void createTree() {
+    avlTree = new AvlTree<>(Comparator.naturalOrder());
+    avlTree.insertAll(initialItems);
+  }
+
+  @Benchmark
+  public AvlTree<Integer> insertAll() {
+    avlTree.insertAll(batch);
+    return avlTree;
+  }
+
+  @Benchmark
+  public AvlTree<Integer> insertLoop() {
+    for (Integer item : batch) {
+      avlTree.insert(item);
+    }
+    return avlTree;
+  }
+}
@@ -0,0 +1,110 @@
+package avl.benchmark;
+
+import java.util.Random;
+
+/**
+ * How benchmark keys are chosen. The keys present in a structure of size n are presentKey(0), ...,
+ * presentKey(n - 1), and absentKey(j) is never one of them.
+ */
+public enum KeyDistribution {
+
+  /**
+   * Keys spread over the whole int range, accessed uniformly
+   */
+  RANDOM,
+
+  /**
+   * Consecutive keys, accessed in ascending order; new keys are appended after the greatest one
+   */
+  SORTED,
+
+  /**
+   * Keys spread over the whole int range, accessed with a Zipfian distribution of exponent 0.99,
+   * so a few keys take most of the accesses
+   */
+  ZIPFIAN;
+
+  private static final double ZIPFIAN_EXPONENT = 0.99;
+
+  public int presentKey(int index) {
+    return (this == SORTED) ? 2 * index : scramble(2 * index);
+  }
+
+  public int absentKey(int size, int index) {
+    return (this == SORTED) ? 2 * (size + index) : scramble(2 * index + 1);
+  }
+
+  /**
+   * @return count indexes in [0, bound) in the order this distribution accesses them
+   */
+  public int[] accessOrder(int bound, int count, long seed) {
+    int[] indexes = new int[count];
+    Random random = new Random(seed);
+    switch (this) {
+      case RANDOM:
+        for (int i = 0; i < count; i++) {
+          indexes[i] = random.nextInt(bound);
+        }
+        break;
+      case SORTED:
+        for (int i = 0; i < count; i++) {
+          indexes[i] = i % bound;
+        }
+        break;
+      default:
+        ZipfianGenerator generator = new ZipfianGenerator(bound, ZIPFIAN_EXPONENT);
+        for (int i = 0; i < count; i++) {
+          indexes[i] = generator.next(random);
+        }
+        break;
+    }
+    return indexes;
+  }
+
+  /**
+   * Bijection of the int range that spreads consecutive numbers
+   */
+  private static int scramble(int number) {
+    return number * 0x9E3779B1;
+  }
+
+  /**
+   * Generator of Gray et al., "Quickly Generating Billion-Record Synthetic Databases" (SIGMOD 1994),
+   * which returns 0 as the most frequent value
+   */
+  private static final class ZipfianGenerator {
+    private final int bound;
+    private final double exponent;
+    private final double zetaOfBound;
+    private final double alpha;
+    private final double eta;
+
+    ZipfianGenerator(int bound, double exponent) {
+      this.bound = bound;
+      this.exponent = exponent;
+      zetaOfBound = zeta(bound, exponent);
+      alpha = 1.0 / (1.0 - exponent);
+      eta = (1 - Math.pow(2.0 / bound, 1 - exponent)) / (1 - zeta(2, exponent) / zetaOfBound);
+    }
+
+    int next(Random random) {
+      double u = random.nextDouble();
+      double uz = u * zetaOfBound;
+      if (uz < 1.0) {
+        return 0;
+      }
+      if (uz < 1.0 + Math.pow(0.5, exponent)) {
+        return Math.min(1, bound - 1);
+      }
+      return Math.min(bound - 1, (int) (bound * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    private static double zeta(int n, double exponent) {
+      double sum = 0;
+      for (int i = 1; i <= n; i++) {
+        sum += 1 / Math.pow(i, exponent);
+      }
+      return sum;
+    }
+  }
+}
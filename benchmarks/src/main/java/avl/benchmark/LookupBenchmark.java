@@ -0,0 +1,83 @@
+package avl.benchmark;
+
+import avl.benchmark.Implementation.OrderedKeySet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures search, successor and full iteration on structures of every size, key distribution and
+ * implementation, reporting throughput and the latency distribution. Run it with -prof gc to get
+ * the allocation rate per operation as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+  private static final int NUMBER_OF_ACCESSES = 1 << 20;
+
+  @Param({"1000", "100000", "1000000", "10000000"})
+  public int size;
+
+  @Param({"RANDOM", "SORTED", "ZIPFIAN"})
+  public KeyDistribution distribution;
+
+  @Param({"AVL_TREE", "AVL_MAP", "TREE_MAP", "CONCURRENT_SKIP_LIST_MAP"})
+  public Implementation implementation;
+
+  private OrderedKeySet keySet;
+  private Integer[] accessedKeys;
+  private int nextAccess;
+
+  @Setup(Level.Trial)
+  public void createKeySet() {
+    Integer[] keys = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = distribution.presentKey(i);
+    }
+    keySet = implementation.create(keys);
+
+    // keys are boxed in advance so that the allocation rate only reflects the structures
+    int[] accessOrder = distribution.accessOrder(size, NUMBER_OF_ACCESSES, 1);
+    accessedKeys = new Integer[NUMBER_OF_ACCESSES];
+    for (int i = 0; i < NUMBER_OF_ACCESSES; i++) {
+      accessedKeys[i] = keys[accessOrder[i]];
+    }
+  }
+
+  @Benchmark
+  public boolean search() {
+    return keySet.contains(nextKey());
+  }
+
+  @Benchmark
+  public Integer successor() {
+    return keySet.successor(nextKey());
+  }
+
+  @Benchmark
+  public long iteration() {
+    return keySet.sum();
+  }
+
+  private Integer nextKey() {
+    Integer key = accessedKeys[nextAccess];
+    nextAccess = (nextAccess + 1) & (NUMBER_OF_ACCESSES - 1);
+    return key;
+  }
+}
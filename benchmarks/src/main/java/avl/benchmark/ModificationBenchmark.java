@@ -0,0 +1,84 @@
+package avl.benchmark;
+
+import avl.benchmark.Implementation.OrderedKeySet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures insert and delete on structures of every size, key distribution and implementation.
+ * Every iteration rebuilds the structure and runs a batch of BATCH_SIZE operations, so the size
+ * changes by at most BATCH_SIZE while measuring. Inserts add keys that are not present and deletes
+ * remove present keys, except that Zipfian accesses repeat keys, so most of them find the key
+ * already inserted or deleted. Run it with -prof gc to get the allocation rate per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, batchSize = ModificationBenchmark.BATCH_SIZE)
+@Measurement(iterations = 10, batchSize = ModificationBenchmark.BATCH_SIZE)
+@Fork(1)
+public class ModificationBenchmark {
+
+  static final int BATCH_SIZE = 500;
+
+  @Param({"1000", "100000", "1000000", "10000000"})
+  public int size;
+
+  @Param({"RANDOM", "SORTED", "ZIPFIAN"})
+  public KeyDistribution distribution;
+
+  @Param({"AVL_TREE", "AVL_MAP", "TREE_MAP", "CONCURRENT_SKIP_LIST_MAP"})
+  public Implementation implementation;
+
+  private Integer[] keys;
+  private Integer[] absentKeys;
+  private Integer[] presentKeys;
+
+  private OrderedKeySet keySet;
+  private int nextOperation;
+
+  @Setup(Level.Trial)
+  public void createKeys() {
+    keys = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = distribution.presentKey(i);
+    }
+
+    int[] accessOrder = distribution.accessOrder(size, BATCH_SIZE, 1);
+    absentKeys = new Integer[BATCH_SIZE];
+    presentKeys = new Integer[BATCH_SIZE];
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      int index = (distribution == KeyDistribution.SORTED) ? i : accessOrder[i];
+      absentKeys[i] = distribution.absentKey(size, index);
+      presentKeys[i] = keys[accessOrder[i]];
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void createKeySet() {
+    keySet = implementation.create(keys);
+    nextOperation = 0;
+  }
+
+  @Benchmark
+  public void insert() {
+    keySet.insert(absentKeys[nextOperation++]);
+  }
+
+  @Benchmark
+  public void delete() {
+    keySet.delete(presentKeys[nextOperation++]);
+  }
+}
@@ -0,0 +1,102 @@
+package avl.benchmark;
+
+import avl.ConcurrentAvlTree;
+import avl.OptimisticAvlTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a mix of lookups, inserts and deletes of random keys from every thread against an
+ * OptimisticAvlTree, a ConcurrentAvlTree and a ConcurrentSkipListMap. Half of the key range is
+ * present on average, and inserts and deletes are equally likely, so the size stays stable. Run it
+ * with -t 1, 2, 4, ... to see how writes scale.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class OptimisticAvlTreeBenchmark {
+
+  @Param({"1000", "1000000"})
+  public int keyRange;
+
+  @Param({"50", "90"})
+  public int readPercentage;
+
+  private OptimisticAvlTree<Integer> optimisticAvlTree;
+  private ConcurrentAvlTree<Integer> concurrentAvlTree;
+  private ConcurrentSkipListMap<Integer, Boolean> skipListMap;
+
+  @Setup
+  public void createTrees() {
+    optimisticAvlTree = new OptimisticAvlTree<>(Comparator.naturalOrder());
+    concurrentAvlTree = new ConcurrentAvlTree<>(Comparator.naturalOrder());
+    skipListMap = new ConcurrentSkipListMap<>();
+    for (int item = 0; item < keyRange; item += 2) {
+      optimisticAvlTree.insert(item);
+      concurrentAvlTree.insert(item);
+      skipListMap.put(item, Boolean.TRUE);
+    }
+  }
+
+  @Benchmark
+  public boolean optimisticAvlTree() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int item = random.nextInt(keyRange);
+    int operation = random.nextInt(100);
+    if (operation < readPercentage) {
+      return optimisticAvlTree.contains(item);
+    } else if (operation % 2 == 0) {
+      return optimisticAvlTree.insert(item);
+    } else {
+      return optimisticAvlTree.delete(item);
+    }
+  }
+
+  @Benchmark
+  public boolean concurrentAvlTree() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int item = random.nextInt(keyRange);
+    int operation = random.nextInt(100);
+    if (operation < readPercentage) {
+      return concurrentAvlTree.contains(item);
+    } else if (operation % 2 == 0) {
+      concurrentAvlTree.insert(item);
+    } else {
+      concurrentAvlTree.delete(item);
+    }
+    return false;
+  }
+
+  @Benchmark
+  public boolean concurrentSkipListMap() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int item = random.nextInt(keyRange);
+    int operation = random.nextInt(100);
+    if (operation < readPercentage) {
+      return skipListMap.containsKey(item);
+    } else if (operation % 2 == 0) {
+      return skipListMap.putIfAbsent(item, Boolean.TRUE) == null;
+    } else {
+      return skipListMap.remove(item) != null;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package avl.benchmark;
+
+import avl.AvlTree;
+import avl.DurableAvlTree;
+import avl.ItemCodec;
+import avl.WriteAheadLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the recovery of a DurableAvlTree from a log of MUTATIONS random insertions and
+ * deletions of integers, so the reported throughput is in mutations per second. The log is written
+ * with a sync every batchSize records, so each frame holds as many records as group commit puts
+ * together under that many concurrent mutations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RecoveryBenchmark {
+
+  private static final int MUTATIONS = 1_000_000;
+
+  @Param({"16", "1024"})
+  public int batchSize;
+
+  private Path directory;
+
+  @Setup(Level.Trial)
+  public void writeLog() throws IOException {
+    directory = Files.createTempDirectory("avl");
+    Random random = new Random(1);
+    try (WriteAheadLog<Integer> log = WriteAheadLog.open(
+        directory.resolve(DurableAvlTree.LOG_FILE_NAME), ItemCodec.integers())) {
+      for (int i = 1; i <= MUTATIONS; i++) {
+        int item = random.nextInt(MUTATIONS);
+        long sequence = (random.nextInt(4) == 0) ? log.logDelete(item) : log.logInsert(item);
+        if (i % batchSize == 0) {
+          log.sync(sequence);
+        }
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteLog() throws IOException {
+    Files.delete(directory.resolve(DurableAvlTree.LOG_FILE_NAME));
+    Files.delete(directory);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MUTATIONS)
+  public AvlTree<Integer> recover() throws IOException {
+    AvlTree<Integer> recoveredTree = AvlTree.naturalOrder();
+    DurableAvlTree.open(directory, recoveredTree, ItemCodec.integers()).close();
+    return recoveredTree;
+  }
+}
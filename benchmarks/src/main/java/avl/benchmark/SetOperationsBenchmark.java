@@ -0,0 +1,80 @@
+package avl.benchmark;
+
+import avl.AvlTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Combines two trees of random items, either with the join-based union or by inserting the items of
+ * the smaller tree into the larger one
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SetOperationsBenchmark {
+
+  @Param({"1000000"})
+  public int treeSize;
+
+  @Param({"1000", "100000", "1000000"})
+  public int otherTreeSize;
+
+  private List<Integer> items;
+  private List<Integer> otherItems;
+  private AvlTree<Integer> avlTree;
+  private AvlTree<Integer> otherAvlTree;
+
+  @Setup(Level.Trial)
+  public void createItems() {
+    Random random = new Random(1);
+    items = new ArrayList<>(treeSize);
+    for (int i = 0; i < treeSize; i++) {
+      items.add(random.nextInt());
+    }
+    otherItems = new ArrayList<>(otherTreeSize);
+    for (int i = 0; i < otherTreeSize; i++) {
+      otherItems.add(random.nextInt());
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void createTrees() {
+    avlTree = new AvlTree<>(Comparator.naturalOrder());
+    avlTree.insertAll(items);
+    otherAvlTree = new AvlTree<>(Comparator.naturalOrder());
+    otherAvlTree.insertAll(otherItems);
+  }
+
+  @Benchmark
+  public AvlTree<Integer> union() {
+    avlTree.union(otherAvlTree);
+    return avlTree;
+  }
+
+  @Benchmark
+  public AvlTree<Integer> insertLoop() {
+    for (Integer item : otherAvlTree) {
+      avlTree.insert(item);
+    }
+    return avlTree;
+  }
+}
@@ -0,0 +1,1539 @@
+//  AvlMap.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Avl tree based NavigableMap. Keys and values are stored directly in the nodes of the tree, so
+ * there is one object per entry, and get, put, remove, computeIfAbsent, compute and merge find
+ * their node in a single descent from the top. Keys are ordered by the comparator, or by their
+ * natural ordering if it is null; null keys are only allowed by comparators that accept them, and
+ * null values are allowed. Views and iterators behave as those of java.util.TreeMap: they are
+ * backed by the map and iterators are fail-fast.
+ */
+public class AvlMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+  private static final Object UNBOUNDED = new Object();
+
+  private final Comparator<? super K> comparator;
+
+  private Node<K, V> top;
+  private int size;
+  private int modCount;
+
+  private EntrySet entrySet;
+  private KeySet<K> navigableKeySet;
+  private NavigableMap<K, V> descendingMap;
+
+  /**
+   * Constructor of a map ordered by the natural ordering of its keys
+   */
+  public AvlMap() {
+    this.comparator = null;
+  }
+
+  /**
+   * Constructor
+   *
+   * @param comparator Ordering of the keys, or null for their natural ordering
+   */
+  public AvlMap(Comparator<? super K> comparator) {
+    this.comparator = comparator;
+  }
+
+  /**
+   * Constructor of a map with the entries of map, ordered as map if it is a SortedMap and by the
+   * natural ordering of the keys otherwise
+   *
+   * @param map
+   */
+  public AvlMap(Map<? extends K, ? extends V> map) {
+    this.comparator = comparatorOf(map);
+    putAll(map);
+  }
+
+  @SuppressWarnings("unchecked") // like TreeMap, assumes that the ordering of map accepts any K
+  private static <K> Comparator<? super K> comparatorOf(Map<? extends K, ?> map) {
+    return (map instanceof SortedMap) ? ((SortedMap<K, ?>) map).comparator() : null;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return getNode(key) != null;
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    for (Node<K, V> node = getFirstNode(); node != null; node = successor(node)) {
+      if (Objects.equals(value, node.value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public V get(Object key) {
+    Node<K, V> node = getNode(key);
+    return (node == null) ? null : node.value;
+  }
+
+  @Override
+  public V put(K key, V value) {
+    return put(key, value, true);
+  }
+
+  @Override
+  public V putIfAbsent(K key, V value) {
+    return put(key, value, false);
+  }
+
+  @Override
+  public V remove(Object key) {
+    Node<K, V> node = getNode(key);
+    if (node == null) {
+      return null;
+    }
+
+    V oldValue = node.value;
+    deleteNode(node);
+    return oldValue;
+  }
+
+  @Override
+  public void clear() {
+    modCount++;
+    size = 0;
+    top = null;
+  }
+
+  /**
+   * Returns the value of key, computing and inserting it if key has no value. The node of key and,
+   * if it is missing, the place where it has to be linked are found in the same descent.
+   */
+  @Override
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+    Objects.requireNonNull(mappingFunction);
+
+    Node<K, V> parent = null;
+    int comparison = 0;
+    Node<K, V> currentNode = top;
+    if (currentNode == null) {
+      compare(key, key); // type and null check
+    }
+    while (currentNode != null) {
+      parent = currentNode;
+      comparison = compare(key, currentNode.key);
+      if (comparison < 0) {
+        currentNode = currentNode.left;
+      } else if (comparison > 0) {
+        currentNode = currentNode.right;
+      } else {
+        if (currentNode.value == null) {
+          currentNode.value = callMappingFunction(mappingFunction, key);
+        }
+        return currentNode.value;
+      }
+    }
+
+    V newValue = callMappingFunction(mappingFunction, key);
+    if (newValue != null) {
+      linkNode(key, newValue, parent, comparison < 0);
+    }
+    return newValue;
+  }
+
+  @Override
+  public V computeIfPresent(K key,
+      BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    Objects.requireNonNull(remappingFunction);
+
+    Node<K, V> node = getNode(key);
+    if (node == null || node.value == null) {
+      return null;
+    }
+    return remapValue(node, callRemappingFunction(remappingFunction, key, node.value));
+  }
+
+  @Override
+  public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    Objects.requireNonNull(remappingFunction);
+
+    Node<K, V> parent = null;
+    int comparison = 0;
+    Node<K, V> currentNode = top;
+    if (currentNode == null) {
+      compare(key, key); // type and null check
+    }
+    while (currentNode != null) {
+      parent = currentNode;
+      comparison = compare(key, currentNode.key);
+      if (comparison < 0) {
+        currentNode = currentNode.left;
+      } else if (comparison > 0) {
+        currentNode = currentNode.right;
+      } else {
+        return remapValue(currentNode,
+            callRemappingFunction(remappingFunction, key, currentNode.value));
+      }
+    }
+
+    V newValue = callRemappingFunction(remappingFunction, key, null);
+    if (newValue != null) {
+      linkNode(key, newValue, parent, comparison < 0);
+    }
+    return newValue;
+  }
+
+  @Override
+  public V merge(K key, V value,
+      BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+    Objects.requireNonNull(value);
+    Objects.requireNonNull(remappingFunction);
+
+    Node<K, V> parent = null;
+    int comparison = 0;
+    Node<K, V> currentNode = top;
+    if (currentNode == null) {
+      compare(key, key); // type and null check
+    }
+    while (currentNode != null) {
+      parent = currentNode;
+      comparison = compare(key, currentNode.key);
+      if (comparison < 0) {
+        currentNode = currentNode.left;
+      } else if (comparison > 0) {
+        currentNode = currentNode.right;
+      } else {
+        if (currentNode.value == null) {
+          currentNode.value = value;
+          return value;
+        }
+        return remapValue(currentNode,
+            callRemappingFunction(remappingFunction, currentNode.value, value));
+      }
+    }
+
+    linkNode(key, value, parent, comparison < 0);
+    return value;
+  }
+
+  @Override
+  public Comparator<? super K> comparator() {
+    return comparator;
+  }
+
+  @Override
+  public K firstKey() {
+    return key(getFirstNode());
+  }
+
+  @Override
+  public K lastKey() {
+    return key(getLastNode());
+  }
+
+  @Override
+  public Map.Entry<K, V> firstEntry() {
+    return exportEntry(getFirstNode());
+  }
+
+  @Override
+  public Map.Entry<K, V> lastEntry() {
+    return exportEntry(getLastNode());
+  }
+
+  @Override
+  public Map.Entry<K, V> pollFirstEntry() {
+    return pollNode(getFirstNode());
+  }
+
+  @Override
+  public Map.Entry<K, V> pollLastEntry() {
+    return pollNode(getLastNode());
+  }
+
+  @Override
+  public Map.Entry<K, V> lowerEntry(K key) {
+    return exportEntry(getFloorNode(key, false));
+  }
+
+  @Override
+  public K lowerKey(K key) {
+    return keyOrNull(getFloorNode(key, false));
+  }
+
+  @Override
+  public Map.Entry<K, V> floorEntry(K key) {
+    return exportEntry(getFloorNode(key, true));
+  }
+
+  @Override
+  public K floorKey(K key) {
+    return keyOrNull(getFloorNode(key, true));
+  }
+
+  @Override
+  public Map.Entry<K, V> ceilingEntry(K key) {
+    return exportEntry(getCeilingNode(key, true));
+  }
+
+  @Override
+  public K ceilingKey(K key) {
+    return keyOrNull(getCeilingNode(key, true));
+  }
+
+  @Override
+  public Map.Entry<K, V> higherEntry(K key) {
+    return exportEntry(getCeilingNode(key, false));
+  }
+
+  @Override
+  public K higherKey(K key) {
+    return keyOrNull(getCeilingNode(key, false));
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new EntrySet();
+    }
+    return entrySet;
+  }
+
+  @Override
+  public Set<K> keySet() {
+    return navigableKeySet();
+  }
+
+  @Override
+  public NavigableSet<K> navigableKeySet() {
+    if (navigableKeySet == null) {
+      navigableKeySet = new KeySet<>(this);
+    }
+    return navigableKeySet;
+  }
+
+  @Override
+  public NavigableSet<K> descendingKeySet() {
+    return descendingMap().navigableKeySet();
+  }
+
+  @Override
+  public Collection<V> values() {
+    return new Values(this);
+  }
+
+  @Override
+  public NavigableMap<K, V> descendingMap() {
+    if (descendingMap == null) {
+      descendingMap = new SubMap(true, null, true, true, null, true, true);
+    }
+    return descendingMap;
+  }
+
+  @Override
+  public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey,
+      boolean toInclusive) {
+    return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+  }
+
+  @Override
+  public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+    return new SubMap(true, null, true, false, toKey, inclusive, false);
+  }
+
+  @Override
+  public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+    return new SubMap(false, fromKey, inclusive, true, null, true, false);
+  }
+
+  @Override
+  public SortedMap<K, V> subMap(K fromKey, K toKey) {
+    return subMap(fromKey, true, toKey, false);
+  }
+
+  @Override
+  public SortedMap<K, V> headMap(K toKey) {
+    return headMap(toKey, false);
+  }
+
+  @Override
+  public SortedMap<K, V> tailMap(K fromKey) {
+    return tailMap(fromKey, true);
+  }
+
+  /**
+   * Checks that the tree is ordered and balanced and that heights and parent links are right
+   *
+   * @return The height of the tree
+   */
+  int checkStructure() {
+    return checkSubtree(top, null);
+  }
+
+  private int checkSubtree(Node<K, V> node, Node<K, V> parent) {
+    if (node == null) {
+      return -1;
+    }
+    if (node.parent != parent) {
+      throw new IllegalStateException("Wrong parent link at " + node.key);
+    }
+    if (node.left != null && compare(node.left.key, node.key) >= 0) {
+      throw new IllegalStateException("Wrong order at " + node.key);
+    }
+    if (node.right != null && compare(node.right.key, node.key) <= 0) {
+      throw new IllegalStateException("Wrong order at " + node.key);
+    }
+
+    int leftHeight = checkSubtree(node.left, node);
+    int rightHeight = checkSubtree(node.right, node);
+    if (node.height != 1 + Math.max(leftHeight, rightHeight)
+        || Math.abs(rightHeight - leftHeight) > 1) {
+      throw new IllegalStateException("Wrong height or balance at " + node.key);
+    }
+    return node.height;
+  }
+
+  private V put(K key, V value, boolean replaceValue) {
+    Node<K, V> parent = null;
+    int comparison = 0;
+    Node<K, V> currentNode = top;
+    if (currentNode == null) {
+      compare(key, key); // type and null check
+    }
+    while (currentNode != null) {
+      parent = currentNode;
+      comparison = compare(key, currentNode.key);
+      if (comparison < 0) {
+        currentNode = currentNode.left;
+      } else if (comparison > 0) {
+        currentNode = currentNode.right;
+      } else {
+        V oldValue = currentNode.value;
+        if (replaceValue || oldValue == null) {
+          currentNode.value = value;
+        }
+        return oldValue;
+      }
+    }
+
+    linkNode(key, value, parent, comparison < 0);
+    return null;
+  }
+
+  private V callMappingFunction(Function<? super K, ? extends V> mappingFunction, K key) {
+    int expectedModCount = modCount;
+    V newValue = mappingFunction.apply(key);
+    if (modCount != expectedModCount) {
+      throw new ConcurrentModificationException();
+    }
+    return newValue;
+  }
+
+  private <A, B> V callRemappingFunction(
+      BiFunction<? super A, ? super B, ? extends V> remappingFunction, A first, B second) {
+    int expectedModCount = modCount;
+    V newValue = remappingFunction.apply(first, second);
+    if (modCount != expectedModCount) {
+      throw new ConcurrentModificationException();
+    }
+    return newValue;
+  }
+
+  /**
+   * Stores newValue in node, or removes node if newValue is null
+   */
+  private V remapValue(Node<K, V> node, V newValue) {
+    if (newValue == null) {
+      deleteNode(node);
+    } else {
+      node.value = newValue;
+    }
+    return newValue;
+  }
+
+  private Node<K, V> getNode(Object key) {
+    Node<K, V> currentNode = top;
+    while (currentNode != null) {
+      int comparison = compare(key, currentNode.key);
+      if (comparison < 0) {
+        currentNode = currentNode.left;
+      } else if (comparison > 0) {
+        currentNode = currentNode.right;
+      } else {
+        return currentNode;
+      }
+    }
+    return null;
+  }
+
+  private Node<K, V> getFirstNode() {
+    Node<K, V> node = top;
+    if (node != null) {
+      while (node.left != null) {
+        node = node.left;
+      }
+    }
+    return node;
+  }
+
+  private Node<K, V> getLastNode() {
+    Node<K, V> node = top;
+    if (node != null) {
+      while (node.right != null) {
+        node = node.right;
+      }
+    }
+    return node;
+  }
+
+  /**
+   * @return The node with the greatest key less than key, or equal to it if inclusive
+   */
+  private Node<K, V> getFloorNode(Object key, boolean inclusive) {
+    Node<K, V> result = null;
+    Node<K, V> currentNode = top;
+    while (currentNode != null) {
+      int comparison = compare(key, currentNode.key);
+      if (comparison > 0 || (comparison == 0 && inclusive)) {
+        result = currentNode;
+        currentNode = (comparison == 0) ? null : currentNode.right;
+      } else {
+        currentNode = currentNode.left;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return The node with the least key greater than key, or equal to it if inclusive
+   */
+  private Node<K, V> getCeilingNode(Object key, boolean inclusive) {
+    Node<K, V> result = null;
+    Node<K, V> currentNode = top;
+    while (currentNode != null) {
+      int comparison = compare(key, currentNode.key);
+      if (comparison < 0 || (comparison == 0 && inclusive)) {
+        result = currentNode;
+        currentNode = (comparison == 0) ? null : currentNode.left;
+      } else {
+        currentNode = currentNode.right;
+      }
+    }
+    return result;
+  }
+
+  private static <K, V> Node<K, V> successor(Node<K, V> node) {
+    if (node.right != null) {
+      node = node.right;
+      while (node.left != null) {
+        node = node.left;
+      }
+      return node;
+    }
+    while (node.parent != null && node.parent.right == node) {
+      node = node.parent;
+    }
+    return node.parent;
+  }
+
+  private static <K, V> Node<K, V> predecessor(Node<K, V> node) {
+    if (node.left != null) {
+      node = node.left;
+      while (node.right != null) {
+        node = node.right;
+      }
+      return node;
+    }
+    while (node.parent != null && node.parent.left == node) {
+      node = node.parent;
+    }
+    return node.parent;
+  }
+
+  @SuppressWarnings("unchecked") // keys are K, and Comparable if there is no comparator
+  private int compare(Object key1, Object key2) {
+    return (comparator == null)
+        ? ((Comparable<Object>) key1).compareTo(key2)
+        : comparator.compare((K) key1, (K) key2);
+  }
+
+  private static <K> K key(Node<K, ?> node) {
+    if (node == null) {
+      throw new NoSuchElementException();
+    }
+    return node.key;
+  }
+
+  private static <K> K keyOrNull(Node<K, ?> node) {
+    return (node == null) ? null : node.key;
+  }
+
+  /**
+   * Entries returned by the navigation methods are snapshots, as in TreeMap, so they do not
+   * support setValue
+   */
+  private static <K, V> Map.Entry<K, V> exportEntry(Node<K, V> node) {
+    return (node == null) ? null : new AbstractMap.SimpleImmutableEntry<>(node);
+  }
+
+  private Map.Entry<K, V> pollNode(Node<K, V> node) {
+    Map.Entry<K, V> result = exportEntry(node);
+    if (node != null) {
+      deleteNode(node);
+    }
+    return result;
+  }
+
+  private void linkNode(K key, V value, Node<K, V> parent, boolean left) {
+    Node<K, V> node = new Node<>(key, value, parent);
+    if (parent == null) {
+      top = node;
+    } else {
+      if (left) {
+        parent.left = node;
+      } else {
+        parent.right = node;
+      }
+      rebalance(parent);
+    }
+    size++;
+    modCount++;
+  }
+
+  /**
+   * Unlinks node. A node with two children takes the key and value of its successor, which is
+   * unlinked instead, so every other node keeps its entry.
+   */
+  private void deleteNode(Node<K, V> node) {
+    modCount++;
+    size--;
+
+    if (node.left != null && node.right != null) {
+      Node<K, V> successor = successor(node);
+      node.key = successor.key;
+      node.value = successor.value;
+      node = successor;
+    }
+
+    Node<K, V> child = (node.left != null) ? node.left : node.right;
+    Node<K, V> parent = node.parent;
+    if (child != null) {
+      child.parent = parent;
+    }
+    replaceChild(parent, node, child);
+    node.left = null;
+    node.right = null;
+    node.parent = null;
+
+    if (parent != null) {
+      rebalance(parent);
+    }
+  }
+
+  private void replaceChild(Node<K, V> parent, Node<K, V> oldChild, Node<K, V> newChild) {
+    if (parent == null) {
+      top = newChild;
+    } else if (parent.left == oldChild) {
+      parent.left = newChild;
+    } else {
+      parent.right = newChild;
+    }
+  }
+
+  /**
+   * Restores the AVL property from node up to the top, stopping as soon as the height of a
+   * subtree is the same as before the modification
+   *
+   * @param node The deepest node whose subtree has changed
+   */
+  private void rebalance(Node<K, V> node) {
+    while (node != null) {
+      int previousHeight = node.height;
+      int balance = height(node.right) - height(node.left);
+      if (balance == -2) {
+        if (height(node.left.left) >= height(node.left.right)) {
+          node = leftRotation(node);
+        } else {
+          node = doubleLeftRotation(node);
+        }
+      } else if (balance == 2) {
+        if (height(node.right.right) >= height(node.right.left)) {
+          node = rightRotation(node);
+        } else {
+          node = doubleRightRotation(node);
+        }
+      } else {
+        node.updateHeight();
+      }
+
+      if (node.height == previousHeight) {
+        return;
+      }
+      node = node.parent;
+    }
+  }
+
+  /**
+   * Moves the left child of node up
+   *
+   * @return The new top of the subtree
+   */
+  private Node<K, V> leftRotation(Node<K, V> node) {
+    Node<K, V> leftNode = node.left;
+
+    leftNode.parent = node.parent;
+    replaceChild(node.parent, node, leftNode);
+
+    node.left = leftNode.right;
+    if (node.left != null) {
+      node.left.parent = node;
+    }
+    leftNode.right = node;
+    node.parent = leftNode;
+
+    node.updateHeight();
+    leftNode.updateHeight();
+    return leftNode;
+  }
+
+  /**
+   * Moves the right child of node up
+   *
+   * @return The new top of the subtree
+   */
+  private Node<K, V> rightRotation(Node<K, V> node) {
+    Node<K, V> rightNode = node.right;
+
+    rightNode.parent = node.parent;
+    replaceChild(node.parent, node, rightNode);
+
+    node.right = rightNode.left;
+    if (node.right != null) {
+      node.right.parent = node;
+    }
+    rightNode.left = node;
+    node.parent = rightNode;
+
+    node.updateHeight();
+    rightNode.updateHeight();
+    return rightNode;
+  }
+
+  private Node<K, V> doubleLeftRotation(Node<K, V> node) {
+    rightRotation(node.left);
+    return leftRotation(node);
+  }
+
+  private Node<K, V> doubleRightRotation(Node<K, V> node) {
+    leftRotation(node.right);
+    return rightRotation(node);
+  }
+
+  private static int height(Node<?, ?> node) {
+    return (node == null) ? -1 : node.height;
+  }
+
+  /**
+   * Node of the tree. It is also the entry handed out by the iterators of the entry set, so
+   * setValue writes through to the map.
+   */
+  private static final class Node<K, V> implements Map.Entry<K, V> {
+    private K key;
+    private V value;
+
+    private Node<K, V> left;
+    private Node<K, V> right;
+    private Node<K, V> parent;
+
+    private int height;
+
+    Node(K key, V value, Node<K, V> parent) {
+      this.key = key;
+      this.value = value;
+      this.parent = parent;
+    }
+
+    void updateHeight() {
+      height = 1 + Math.max(AvlMap.height(left), AvlMap.height(right));
+    }
+
+    @Override
+    public K getKey() {
+      return key;
+    }
+
+    @Override
+    public V getValue() {
+      return value;
+    }
+
+    @Override
+    public V setValue(V value) {
+      V oldValue = this.value;
+      this.value = value;
+      return oldValue;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+      return Objects.equals(key, entry.getKey()) && Objects.equals(value, entry.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(key) ^ Objects.hashCode(value);
+    }
+
+    @Override
+    public String toString() {
+      return key + "=" + value;
+    }
+  }
+
+  /**
+   * Iterates over the nodes from first, in ascending or descending order, until the node whose
+   * key is fenceKey. The fence is kept as a key because deleting the node before a node with two
+   * children moves the successor's entry into that node.
+   */
+  private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+    private Node<K, V> nextNode;
+    private Node<K, V> lastReturned;
+    private final Object fenceKey;
+    private final boolean descending;
+    private int expectedModCount;
+
+    EntryIterator(Node<K, V> first, Node<K, V> fence, boolean descending) {
+      nextNode = first;
+      fenceKey = (fence == null) ? UNBOUNDED : fence.key;
+      this.descending = descending;
+      expectedModCount = modCount;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return nextNode != null && nextNode.key != fenceKey;
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+
+      lastReturned = nextNode;
+      nextNode = descending ? predecessor(nextNode) : successor(nextNode);
+      return lastReturned;
+    }
+
+    @Override
+    public void remove() {
+      if (lastReturned == null) {
+        throw new IllegalStateException();
+      }
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+
+      if (!descending && lastReturned.left != null && lastReturned.right != null) {
+        // the successor's entry is moved into lastReturned
+        nextNode = lastReturned;
+      }
+      deleteNode(lastReturned);
+      expectedModCount = modCount;
+      lastReturned = null;
+    }
+  }
+
+  private class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+      return new EntryIterator(getFirstNode(), null, false);
+    }
+
+    @Override
+    public int size() {
+      return AvlMap.this.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return getMatchingNode(o) != null;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      Node<K, V> node = getMatchingNode(o);
+      if (node == null) {
+        return false;
+      }
+      deleteNode(node);
+      return true;
+    }
+
+    @Override
+    public void clear() {
+      AvlMap.this.clear();
+    }
+  }
+
+  /**
+   * @return The node of the map equal to the entry o, or null if there is none
+   */
+  private Node<K, V> getMatchingNode(Object o) {
+    if (!(o instanceof Map.Entry)) {
+      return null;
+    }
+    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+    Node<K, V> node = getNode(entry.getKey());
+    return (node != null && Objects.equals(node.value, entry.getValue())) ? node : null;
+  }
+
+  /**
+   * View of a range of keys of the map, in ascending or descending order. The bounds lowKey and
+   * highKey are always in ascending order; fromStart and toEnd mean that the range is unbounded
+   * on that side.
+   */
+  private class SubMap extends AbstractMap<K, V> implements NavigableMap<K, V> {
+    private final boolean fromStart;
+    private final K lowKey;
+    private final boolean lowInclusive;
+    private final boolean toEnd;
+    private final K highKey;
+    private final boolean highInclusive;
+    private final boolean descending;
+
+    private SubMapEntrySet entrySet;
+    private KeySet<K> navigableKeySet;
+
+    SubMap(boolean fromStart, K lowKey, boolean lowInclusive, boolean toEnd, K highKey,
+        boolean highInclusive, boolean descending) {
+      if (!fromStart && !toEnd) {
+        if (compare(lowKey, highKey) > 0) {
+          throw new IllegalArgumentException("fromKey > toKey");
+        }
+      } else {
+        if (!fromStart) {
+          compare(lowKey, lowKey); // type and null check
+        }
+        if (!toEnd) {
+          compare(highKey, highKey);
+        }
+      }
+
+      this.fromStart = fromStart;
+      this.lowKey = lowKey;
+      this.lowInclusive = lowInclusive;
+      this.toEnd = toEnd;
+      this.highKey = highKey;
+      this.highInclusive = highInclusive;
+      this.descending = descending;
+    }
+
+    @Override
+    public int size() {
+      return (fromStart && toEnd) ? AvlMap.this.size() : entrySet().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return (fromStart && toEnd) ? AvlMap.this.isEmpty() : absoluteLowest() == null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return inRange(key) && AvlMap.this.containsKey(key);
+    }
+
+    @Override
+    public V get(Object key) {
+      return inRange(key) ? AvlMap.this.get(key) : null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+      checkInRange(key);
+      return AvlMap.this.put(key, value);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+      checkInRange(key);
+      return AvlMap.this.putIfAbsent(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+      return inRange(key) ? AvlMap.this.remove(key) : null;
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+      checkInRange(key);
+      return AvlMap.this.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public V computeIfPresent(K key,
+        BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+      return inRange(key) ? AvlMap.this.computeIfPresent(key, remappingFunction) : null;
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+      checkInRange(key);
+      return AvlMap.this.compute(key, remappingFunction);
+    }
+
+    @Override
+    public V merge(K key, V value,
+        BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+      checkInRange(key);
+      return AvlMap.this.merge(key, value, remappingFunction);
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+      return descending ? Collections.reverseOrder(comparator) : comparator;
+    }
+
+    @Override
+    public K firstKey() {
+      return key(lowest());
+    }
+
+    @Override
+    public K lastKey() {
+      return key(highest());
+    }
+
+    @Override
+    public Map.Entry<K, V> firstEntry() {
+      return exportEntry(lowest());
+    }
+
+    @Override
+    public Map.Entry<K, V> lastEntry() {
+      return exportEntry(highest());
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry() {
+      return pollNode(lowest());
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry() {
+      return pollNode(highest());
+    }
+
+    @Override
+    public Map.Entry<K, V> lowerEntry(K key) {
+      return exportEntry(lower(key));
+    }
+
+    @Override
+    public K lowerKey(K key) {
+      return keyOrNull(lower(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> floorEntry(K key) {
+      return exportEntry(floor(key));
+    }
+
+    @Override
+    public K floorKey(K key) {
+      return keyOrNull(floor(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> ceilingEntry(K key) {
+      return exportEntry(ceiling(key));
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+      return keyOrNull(ceiling(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> higherEntry(K key) {
+      return exportEntry(higher(key));
+    }
+
+    @Override
+    public K higherKey(K key) {
+      return keyOrNull(higher(key));
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+      if (entrySet == null) {
+        entrySet = new SubMapEntrySet();
+      }
+      return entrySet;
+    }
+
+    @Override
+    public Set<K> keySet() {
+      return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+      if (navigableKeySet == null) {
+        navigableKeySet = new KeySet<>(this);
+      }
+      return navigableKeySet;
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+      return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+      return new Values(this);
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+      return new SubMap(fromStart, lowKey, lowInclusive, toEnd, highKey, highInclusive,
+          !descending);
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey,
+        boolean toInclusive) {
+      checkInRange(fromKey, fromInclusive, "fromKey");
+      checkInRange(toKey, toInclusive, "toKey");
+      return descending
+          ? new SubMap(false, toKey, toInclusive, false, fromKey, fromInclusive, true)
+          : new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+      checkInRange(toKey, inclusive, "toKey");
+      return descending
+          ? new SubMap(false, toKey, inclusive, toEnd, highKey, highInclusive, true)
+          : new SubMap(fromStart, lowKey, lowInclusive, false, toKey, inclusive, false);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+      checkInRange(fromKey, inclusive, "fromKey");
+      return descending
+          ? new SubMap(fromStart, lowKey, lowInclusive, false, fromKey, inclusive, true)
+          : new SubMap(false, fromKey, inclusive, toEnd, highKey, highInclusive, false);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+      return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+      return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+      return tailMap(fromKey, true);
+    }
+
+    private boolean tooLow(Object key) {
+      if (fromStart) {
+        return false;
+      }
+      int comparison = compare(key, lowKey);
+      return comparison < 0 || (comparison == 0 && !lowInclusive);
+    }
+
+    private boolean tooHigh(Object key) {
+      if (toEnd) {
+        return false;
+      }
+      int comparison = compare(key, highKey);
+      return comparison > 0 || (comparison == 0 && !highInclusive);
+    }
+
+    private boolean inRange(Object key) {
+      return !tooLow(key) && !tooHigh(key);
+    }
+
+    private void checkInRange(K key) {
+      if (!inRange(key)) {
+        throw new IllegalArgumentException("key out of range");
+      }
+    }
+
+    /**
+     * Checks a bound of a new view, which may be an exclusive bound of this one when it is not
+     * inclusive itself
+     */
+    private void checkInRange(K key, boolean inclusive, String name) {
+      boolean inRange = inclusive
+          ? inRange(key)
+          : (fromStart || compare(key, lowKey) >= 0) && (toEnd || compare(key, highKey) <= 0);
+      if (!inRange) {
+        throw new IllegalArgumentException(name + " out of range");
+      }
+    }
+
+    private Node<K, V> absoluteLowest() {
+      Node<K, V> node = fromStart ? getFirstNode() : getCeilingNode(lowKey, lowInclusive);
+      return (node == null || tooHigh(node.key)) ? null : node;
+    }
+
+    private Node<K, V> absoluteHighest() {
+      Node<K, V> node = toEnd ? getLastNode() : getFloorNode(highKey, highInclusive);
+      return (node == null || tooLow(node.key)) ? null : node;
+    }
+
+    private Node<K, V> absoluteCeiling(K key, boolean inclusive) {
+      if (tooLow(key)) {
+        return absoluteLowest();
+      }
+      Node<K, V> node = getCeilingNode(key, inclusive);
+      return (node == null || tooHigh(node.key)) ? null : node;
+    }
+
+    private Node<K, V> absoluteFloor(K key, boolean inclusive) {
+      if (tooHigh(key)) {
+        return absoluteHighest();
+      }
+      Node<K, V> node = getFloorNode(key, inclusive);
+      return (node == null || tooLow(node.key)) ? null : node;
+    }
+
+    /**
+     * @return The first node after the range in ascending order, or null if there is none
+     */
+    private Node<K, V> absoluteHighFence() {
+      return toEnd ? null : getCeilingNode(highKey, !highInclusive);
+    }
+
+    /**
+     * @return The first node before the range in ascending order, or null if there is none
+     */
+    private Node<K, V> absoluteLowFence() {
+      return fromStart ? null : getFloorNode(lowKey, !lowInclusive);
+    }
+
+    private Node<K, V> lowest() {
+      return descending ? absoluteHighest() : absoluteLowest();
+    }
+
+    private Node<K, V> highest() {
+      return descending ? absoluteLowest() : absoluteHighest();
+    }
+
+    private Node<K, V> lower(K key) {
+      return descending ? absoluteCeiling(key, false) : absoluteFloor(key, false);
+    }
+
+    private Node<K, V> floor(K key) {
+      return descending ? absoluteCeiling(key, true) : absoluteFloor(key, true);
+    }
+
+    private Node<K, V> ceiling(K key) {
+      return descending ? absoluteFloor(key, true) : absoluteCeiling(key, true);
+    }
+
+    private Node<K, V> higher(K key) {
+      return descending ? absoluteFloor(key, false) : absoluteCeiling(key, false);
+    }
+
+    private class SubMapEntrySet extends AbstractSet<Map.Entry<K, V>> {
+      @Override
+      public Iterator<Map.Entry<K, V>> iterator() {
+        return descending
+            ? new EntryIterator(absoluteHighest(), absoluteLowFence(), true)
+            : new EntryIterator(absoluteLowest(), absoluteHighFence(), false);
+      }
+
+      @Override
+      public int size() {
+        int size = 0;
+        for (Iterator<Map.Entry<K, V>> iterator = iterator(); iterator.hasNext(); iterator.next()) {
+          size++;
+        }
+        return size;
+      }
+
+      @Override
+      public boolean isEmpty() {
+        return SubMap.this.isEmpty();
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return (o instanceof Map.Entry) && inRange(((Map.Entry<?, ?>) o).getKey())
+            && getMatchingNode(o) != null;
+      }
+
+      @Override
+      public boolean remove(Object o) {
+        if (!(o instanceof Map.Entry) || !inRange(((Map.Entry<?, ?>) o).getKey())) {
+          return false;
+        }
+        Node<K, V> node = getMatchingNode(o);
+        if (node == null) {
+          return false;
+        }
+        deleteNode(node);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * NavigableSet view of the keys of a map or of a range of it
+   */
+  private static class KeySet<E> extends AbstractSet<E> implements NavigableSet<E> {
+    private final NavigableMap<E, ?> map;
+
+    KeySet(NavigableMap<E, ?> map) {
+      this.map = map;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+      Iterator<? extends Map.Entry<E, ?>> entries = map.entrySet().iterator();
+      return new Iterator<E>() {
+        @Override
+        public boolean hasNext() {
+          return entries.hasNext();
+        }
+
+        @Override
+        public E next() {
+          return entries.next().getKey();
+        }
+
+        @Override
+        public void remove() {
+          entries.remove();
+        }
+      };
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+      return descendingSet().iterator();
+    }
+
+    @Override
+    public int size() {
+      return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return map.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return map.containsKey(o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      if (!map.containsKey(o)) {
+        return false;
+      }
+      map.remove(o);
+      return true;
+    }
+
+    @Override
+    public void clear() {
+      map.clear();
+    }
+
+    @Override
+    public Comparator<? super E> comparator() {
+      return map.comparator();
+    }
+
+    @Override
+    public E first() {
+      return map.firstKey();
+    }
+
+    @Override
+    public E last() {
+      return map.lastKey();
+    }
+
+    @Override
+    public E lower(E e) {
+      return map.lowerKey(e);
+    }
+
+    @Override
+    public E floor(E e) {
+      return map.floorKey(e);
+    }
+
+    @Override
+    public E ceiling(E e) {
+      return map.ceilingKey(e);
+    }
+
+    @Override
+    public E higher(E e) {
+      return map.higherKey(e);
+    }
+
+    @Override
+    public E pollFirst() {
+      Map.Entry<E, ?> entry = map.pollFirstEntry();
+      return (entry == null) ? null : entry.getKey();
+    }
+
+    @Override
+    public E pollLast() {
+      Map.Entry<E, ?> entry = map.pollLastEntry();
+      return (entry == null) ? null : entry.getKey();
+    }
+
+    @Override
+    public NavigableSet<E> descendingSet() {
+      return new KeySet<>(map.descendingMap());
+    }
+
+    @Override
+    public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement,
+        boolean toInclusive) {
+      return new KeySet<>(map.subMap(fromElement, fromInclusive, toElement, toInclusive));
+    }
+
+    @Override
+    public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+      return new KeySet<>(map.headMap(toElement, inclusive));
+    }
+
+    @Override
+    public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+      return new KeySet<>(map.tailMap(fromElement, inclusive));
+    }
+
+    @Override
+    public SortedSet<E> subSet(E fromElement, E toElement) {
+      return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<E> headSet(E toElement) {
+      return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<E> tailSet(E fromElement) {
+      return tailSet(fromElement, true);
+    }
+  }
+
+  /**
+   * Collection view of the values of a map or of a range of it
+   */
+  private class Values extends AbstractCollection<V> {
+    private final Map<K, V> map;
+
+    Values(Map<K, V> map) {
+      this.map = map;
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+      Iterator<Map.Entry<K, V>> entries = map.entrySet().iterator();
+      return new Iterator<V>() {
+        @Override
+        public boolean hasNext() {
+          return entries.hasNext();
+        }
+
+        @Override
+        public V next() {
+          return entries.next().getValue();
+        }
+
+        @Override
+        public void remove() {
+          entries.remove();
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return map.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+      map.clear();
+    }
+  }
+}
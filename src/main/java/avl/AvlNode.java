@@ -30,12 +30,11 @@ public class AvlNode<T> {
   private AvlNode<T> right;
   private AvlNode<T> parent;
 
-  private int height;
-
-  private AvlNode<T> closestNode;
-
   private T item;
 
+  private int size;
+  private byte height;
+
   /**
    * Constructor
    *
@@ -49,7 +48,7 @@ public class AvlNode<T> {
     this.right = null;
     this.parent = null;
     height = 0;
-    closestNode = null;
+    size = 1;
 
     this.item = item;
   }
@@ -93,24 +92,53 @@ public class AvlNode<T> {
     return height;
   }
 
+  /**
+   * The height is kept in a byte, as no Avl tree that fits in memory is higher than 127
+   */
   public void updateHeight() {
     if (!hasLeft() && !hasRight()) {
       height = 0;
     } else if (!hasRight()) {
-      height = 1 + getLeft().getHeight();
+      height = (byte) (1 + getLeft().getHeight());
     } else if (!hasLeft()) {
-      height = 1 + getRight().getHeight();
+      height = (byte) (1 + getRight().getHeight());
     } else {
-      height = 1 + Math.max(getLeft().getHeight(), getRight().getHeight());
+      height = (byte) (1 + Math.max(getLeft().getHeight(), getRight().getHeight()));
+    }
+  }
+
+  /**
+   * @return The number of nodes of the subtree rooted at this node
+   */
+  public int getSize() {
+    return size;
+  }
+
+  public void updateSize() {
+    size = 1;
+    if (hasLeft()) {
+      size += getLeft().getSize();
+    }
+    if (hasRight()) {
+      size += getRight().getSize();
     }
   }
 
-  public AvlNode<T> getClosestNode() {
-    return closestNode;
+  /**
+   * @return The number of occurrences of the item, which is always 1; the nodes of multisets are
+   * CountedAvlNode
+   */
+  public int getCount() {
+    return 1;
   }
 
-  public void setClosestNode(AvlNode<T> closestNode) {
-    this.closestNode = closestNode;
+  /**
+   * @throws UnsupportedOperationException if count is not 1, as only a CountedAvlNode keeps a count
+   */
+  public void setCount(int count) {
+    if (count != 1) {
+      throw new UnsupportedOperationException("Only the nodes of multisets count occurrences");
+    }
   }
 
   public boolean hasParent() {
@@ -0,0 +1,308 @@
+//  AvlSetOperations.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Join-based algorithms on detached AvlNode subtrees, following Blelloch, Ferizovic and Sun, "Just
+ * Join for Parallel Ordered Sets" (SPAA 2016). Every operation reuses the nodes it receives and
+ * returns the top of the resulting subtree; the parent link of that top is left to the caller.
+ * Union, intersection and difference of trees of sizes m <= n take O(m log(n/m + 1)) work and
+ * process both halves of every split in parallel once the subtrees are large enough.
+ */
+final class AvlSetOperations {
+
+  /**
+   * Subtrees with fewer nodes than this, added up, are processed sequentially
+   */
+  static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+
+  static final int UNION = 0;
+  static final int INTERSECTION = 1;
+  static final int DIFFERENCE = 2;
+
+  private AvlSetOperations() {
+  }
+
+  /**
+   * Result of splitting a subtree: the nodes smaller than the item, the node equal to it (null if
+   * there is none) and the nodes greater than it
+   */
+  static final class NodeSplit<T> {
+    AvlNode<T> left;
+    AvlNode<T> match;
+    AvlNode<T> right;
+
+    NodeSplit(AvlNode<T> left, AvlNode<T> match, AvlNode<T> right) {
+      this.left = left;
+      this.match = match;
+      this.right = right;
+    }
+  }
+
+  /**
+   * Joins two subtrees with a pivot node whose item is greater than every item of left and smaller
+   * than every item of right. Takes O(|height(left) - height(right)| + 1) time.
+   */
+  static <T> AvlNode<T> join(AvlNode<T> left, AvlNode<T> pivot, AvlNode<T> right) {
+    if (height(left) > height(right) + 1) {
+      return joinRight(left, pivot, right);
+    } else if (height(right) > height(left) + 1) {
+      return joinLeft(left, pivot, right);
+    } else {
+      return link(pivot, left, right);
+    }
+  }
+
+  /**
+   * Joins two subtrees such that every item of left is smaller than every item of right
+   */
+  static <T> AvlNode<T> join(AvlNode<T> left, AvlNode<T> right) {
+    if (left == null) {
+      return right;
+    }
+    NodeSplit<T> lastSplit = splitLast(left);
+    return join(lastSplit.left, lastSplit.match, right);
+  }
+
+  static <T> NodeSplit<T> split(AvlNode<T> node, T item, Comparator<? super T> comparator) {
+    if (node == null) {
+      return new NodeSplit<>(null, null, null);
+    }
+
+    AvlNode<T> left = node.getLeft();
+    AvlNode<T> right = node.getRight();
+    int comparison = comparator.compare(item, node.getItem());
+    if (comparison < 0) {
+      NodeSplit<T> result = split(left, item, comparator);
+      result.right = join(result.right, node, right);
+      return result;
+    } else if (comparison > 0) {
+      NodeSplit<T> result = split(right, item, comparator);
+      result.left = join(left, node, result.left);
+      return result;
+    } else {
+      return new NodeSplit<>(left, node, right);
+    }
+  }
+
+  /**
+   * Applies UNION, INTERSECTION or DIFFERENCE to two subtrees. When both subtrees hold an item, the
+   * node of first is kept.
+   */
+  static <T> AvlNode<T> apply(int operation, AvlNode<T> first, AvlNode<T> second,
+      Comparator<? super T> comparator) {
+    if (size(first) + size(second) < SEQUENTIAL_THRESHOLD) {
+      return applySequentially(operation, first, second, comparator);
+    }
+    return ForkJoinPool.commonPool()
+        .invoke(new SetOperationTask<>(operation, first, second, comparator));
+  }
+
+  private static <T> AvlNode<T> applySequentially(int operation, AvlNode<T> first,
+      AvlNode<T> second, Comparator<? super T> comparator) {
+    if (first == null || second == null) {
+      return baseCase(operation, first, second);
+    }
+
+    AvlNode<T> pivot = (operation == DIFFERENCE) ? second : first;
+    AvlNode<T> pivotLeft = pivot.getLeft();
+    AvlNode<T> pivotRight = pivot.getRight();
+    NodeSplit<T> split = split((operation == DIFFERENCE) ? first : second, pivot.getItem(),
+        comparator);
+
+    AvlNode<T> left;
+    AvlNode<T> right;
+    if (operation == DIFFERENCE) {
+      left = applySequentially(operation, split.left, pivotLeft, comparator);
+      right = applySequentially(operation, split.right, pivotRight, comparator);
+    } else {
+      left = applySequentially(operation, pivotLeft, split.left, comparator);
+      right = applySequentially(operation, pivotRight, split.right, comparator);
+    }
+    return combine(operation, left, pivot, split.match, right);
+  }
+
+  private static <T> AvlNode<T> baseCase(int operation, AvlNode<T> first, AvlNode<T> second) {
+    switch (operation) {
+      case UNION:
+        return (first == null) ? second : first;
+      case INTERSECTION:
+        return null;
+      default:
+        return first;
+    }
+  }
+
+  private static <T> AvlNode<T> combine(int operation, AvlNode<T> left, AvlNode<T> pivot,
+      AvlNode<T> match, AvlNode<T> right) {
+    if (operation == UNION || (operation == INTERSECTION && match != null)) {
+      return join(left, pivot, right);
+    }
+    return join(left, right);
+  }
+
+  private static class SetOperationTask<T> extends RecursiveTask<AvlNode<T>> {
+    private static final long serialVersionUID = 1L;
+
+    private final int operation;
+    private final AvlNode<T> first;
+    private final AvlNode<T> second;
+    private final Comparator<? super T> comparator;
+
+    SetOperationTask(int operation, AvlNode<T> first, AvlNode<T> second,
+        Comparator<? super T> comparator) {
+      this.operation = operation;
+      this.first = first;
+      this.second = second;
+      this.comparator = comparator;
+    }
+
+    @Override
+    protected AvlNode<T> compute() {
+      if (size(first) + size(second) < SEQUENTIAL_THRESHOLD) {
+        return applySequentially(operation, first, second, comparator);
+      }
+      if (first == null || second == null) {
+        return baseCase(operation, first, second);
+      }
+
+      AvlNode<T> pivot = (operation == DIFFERENCE) ? second : first;
+      AvlNode<T> pivotLeft = pivot.getLeft();
+      AvlNode<T> pivotRight = pivot.getRight();
+      NodeSplit<T> split = split((operation == DIFFERENCE) ? first : second, pivot.getItem(),
+          comparator);
+
+      SetOperationTask<T> leftTask;
+      SetOperationTask<T> rightTask;
+      if (operation == DIFFERENCE) {
+        leftTask = new SetOperationTask<>(operation, split.left, pivotLeft, comparator);
+        rightTask = new SetOperationTask<>(operation, split.right, pivotRight, comparator);
+      } else {
+        leftTask = new SetOperationTask<>(operation, pivotLeft, split.left, comparator);
+        rightTask = new SetOperationTask<>(operation, pivotRight, split.right, comparator);
+      }
+      leftTask.fork();
+      AvlNode<T> right = rightTask.compute();
+      AvlNode<T> left = leftTask.join();
+
+      return combine(operation, left, pivot, split.match, right);
+    }
+  }
+
+  private static <T> AvlNode<T> joinRight(AvlNode<T> left, AvlNode<T> pivot, AvlNode<T> right) {
+    AvlNode<T> leftLeft = left.getLeft();
+    AvlNode<T> leftRight = left.getRight();
+
+    if (height(leftRight) <= height(right) + 1) {
+      AvlNode<T> joined = link(pivot, leftRight, right);
+      if (joined.getHeight() <= height(leftLeft) + 1) {
+        return link(left, leftLeft, joined);
+      }
+      return liftRightChild(link(left, leftLeft, liftLeftChild(joined)));
+    }
+
+    AvlNode<T> joined = joinRight(leftRight, pivot, right);
+    link(left, leftLeft, joined);
+    if (joined.getHeight() <= height(leftLeft) + 1) {
+      return left;
+    }
+    return liftRightChild(left);
+  }
+
+  private static <T> AvlNode<T> joinLeft(AvlNode<T> left, AvlNode<T> pivot, AvlNode<T> right) {
+    AvlNode<T> rightLeft = right.getLeft();
+    AvlNode<T> rightRight = right.getRight();
+
+    if (height(rightLeft) <= height(left) + 1) {
+      AvlNode<T> joined = link(pivot, left, rightLeft);
+      if (joined.getHeight() <= height(rightRight) + 1) {
+        return link(right, joined, rightRight);
+      }
+      return liftLeftChild(link(right, liftRightChild(joined), rightRight));
+    }
+
+    AvlNode<T> joined = joinLeft(left, pivot, rightLeft);
+    link(right, joined, rightRight);
+    if (joined.getHeight() <= height(rightRight) + 1) {
+      return right;
+    }
+    return liftLeftChild(right);
+  }
+
+  /**
+   * Detaches the greatest node of a subtree
+   *
+   * @return The remaining nodes in left and the greatest node in match
+   */
+  private static <T> NodeSplit<T> splitLast(AvlNode<T> node) {
+    if (!node.hasRight()) {
+      return new NodeSplit<>(node.getLeft(), node, null);
+    }
+    NodeSplit<T> result = splitLast(node.getRight());
+    result.left = join(node.getLeft(), node, result.left);
+    return result;
+  }
+
+  /**
+   * Same as AvlTree.leftRotation on a detached subtree
+   */
+  private static <T> AvlNode<T> liftLeftChild(AvlNode<T> node) {
+    AvlNode<T> leftNode = node.getLeft();
+    link(node, leftNode.getRight(), node.getRight());
+    return link(leftNode, leftNode.getLeft(), node);
+  }
+
+  /**
+   * Same as AvlTree.rightRotation on a detached subtree
+   */
+  private static <T> AvlNode<T> liftRightChild(AvlNode<T> node) {
+    AvlNode<T> rightNode = node.getRight();
+    link(node, node.getLeft(), rightNode.getLeft());
+    return link(rightNode, node, rightNode.getRight());
+  }
+
+  private static <T> AvlNode<T> link(AvlNode<T> node, AvlNode<T> left, AvlNode<T> right) {
+    node.setLeft(left);
+    if (left != null) {
+      left.setParent(node);
+    }
+    node.setRight(right);
+    if (right != null) {
+      right.setParent(node);
+    }
+    node.updateHeight();
+    node.updateSize();
+    return node;
+  }
+
+  private static int height(AvlNode<?> node) {
+    return (node == null) ? -1 : node.getHeight();
+  }
+
+  private static int size(AvlNode<?> node) {
+    return (node == null) ? 0 : node.getSize();
+  }
+}
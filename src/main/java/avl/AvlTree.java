@@ -22,57 +22,560 @@
 
 package avl;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Created with IntelliJ IDEA. User: Antonio J. Nebro Date: 08/07/13 Time: 15:51 Class implementing
  * Avl trees.
  */
-public class AvlTree<T> {
+public class AvlTree<T> implements Iterable<T> {
+
+  /**
+   * Maximum number of items written by toString()
+   */
+  public static final int TO_STRING_LIMIT = 1000;
 
   AvlNode<T> top;
-  Comparator comparator;
+  /**
+   * Orders the items. Trees built by naturalOrder(), comparingInt and comparingLong get
+   * Comparator.naturalOrder() or the comparators of Comparator.comparingInt and comparingLong, which
+   * call compareTo or compare the primitive keys directly, so every comparison is a single call.
+   */
+  final Comparator<? super T> comparator;
+
+  private static final int BY_COMPARATOR = 0;
+  private static final int BY_NATURAL_ORDER = 1;
+  private static final int BY_INT_KEY = 2;
+  private static final int BY_LONG_KEY = 3;
+
+  /**
+   * Search loop chosen when the tree is built: BY_COMPARATOR, BY_NATURAL_ORDER, BY_INT_KEY or
+   * BY_LONG_KEY
+   */
+  private final int searchPath;
+  private final ToIntFunction<? super T> intKey;
+  private final ToLongFunction<? super T> longKey;
+
+  private boolean multiset;
+  private long totalCount;
+
+  private AvlTreeMetrics metrics;
+
+  private int modCount;
+
+  /**
+   * Counts the modifications that may take nodes out of the tree or move items between nodes, which
+   * invalidate the node a Cursor remembers. Insertions do not change it.
+   */
+  private int nodeRemovals;
 
   /**
    * Constructor
    *
    * @param comparator
    */
-  public AvlTree(Comparator comparator) {
+  public AvlTree(Comparator<? super T> comparator) {
+    this(comparator, null, null);
+  }
+
+  private AvlTree(Comparator<? super T> comparator, ToIntFunction<? super T> intKey,
+      ToLongFunction<? super T> longKey) {
     top = null;
     this.comparator = comparator;
+    this.intKey = intKey;
+    this.longKey = longKey;
+    if (intKey != null) {
+      searchPath = BY_INT_KEY;
+    } else if (longKey != null) {
+      searchPath = BY_LONG_KEY;
+    } else if (comparator == Comparator.naturalOrder()) {
+      searchPath = BY_NATURAL_ORDER;
+    } else {
+      searchPath = BY_COMPARATOR;
+    }
+  }
+
+  /**
+   * @return An empty tree ordered by the natural ordering of its items, which compares items with
+   * compareTo instead of going through a comparator. The same happens for trees constructed with
+   * Comparator.naturalOrder().
+   */
+  public static <T extends Comparable<? super T>> AvlTree<T> naturalOrder() {
+    return new AvlTree<>(Comparator.<T>naturalOrder());
+  }
+
+  /**
+   * @param keyExtractor Function returning the int key by which items are ordered
+   * @return An empty tree whose searches compare the int keys of the items without boxing them
+   */
+  public static <T> AvlTree<T> comparingInt(ToIntFunction<? super T> keyExtractor) {
+    return new AvlTree<>(Comparator.comparingInt(keyExtractor), keyExtractor, null);
+  }
+
+  /**
+   * @param keyExtractor Function returning the long key by which items are ordered
+   * @return An empty tree whose searches compare the long keys of the items without boxing them
+   */
+  public static <T> AvlTree<T> comparingLong(ToLongFunction<? super T> keyExtractor) {
+    return new AvlTree<>(Comparator.comparingLong(keyExtractor), null, keyExtractor);
+  }
+
+  /**
+   * Turns the tree into a multiset: inserting an item that is already in the tree increments the
+   * count of its node, and deleting it decrements the count, removing the node only when it
+   * reaches zero. The tree keeps one node per distinct item, so size(), rank, select and iteration
+   * count distinct items, while count(item) and totalCount() count occurrences. Set operations,
+   * split and join are not supported on multisets.
+   *
+   * @return This tree
+   * @throws IllegalStateException if the tree is not empty
+   */
+  public AvlTree<T> enableMultiset() {
+    if (!avlIsEmpty()) {
+      throw new IllegalStateException("Multiset mode requires an empty tree");
+    }
+    multiset = true;
+    return this;
+  }
+
+  public boolean isMultiset() {
+    return multiset;
   }
 
   public void insert(T item) {
-    AvlNode<T> node = new AvlNode<T>(item);
-    insertAvlNode(node);
+    AvlNode<T> node = newNode(item);
+    if (metrics == null) {
+      insertAvlNode(node);
+    } else {
+      AvlTreeOperationEvent event = new AvlTreeOperationEvent();
+      event.begin();
+      long comparisons = metrics.getComparisons();
+      long rotations = metrics.getRotations();
+
+      insertAvlNode(node);
+
+      endOperation(event, "insert", comparisons, rotations);
+    }
   }
 
+  /**
+   * Inserts node below its closest node, which is found by the same descent that links node to it,
+   * so nodes need no field to remember it between a search and the insertion.
+   *
+   * @param node
+   * @throws IllegalArgumentException if the tree is a multiset and node is not a CountedAvlNode
+   */
   public void insertAvlNode(AvlNode<T> node) {
+    if (multiset && !(node instanceof CountedAvlNode)) {
+      throw new IllegalArgumentException("The nodes of a multiset must be CountedAvlNode");
+    }
     if (avlIsEmpty()) {
       insertTop(node);
     } else {
-      int result = searchClosestNode(node);
+      T item = node.getItem();
+      AvlNode<T> currentNode = top;
+      boolean notFound = true;
+      while (notFound) {
+        int comparison = compareItem(item, currentNode);
+        if (comparison < 0) {
+          if (currentNode.hasLeft()) {
+            currentNode = currentNode.getLeft();
+          } else {
+            notFound = false;
+            insertNodeLeft(currentNode, node);
+          }
+        } else if (comparison > 0) {
+          if (currentNode.hasRight()) {
+            currentNode = currentNode.getRight();
+          } else {
+            notFound = false;
+            insertNodeRight(currentNode, node);
+          }
+        } else {
+          notFound = false;
+          if (multiset) {
+            addOccurrences(currentNode, node.getCount());
+          }
+        }
+      }
+    }
+  }
 
-      switch (result) {
-        case -1:
-          insertNodeLeft(node);
-          break;
-        case +1:
-          insertNodeRight(node);
-          break;
-        default:
-          break;
+  /**
+   * @return A node for item, which keeps a count of occurrences only if the tree is a multiset
+   */
+  private AvlNode<T> newNode(T item) {
+    return multiset ? new CountedAvlNode<>(item) : new AvlNode<>(item);
+  }
+
+  private void addOccurrences(AvlNode<T> node, int occurrences) {
+    node.setCount(Math.addExact(node.getCount(), occurrences));
+    totalCount += occurrences;
+    modCount++;
+  }
+
+  /**
+   * Inserts a batch of items. The batch is sorted first; if it is large compared with the tree, it
+   * is merged with the nodes of the tree in a single ordered pass and the tree is rebuilt bottom-up,
+   * which costs O(n + m) comparisons instead of O(m log n). Small batches are inserted one by one in
+   * sorted order.
+   *
+   * @param items
+   */
+  public void insertAll(Collection<? extends T> items) {
+    @SuppressWarnings("unchecked") // an Object[] used only inside the tree, never returned as T[]
+    T[] sortedItems = (T[]) items.toArray();
+    Arrays.sort(sortedItems, countingComparator());
+
+    if (avlIsEmpty()) {
+      bulkLoad(sortedItems);
+    } else if (isMergeCheaperThanInsertion(sortedItems.length)) {
+      mergeSortedItems(sortedItems);
+    } else {
+      for (T item : sortedItems) {
+        insert(item);
+      }
+    }
+  }
+
+  /**
+   * Compares the cost of inserting batchSize items one by one, about (height + 1) comparisons each,
+   * with the cost of merging them with every node of the tree
+   */
+  private boolean isMergeCheaperThanInsertion(int batchSize) {
+    return (long) batchSize * (top.getHeight() + 1) >= (long) size() + batchSize;
+  }
+
+  private void mergeSortedItems(T[] sortedItems) {
+    List<AvlNode<T>> nodes = new ArrayList<>();
+    AvlNode<T> node = findMinimum();
+
+    int i = 0;
+    while (node != null || i < sortedItems.length) {
+      int comparison = (i == sortedItems.length) ? 1 : (node == null) ? -1
+          : compareItem(sortedItems[i], node);
+      if (comparison > 0) {
+        nodes.add(node);
+        node = findSuccessor(node);
+      } else {
+        if (comparison < 0 && (nodes.isEmpty()
+            || compare(nodes.get(nodes.size() - 1).getItem(), sortedItems[i]) != 0)) {
+          nodes.add(newNode(sortedItems[i]));
+        } else if (multiset) {
+          AvlNode<T> equalNode = (comparison == 0) ? node : nodes.get(nodes.size() - 1);
+          equalNode.setCount(Math.addExact(equalNode.getCount(), 1));
+        }
+        i++;
       }
     }
+
+    setTop(buildBalancedTree(nodes, 0, nodes.size(), null));
+    totalCount = multiset ? totalCount + sortedItems.length : nodes.size();
+    modCount++;
+    nodeRemovals++;
+  }
+
+  /**
+   * Builds the tree bottom-up from items sorted according to the comparator, in linear time and
+   * without rebalancing. Repeated items are inserted once, as insert() does, or counted if the
+   * tree is a multiset.
+   *
+   * @param items Items in ascending order
+   * @throws IllegalStateException if the tree is not empty
+   * @throws IllegalArgumentException if the items are not sorted
+   */
+  public void bulkLoad(Iterator<? extends T> items) {
+    bulkLoad(items, null);
+  }
+
+  /**
+   * @param occurrences Returns the number of occurrences of the item last returned by items, or
+   * null if each item occurs once. Occurrences are only kept if the tree is a multiset.
+   */
+  private void bulkLoad(Iterator<? extends T> items, IntSupplier occurrences) {
+    if (!avlIsEmpty()) {
+      throw new IllegalStateException("Bulk load requires an empty tree");
+    }
+
+    List<AvlNode<T>> nodes = new ArrayList<>();
+    long loadedOccurrences = 0;
+    T previousItem = null;
+    while (items.hasNext()) {
+      T item = items.next();
+      int count = (multiset && occurrences != null) ? occurrences.getAsInt() : 1;
+      int comparison = (previousItem == null) ? -1 : compare(previousItem, item);
+      if (comparison > 0) {
+        throw new IllegalArgumentException(
+            "Items are not sorted: " + item + " comes after " + previousItem);
+      } else if (comparison < 0) {
+        AvlNode<T> node = newNode(item);
+        node.setCount(count);
+        nodes.add(node);
+        previousItem = item;
+        loadedOccurrences += count;
+      } else if (multiset) {
+        AvlNode<T> lastNode = nodes.get(nodes.size() - 1);
+        lastNode.setCount(Math.addExact(lastNode.getCount(), count));
+        loadedOccurrences += count;
+      }
+    }
+
+    if (!nodes.isEmpty()) {
+      setTop(buildBalancedTree(nodes, 0, nodes.size(), null));
+      totalCount = loadedOccurrences;
+      modCount++;
+      nodeRemovals++;
+    }
+  }
+
+  public void bulkLoad(T[] items) {
+    bulkLoad(Arrays.asList(items).iterator());
+  }
+
+  public void bulkLoad(Stream<? extends T> items) {
+    bulkLoad(items.iterator());
+  }
+
+  /**
+   * Writes the items of the tree in ascending order to channel, in the binary format described in
+   * AvlTreeSnapshot. The items of a multiset are written once, with their counts. The channel is
+   * not closed.
+   *
+   * @param codec Encoding of the items
+   */
+  public void writeSnapshot(WritableByteChannel channel, ItemCodec<? super T> codec)
+      throws IOException {
+    writeSnapshot(channel, codec, 0);
+  }
+
+  /**
+   * @param logGeneration Generation of the WriteAheadLog that continues the snapshot
+   */
+  void writeSnapshot(WritableByteChannel channel, ItemCodec<? super T> codec, long logGeneration)
+      throws IOException {
+    AvlTreeSnapshot.write(this, channel, codec, logGeneration);
+  }
+
+  /**
+   * Loads a snapshot written by writeSnapshot from a tree with the same ordering. The items are
+   * streamed into bulkLoad, so the tree is rebuilt in linear time; if the snapshot turns out to be
+   * corrupt, the tree is left empty. The counts of a snapshot of a multiset are only restored if
+   * this tree is a multiset.
+   *
+   * @param codec Encoding of the items
+   * @throws IllegalStateException if the tree is not empty
+   * @throws IOException if the snapshot cannot be read, is corrupt, or is not sorted according to
+   * the comparator
+   */
+  public void loadSnapshot(ReadableByteChannel channel, ItemCodec<? extends T> codec)
+      throws IOException {
+    readSnapshot(channel, codec);
+  }
+
+  /**
+   * Loads a snapshot as loadSnapshot does
+   *
+   * @return The generation of the WriteAheadLog that continues the snapshot, or 0 if there is none
+   */
+  long readSnapshot(ReadableByteChannel channel, ItemCodec<? extends T> codec)
+      throws IOException {
+    if (!avlIsEmpty()) {
+      throw new IllegalStateException("Loading a snapshot requires an empty tree");
+    }
+
+    AvlTreeSnapshot.SnapshotReader<T> items = AvlTreeSnapshot.read(channel, codec);
+    try {
+      bulkLoad(items, items::getCount);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } catch (IllegalArgumentException e) {
+      throw new IOException("The snapshot is not sorted according to the comparator", e);
+    }
+    return items.getLogGeneration();
+  }
+
+
+  /**
+   * Links the nodes in positions [from, to) into a perfectly balanced subtree
+   *
+   * @param nodes Nodes sorted according to the comparator
+   * @param parent Parent of the subtree root
+   * @return The root of the subtree, or null if the range is empty
+   */
+  AvlNode<T> buildBalancedTree(List<AvlNode<T>> nodes, int from, int to, AvlNode<T> parent) {
+    AvlNode<T> result = null;
+
+    if (from < to) {
+      int middle = (from + to) >>> 1;
+      result = nodes.get(middle);
+      result.setParent(parent);
+      result.setLeft(buildBalancedTree(nodes, from, middle, result));
+      result.setRight(buildBalancedTree(nodes, middle + 1, to, result));
+      result.updateHeight();
+      result.updateSize();
+    }
+
+    return result;
+  }
+
+  /**
+   * Joins two trees around a pivot item. Every item of left must be smaller than pivot and every
+   * item of right greater. Takes O(|height(left) - height(right)| + 1) time. Both trees are left
+   * empty.
+   *
+   * @return A tree with the items of left, pivot and the items of right, using the comparator of
+   * left
+   */
+  public static <T> AvlTree<T> join(AvlTree<T> left, T pivot, AvlTree<T> right) {
+    left.checkNotMultiset("join");
+    right.checkNotMultiset("join");
+    if (!left.avlIsEmpty() && left.compareItem(pivot, left.findMaximum()) <= 0) {
+      throw new IllegalArgumentException("The pivot is not greater than the left tree");
+    }
+    if (!right.avlIsEmpty() && left.compareItem(pivot, right.findMinimum()) >= 0) {
+      throw new IllegalArgumentException("The pivot is not smaller than the right tree");
+    }
+
+    AvlNode<T> top = AvlSetOperations.join(left.top, new AvlNode<>(pivot), right.top);
+    left.clear();
+    right.clear();
+    return left.treeOf(top);
+  }
+
+  /**
+   * Splits the tree around item in O(log n) time. The tree is left empty.
+   */
+  public Split<T> split(T item) {
+    checkNotMultiset("split");
+    AvlSetOperations.NodeSplit<T> nodeSplit = AvlSetOperations.split(top, item, countingComparator());
+    clear();
+    return new Split<>(treeOf(nodeSplit.left), itemOf(nodeSplit.match), treeOf(nodeSplit.right));
+  }
+
+  /**
+   * Adds the items of other to this tree. Where both trees hold an item, the one of this tree is
+   * kept. Other is left empty.
+   */
+  public void union(AvlTree<T> other) {
+    applySetOperation(AvlSetOperations.UNION, other);
+  }
+
+  /**
+   * Keeps in this tree only the items that other also holds. Other is left empty.
+   */
+  public void intersection(AvlTree<T> other) {
+    applySetOperation(AvlSetOperations.INTERSECTION, other);
+  }
+
+  /**
+   * Removes from this tree the items that other holds. Other is left empty.
+   */
+  public void difference(AvlTree<T> other) {
+    applySetOperation(AvlSetOperations.DIFFERENCE, other);
+  }
+
+  /**
+   * Runs a set operation with the join-based algorithms of AvlSetOperations, which reuse the nodes
+   * of both trees and work on both halves of every split in parallel
+   */
+  private void applySetOperation(int operation, AvlTree<T> other) {
+    checkNotMultiset("set operations");
+    other.checkNotMultiset("set operations");
+    if (other == this) {
+      if (operation == AvlSetOperations.DIFFERENCE) {
+        clear();
+      }
+      return;
+    }
+
+    AvlNode<T> result = AvlSetOperations.apply(operation, top, other.top, comparator);
+    other.clear();
+    modCount++;
+    nodeRemovals++;
+    top = result;
+    if (top != null) {
+      top.setParent(null);
+    }
+    totalCount = size();
+  }
+
+  private void checkNotMultiset(String operation) {
+    if (multiset) {
+      throw new UnsupportedOperationException("Multisets do not support " + operation);
+    }
+  }
+
+  private AvlTree<T> treeOf(AvlNode<T> node) {
+    AvlTree<T> tree = new AvlTree<>(comparator, intKey, longKey);
+    if (node != null) {
+      tree.setTop(node);
+      tree.totalCount = tree.size();
+    }
+    return tree;
+  }
+
+  private void clear() {
+    modCount++;
+    nodeRemovals++;
+    top = null;
+    totalCount = 0;
   }
 
   public AvlNode<T> search(T item) {
-    AvlNode<T> node = new AvlNode<T>(item);
-    return searchNode(node);
+    if (metrics == null) {
+      return findNode(item);
+    }
+
+    AvlTreeOperationEvent event = new AvlTreeOperationEvent();
+    event.begin();
+    long comparisons = metrics.getComparisons();
+
+    AvlNode<T> result = findNode(item);
+
+    metrics.recordSearch((int) (metrics.getComparisons() - comparisons));
+    endOperation(event, "search", comparisons, metrics.getRotations());
+    return result;
   }
 
-  public AvlNode<T> searchNode(AvlNode<T> targetNode) {
+  /**
+   * Descends from the top looking for item. Trees ordered by the natural ordering or by an int or
+   * long key have loops of their own, in which the comparison is a compareTo call or a primitive
+   * comparison that the JIT can inline; they are not used while metrics count the comparisons.
+   */
+  private AvlNode<T> findNode(T item) {
+    if (metrics == null) {
+      switch (searchPath) {
+        case BY_INT_KEY:
+          return findNodeByIntKey(intKey.applyAsInt(item));
+        case BY_LONG_KEY:
+          return findNodeByLongKey(longKey.applyAsLong(item));
+        case BY_NATURAL_ORDER:
+          return findComparableNode(item);
+        default:
+          break;
+      }
+    }
+
     AvlNode<T> currentNode;
     AvlNode<T> result = null;
 
@@ -84,7 +587,7 @@ public class AvlTree<T> {
       int comparison;
       searchFinished = false;
       while (!searchFinished) {
-        comparison = compareNodes(targetNode, currentNode);
+        comparison = compareItem(item, currentNode);
         if (comparison < 0) {
           if (currentNode.getLeft() != null) {
             currentNode = currentNode.getLeft();
@@ -108,15 +611,94 @@ public class AvlTree<T> {
     return result;
   }
 
+  private AvlNode<T> findNodeByIntKey(int key) {
+    ToIntFunction<? super T> keyExtractor = intKey;
+    AvlNode<T> currentNode = top;
+    while (currentNode != null) {
+      int nodeKey = keyExtractor.applyAsInt(currentNode.getItem());
+      if (key < nodeKey) {
+        currentNode = currentNode.getLeft();
+      } else if (key > nodeKey) {
+        currentNode = currentNode.getRight();
+      } else {
+        return currentNode;
+      }
+    }
+    return null;
+  }
+
+  private AvlNode<T> findNodeByLongKey(long key) {
+    ToLongFunction<? super T> keyExtractor = longKey;
+    AvlNode<T> currentNode = top;
+    while (currentNode != null) {
+      long nodeKey = keyExtractor.applyAsLong(currentNode.getItem());
+      if (key < nodeKey) {
+        currentNode = currentNode.getLeft();
+      } else if (key > nodeKey) {
+        currentNode = currentNode.getRight();
+      } else {
+        return currentNode;
+      }
+    }
+    return null;
+  }
+
+  private AvlNode<T> findComparableNode(T item) {
+    @SuppressWarnings("unchecked") // the comparator is Comparator.naturalOrder(), so T is Comparable
+    Comparable<? super T> comparableItem = (Comparable<? super T>) item;
+    AvlNode<T> currentNode = top;
+    while (currentNode != null) {
+      int comparison = comparableItem.compareTo(currentNode.getItem());
+      if (comparison < 0) {
+        currentNode = currentNode.getLeft();
+      } else if (comparison > 0) {
+        currentNode = currentNode.getRight();
+      } else {
+        return currentNode;
+      }
+    }
+    return null;
+  }
+
+  public AvlNode<T> searchNode(AvlNode<T> targetNode) {
+    return search(targetNode.getItem());
+  }
+
+  public boolean contains(T item) {
+    return search(item) != null;
+  }
+
+  /**
+   * @return The number of occurrences of item, which is 0 or 1 unless the tree is a multiset
+   */
+  public int count(T item) {
+    AvlNode<T> node = search(item);
+    return (node == null) ? 0 : node.getCount();
+  }
+
   public void delete(T item) {
-    deleteNode(new AvlNode<T>(item));
+    if (metrics == null) {
+      deleteItem(item);
+    } else {
+      AvlTreeOperationEvent event = new AvlTreeOperationEvent();
+      event.begin();
+      long comparisons = metrics.getComparisons();
+      long rotations = metrics.getRotations();
+
+      deleteItem(item);
+
+      endOperation(event, "delete", comparisons, rotations);
+    }
   }
 
-  public void deleteNode(AvlNode<T> node) {
+  private void deleteItem(T item) {
     AvlNode<T> nodeFound;
 
-    nodeFound = searchNode(node);
-    if (nodeFound != null) {
+    nodeFound = findNode(item);
+    if (nodeFound != null && nodeFound.getCount() > 1) {
+      addOccurrences(nodeFound, -1);
+    } else if (nodeFound != null) {
+      totalCount--;
       if (nodeFound.isLeaf()) {
         deleteLeafNode(nodeFound);
       } else if (nodeFound.hasOnlyALeftChild()) {
@@ -128,6 +710,8 @@ public class AvlTree<T> {
         T tmp = successor.getItem();
         successor.setItem(nodeFound.getItem());
         nodeFound.setItem(tmp);
+        nodeFound.setCount(successor.getCount());
+        successor.setCount(1);
         if (successor.isLeaf()) {
           deleteLeafNode(successor);
         } else if (successor.hasOnlyALeftChild()) {
@@ -139,7 +723,13 @@ public class AvlTree<T> {
     }
   }
 
+  public void deleteNode(AvlNode<T> node) {
+    delete(node.getItem());
+  }
+
   public void deleteLeafNode(AvlNode<T> node) {
+    modCount++;
+    nodeRemovals++;
     if (!node.hasParent()) {
       top = null;
     } else {
@@ -154,65 +744,181 @@ public class AvlTree<T> {
   }
 
   public void deleteNodeWithALeftChild(AvlNode<T> node) {
+    modCount++;
+    nodeRemovals++;
     node.setItem((T) node.getLeft().getItem());
+    node.setCount(node.getLeft().getCount());
     node.setLeft(null);
     node.updateHeight();
     rebalance(node);
   }
 
   public void deleteNodeWithARightChild(AvlNode<T> node) {
+    modCount++;
+    nodeRemovals++;
     node.setItem((T) node.getRight().getItem());
+    node.setCount(node.getRight().getCount());
     node.setRight(null);
     node.updateHeight();
     rebalance(node);
   }
 
   /**
-   * Searches for the closest node of the node passed as argument
+   * Searches for the closest node of the item passed as argument without allocating a probe node
    *
-   * @param node
-   * @return -1 if node has to be inserted in the left, +1 if it must be inserted in the right, 0
-   * otherwise
+   * @param item
+   * @return the node holding an item equal to item, the node under which item would be inserted,
+   * or null if the tree is empty
    */
-  public int searchClosestNode(AvlNode<T> node) {
+  public AvlNode<T> searchClosest(T item) {
     AvlNode<T> currentNode;
-    int result = 0;
+    AvlNode<T> result = null;
 
     currentNode = top;
-    if (top == null) {
-      result = 0;
-    } else {
-      int comparison;
-      boolean notFound = true;
-      while (notFound) {
-        comparison = compareNodes(node, currentNode);
-        if (comparison < 0) {
-          if (currentNode.hasLeft()) {
-            currentNode = currentNode.getLeft();
-          } else {
-            notFound = false;
-            node.setClosestNode(currentNode);
-            result = -1;
-          }
-        } else if (comparison > 0) {
-          if (currentNode.hasRight()) {
-            currentNode = currentNode.getRight();
-          } else {
-            notFound = false;
-            node.setClosestNode(currentNode);
-            result = 1;
-          }
-        } else {
-          notFound = false;
-          node.setClosestNode(currentNode);
-          result = 0;
-        }
+    while (currentNode != null) {
+      result = currentNode;
+      int comparison = compareItem(item, currentNode);
+      if (comparison < 0) {
+        currentNode = currentNode.getLeft();
+      } else if (comparison > 0) {
+        currentNode = currentNode.getRight();
+      } else {
+        currentNode = null;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * @return A cursor for searches and insertions with key locality. Its first operation starts at
+   * the top.
+   */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  /**
+   * @return The node holding the smallest item, or null if the tree is empty
+   */
+  public AvlNode<T> findMinimum() {
+    AvlNode<T> result = top;
+
+    if (result != null) {
+      while (result.hasLeft()) {
+        result = result.getLeft();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return The node holding the largest item, or null if the tree is empty
+   */
+  public AvlNode<T> findMaximum() {
+    AvlNode<T> result = top;
+
+    if (result != null) {
+      while (result.hasRight()) {
+        result = result.getRight();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return The largest item less than or equal to item, or null if there is none
+   */
+  public T floor(T item) {
+    return itemOf(floorNode(item, true));
+  }
+
+  /**
+   * @return The largest item strictly less than item, or null if there is none
+   */
+  public T lower(T item) {
+    return itemOf(floorNode(item, false));
+  }
+
+  /**
+   * @return The smallest item greater than or equal to item, or null if there is none
+   */
+  public T ceiling(T item) {
+    return itemOf(ceilingNode(item, true));
+  }
+
+  /**
+   * @return The smallest item strictly greater than item, or null if there is none
+   */
+  public T higher(T item) {
+    return itemOf(ceilingNode(item, false));
+  }
+
+  /**
+   * Returns a view of the items between from and to in ascending order. Each iteration descends
+   * the tree once to find its bounds and then walks successors, so it costs O(log n + k) for k
+   * items.
+   *
+   * @throws IllegalArgumentException if from is greater than to
+   */
+  public Iterable<T> range(T from, boolean fromInclusive, T to, boolean toInclusive) {
+    if (compare(from, to) > 0) {
+      throw new IllegalArgumentException("Range start " + from + " is greater than end " + to);
+    }
+
+    return () -> new InOrderIterator(ceilingNode(from, fromInclusive), floorNode(to, toInclusive));
+  }
+
+  /**
+   * @return A view of the items less than (or equal to, if inclusive) to, in ascending order
+   */
+  public Iterable<T> headSet(T to, boolean inclusive) {
+    return () -> new InOrderIterator(findMinimum(), floorNode(to, inclusive));
+  }
+
+  /**
+   * @return A view of the items greater than (or equal to, if inclusive) from, in ascending order
+   */
+  public Iterable<T> tailSet(T from, boolean inclusive) {
+    return () -> new InOrderIterator(ceilingNode(from, inclusive), findMaximum());
+  }
+
+  private AvlNode<T> floorNode(T item, boolean inclusive) {
+    AvlNode<T> result = null;
+
+    AvlNode<T> currentNode = top;
+    while (currentNode != null) {
+      int comparison = compareItem(item, currentNode);
+      if (comparison > 0 || (comparison == 0 && inclusive)) {
+        result = currentNode;
+        currentNode = (comparison == 0) ? null : currentNode.getRight();
+      } else {
+        currentNode = currentNode.getLeft();
       }
     }
+    return result;
+  }
 
+  private AvlNode<T> ceilingNode(T item, boolean inclusive) {
+    AvlNode<T> result = null;
+
+    AvlNode<T> currentNode = top;
+    while (currentNode != null) {
+      int comparison = compareItem(item, currentNode);
+      if (comparison < 0 || (comparison == 0 && inclusive)) {
+        result = currentNode;
+        currentNode = (comparison == 0) ? null : currentNode.getLeft();
+      } else {
+        currentNode = currentNode.getRight();
+      }
+    }
     return result;
   }
 
+  private T itemOf(AvlNode<T> node) {
+    return (node == null) ? null : node.getItem();
+  }
+
   public AvlNode<T> findSuccessor(AvlNode<T> node) {
     AvlNode<T> result;
 
@@ -231,25 +937,19 @@ public class AvlTree<T> {
     return result;
   }
 
-  /**
-   * Insert node in the left of its nearest node
-   *
-   * @param node REQUIRES: a previous call to searchClosestNode(node)
-   */
-  public void insertNodeLeft(AvlNode<T> node) {
-    node.getClosestNode().setLeft(node);
-    node.setParent(node.getClosestNode());
+  private void insertNodeLeft(AvlNode<T> parent, AvlNode<T> node) {
+    modCount++;
+    totalCount += node.getCount();
+    parent.setLeft(node);
+    node.setParent(parent);
     rebalance(node);
   }
 
-  /**
-   * Insert node in the right of its nearest node
-   *
-   * @param node REQUIRES: a previous call to searchClosestNode(node)
-   */
-  public void insertNodeRight(AvlNode<T> node) {
-    node.getClosestNode().setRight(node);
-    node.setParent(node.getClosestNode());
+  private void insertNodeRight(AvlNode<T> parent, AvlNode<T> node) {
+    modCount++;
+    totalCount += node.getCount();
+    parent.setRight(node);
+    node.setParent(parent);
     rebalance(node);
   }
 
@@ -261,40 +961,108 @@ public class AvlTree<T> {
    * @return The experimentoutput of the comparison according to the comparators
    */
   public int compareNodes(AvlNode<T> node1, AvlNode<T> node2) {
-    return comparator.compare(node1.getItem(), node2.getItem());
+    return compareItem(node1.getItem(), node2);
+  }
+
+  /**
+   * Compares an item with the item stored in a node, so that lookups do not need a probe node
+   *
+   * @param item
+   * @param node
+   * @return The result of the comparison according to the comparator
+   */
+  public int compareItem(T item, AvlNode<T> node) {
+    return compare(item, node.getItem());
+  }
+
+  /**
+   * Compares two items, counting the comparison if metrics are enabled. Every comparison of the
+   * tree goes through here, except those of the set operations and the dedicated search loops.
+   */
+  private int compare(T item1, T item2) {
+    if (metrics != null) {
+      metrics.countComparison();
+    }
+    return comparator.compare(item1, item2);
+  }
+
+  /**
+   * @return The comparator to hand to sorting and splitting, which counts its calls while metrics
+   * are enabled
+   */
+  private Comparator<? super T> countingComparator() {
+    return (metrics == null) ? comparator : this::compare;
   }
 
+  /**
+   * Restores the AVL property from node up to the top. Rebalancing stops as soon as the height of a
+   * rebalanced subtree is the same as before the modification, because no ancestor can be affected
+   * from that point on; only the subtree sizes of the remaining ancestors are updated.
+   *
+   * @param node The inserted node, or the deepest node whose subtree has changed
+   */
   public void rebalance(AvlNode<T> node) {
     AvlNode<T> currentNode;
     boolean notFinished;
+    boolean startingNode;
 
     currentNode = node;
     notFinished = true;
+    startingNode = true;
 
     while (notFinished) {
+      int previousHeight = currentNode.getHeight();
+      currentNode.updateHeight();
+      currentNode.updateSize();
+      if (metrics != null) {
+        metrics.countRebalancedLevel();
+      }
+
       if (getBalance(currentNode) == -2) {
         if (height(currentNode.getLeft().getLeft()) >= height(currentNode.getLeft().getRight())) {
           leftRotation(currentNode);
+          if (metrics != null) {
+            metrics.countSingleRotation();
+          }
         } else {
           doubleLeftRotation(currentNode);
+          if (metrics != null) {
+            metrics.countDoubleRotation();
+          }
         }
-      }
-
-      if (getBalance(currentNode) == 2) {
+        currentNode = currentNode.getParent();
+      } else if (getBalance(currentNode) == 2) {
         if (height(currentNode.getRight().getRight()) >= height(currentNode.getRight().getLeft())) {
           rightRotation(currentNode);
+          if (metrics != null) {
+            metrics.countSingleRotation();
+          }
         } else {
           doubleRightRotation(currentNode);
+          if (metrics != null) {
+            metrics.countDoubleRotation();
+          }
         }
+        currentNode = currentNode.getParent();
       }
 
-      if (currentNode.hasParent()) {
-        currentNode.getParent().updateHeight();
+      if (!startingNode && currentNode.getHeight() == previousHeight) {
+        notFinished = false;
+        updateSizesUpToTop(currentNode.getParent());
+      } else if (currentNode.hasParent()) {
         currentNode = currentNode.getParent();
       } else {
-        setTop(currentNode);
         notFinished = false;
       }
+      startingNode = false;
+    }
+  }
+
+  private void updateSizesUpToTop(AvlNode<T> node) {
+    AvlNode<T> currentNode = node;
+    while (currentNode != null) {
+      currentNode.updateSize();
+      currentNode = currentNode.getParent();
     }
   }
 
@@ -312,12 +1080,17 @@ public class AvlTree<T> {
       setTop(leftNode);
     }
 
-    node.setLeft(node.getLeft().getRight());
+    node.setLeft(leftNode.getRight());
+    if (node.hasLeft()) {
+      node.getLeft().setParent(node);
+    }
     leftNode.setRight(node);
     node.setParent(leftNode);
 
     node.updateHeight();
+    node.updateSize();
     leftNode.updateHeight();
+    leftNode.updateSize();
   }
 
   public void rightRotation(AvlNode<T> node) {
@@ -334,12 +1107,17 @@ public class AvlTree<T> {
       setTop(rightNode);
     }
 
-    node.setRight(node.getRight().getLeft());
+    node.setRight(rightNode.getLeft());
+    if (node.hasRight()) {
+      node.getRight().setParent(node);
+    }
     rightNode.setLeft(node);
     node.setParent(rightNode);
 
     node.updateHeight();
+    node.updateSize();
     rightNode.updateHeight();
+    rightNode.updateSize();
   }
 
   public void doubleLeftRotation(AvlNode<T> node) {
@@ -374,12 +1152,82 @@ public class AvlTree<T> {
     return rightHeight - leftHeight;
   }
 
+  /**
+   * @return The number of items of the tree. In a multiset, the number of distinct items.
+   */
+  public int size() {
+    return (top == null) ? 0 : top.getSize();
+  }
+
+  /**
+   * @return The number of occurrences of all the items, which is size() unless the tree is a
+   * multiset
+   */
+  public long totalCount() {
+    return totalCount;
+  }
+
+  /**
+   * @return The number of items strictly less than item
+   */
+  public int rank(T item) {
+    int result = 0;
+
+    AvlNode<T> currentNode = top;
+    while (currentNode != null) {
+      int comparison = compareItem(item, currentNode);
+      if (comparison < 0) {
+        currentNode = currentNode.getLeft();
+      } else if (comparison > 0) {
+        result += size(currentNode.getLeft()) + 1;
+        currentNode = currentNode.getRight();
+      } else {
+        result += size(currentNode.getLeft());
+        currentNode = null;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param index Position of the item in ascending order, starting at 0
+   * @return The item at position index
+   * @throws IndexOutOfBoundsException if index is negative or not less than size()
+   */
+  public T select(int index) {
+    if (index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+    }
+
+    return selectNode(index).getItem();
+  }
+
+  private AvlNode<T> selectNode(int index) {
+    AvlNode<T> currentNode = top;
+    int remaining = index;
+    while (remaining != size(currentNode.getLeft())) {
+      if (remaining < size(currentNode.getLeft())) {
+        currentNode = currentNode.getLeft();
+      } else {
+        remaining -= size(currentNode.getLeft()) + 1;
+        currentNode = currentNode.getRight();
+      }
+    }
+    return currentNode;
+  }
+
+  private int size(AvlNode<T> node) {
+    return (node == null) ? 0 : node.getSize();
+  }
+
   public boolean avlIsEmpty() {
     return top == null;
   }
 
   public void insertTop(AvlNode<T> node) {
+    modCount++;
     top = node;
+    totalCount = node.getCount();
   }
 
 
@@ -403,23 +1251,466 @@ public class AvlTree<T> {
     return result;
   }
 
-  public String toString() {
-    String result;
+  /**
+   * Starts collecting metrics about comparisons, rotations, rebalancing and search paths, and
+   * emitting AvlTreeOperationEvent Flight Recorder events for slow operations. While metrics are
+   * disabled, which is the default, every operation only pays a null check.
+   *
+   * @return The metrics of the tree, which keep being updated until disableMetrics() is called
+   */
+  public AvlTreeMetrics enableMetrics() {
+    if (metrics == null) {
+      metrics = new AvlTreeMetrics();
+    }
+    return metrics;
+  }
 
-    result = inOrder(top);
+  public void disableMetrics() {
+    metrics = null;
+  }
 
-    return result;
+  /**
+   * @return The metrics of the tree, or null if they are disabled
+   */
+  public AvlTreeMetrics getMetrics() {
+    return metrics;
   }
 
-  private String inOrder(AvlNode<T> node) {
-    String result;
-    if (node == null) {
-      return "";
+  private void endOperation(AvlTreeOperationEvent event, String operation, long comparisons,
+      long rotations) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.operation = operation;
+      event.comparisons = metrics.getComparisons() - comparisons;
+      event.rotations = metrics.getRotations() - rotations;
+      event.treeSize = size();
+      event.treeHeight = (top == null) ? -1 : top.getHeight();
+      event.commit();
+    }
+  }
+
+  /**
+   * Returns an iterator over the items in ascending order. It follows the parent links of the nodes,
+   * so it needs no stack, and it fails fast if the tree is modified while iterating.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return new InOrderIterator(findMinimum(), findMaximum());
+  }
+
+  /**
+   * Applies action to every item in ascending order without allocating per item
+   *
+   * @param action
+   * @throws ConcurrentModificationException if the tree is modified by action
+   */
+  @Override
+  public void forEach(Consumer<? super T> action) {
+    int expectedModCount = modCount;
+
+    AvlNode<T> node = findMinimum();
+    while (node != null && modCount == expectedModCount) {
+      action.accept(node.getItem());
+      node = findSuccessor(node);
+    }
+
+    if (modCount != expectedModCount) {
+      throw new ConcurrentModificationException();
+    }
+  }
+
+  /**
+   * Returns a spliterator over the items in ascending order. It covers a range of ranks and splits
+   * it in halves, so the top of the tree is the first split point of a perfectly balanced tree, and
+   * since subtree sizes are exact the halves are always even. It fails fast if the tree is modified
+   * after the spliterator is created.
+   */
+  @Override
+  public Spliterator<T> spliterator() {
+    return new RankRangeSpliterator(null, 0, size(), modCount);
+  }
+
+  public Stream<T> stream() {
+    return StreamSupport.stream(spliterator(), false);
+  }
+
+  public Stream<T> parallelStream() {
+    return StreamSupport.stream(spliterator(), true);
+  }
+
+  /**
+   * Iterates from firstNode to lastNode, both included. It is empty if either node is null or
+   * firstNode comes after lastNode.
+   */
+  private class InOrderIterator implements Iterator<T> {
+    private AvlNode<T> nextNode;
+    private final AvlNode<T> lastNode;
+    private final int expectedModCount;
+
+    InOrderIterator(AvlNode<T> firstNode, AvlNode<T> lastNode) {
+      if (firstNode == null || lastNode == null || compareNodes(firstNode, lastNode) > 0) {
+        nextNode = null;
+      } else {
+        nextNode = firstNode;
+      }
+      this.lastNode = lastNode;
+      expectedModCount = modCount;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return nextNode != null;
+    }
+
+    @Override
+    public T next() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (nextNode == null) {
+        throw new NoSuchElementException();
+      }
+
+      T item = nextNode.getItem();
+      nextNode = (nextNode == lastNode) ? null : findSuccessor(nextNode);
+      return item;
+    }
+  }
+
+  /**
+   * Covers the items whose ranks are in [fromIndex, toIndex). The node of the first item is looked
+   * up with selectNode when the traversal starts and the following ones are reached through
+   * findSuccessor.
+   */
+  private class RankRangeSpliterator implements Spliterator<T> {
+    private AvlNode<T> nextNode;
+    private int fromIndex;
+    private final int toIndex;
+    private final int expectedModCount;
+
+    RankRangeSpliterator(AvlNode<T> nextNode, int fromIndex, int toIndex, int expectedModCount) {
+      this.nextNode = nextNode;
+      this.fromIndex = fromIndex;
+      this.toIndex = toIndex;
+      this.expectedModCount = expectedModCount;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (fromIndex >= toIndex) {
+        return false;
+      }
+
+      if (nextNode == null) {
+        nextNode = selectNode(fromIndex);
+      }
+      T item = nextNode.getItem();
+      fromIndex++;
+      nextNode = (fromIndex < toIndex) ? findSuccessor(nextNode) : null;
+      action.accept(item);
+      return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+      if (fromIndex < toIndex && modCount == expectedModCount) {
+        AvlNode<T> node = (nextNode == null) ? selectNode(fromIndex) : nextNode;
+        int remaining = toIndex - fromIndex;
+        fromIndex = toIndex;
+        nextNode = null;
+        while (remaining > 0 && modCount == expectedModCount) {
+          action.accept(node.getItem());
+          remaining--;
+          if (remaining > 0) {
+            node = findSuccessor(node);
+          }
+        }
+      }
+
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+      int middle = (fromIndex + toIndex) >>> 1;
+      if (middle == fromIndex) {
+        return null;
+      }
+
+      Spliterator<T> prefix = new RankRangeSpliterator(nextNode, fromIndex, middle,
+          expectedModCount);
+      nextNode = null;
+      fromIndex = middle;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return toIndex - fromIndex;
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | SORTED | DISTINCT | NONNULL | SIZED | SUBSIZED;
+    }
+
+    @Override
+    public Comparator<? super T> getComparator() {
+      return comparator;
+    }
+  }
+
+  /**
+   * Finger for searches and insertions near the previous one. The cursor remembers the last node it
+   * accessed and starts the next operation there: it climbs the parent links only until an
+   * ancestor bounds the item, and descends from the last node passed that is on the near side of
+   * the item. That costs O(log d) comparisons, d being the number of items between the previous
+   * item and the new one, instead of O(log n); appending increasing items costs one comparison. A
+   * deletion or any other modification that removes nodes sends the next operation back to the
+   * top; insertions, by this cursor or otherwise, keep it valid.
+   */
+  public class Cursor {
+    private AvlNode<T> node;
+    private int comparison;
+    private int expectedNodeRemovals;
+
+    Cursor() {
+      node = null;
+      expectedNodeRemovals = nodeRemovals;
+    }
+
+    /**
+     * @return The node holding an item equal to item, or null if there is none
+     */
+    public AvlNode<T> search(T item) {
+      locate(item);
+      return (comparison == 0) ? node : null;
+    }
+
+    public boolean contains(T item) {
+      return search(item) != null;
+    }
+
+    /**
+     * Inserts item below the node where the search for it ends. The cursor is left on the node of
+     * item.
+     */
+    public void insert(T item) {
+      locate(item);
+      if (node == null) {
+        node = newNode(item);
+        insertTop(node);
+      } else if (comparison < 0) {
+        AvlNode<T> newNode = newNode(item);
+        insertNodeLeft(node, newNode);
+        node = newNode;
+      } else if (comparison > 0) {
+        AvlNode<T> newNode = newNode(item);
+        insertNodeRight(node, newNode);
+        node = newNode;
+      } else if (multiset) {
+        addOccurrences(node, 1);
+      }
+    }
+
+    /**
+     * @return The node of the last search or insertion, which is the closest node to the item when
+     * it was not found, or null if the cursor has not been used or its node was removed
+     */
+    public AvlNode<T> getNode() {
+      return (expectedNodeRemovals == nodeRemovals) ? node : null;
+    }
+
+    /**
+     * Moves the cursor to the node holding an item equal to item or, if there is none, to the node
+     * under which item would be inserted, and keeps the result of comparing item with it
+     */
+    private void locate(T item) {
+      if (node == null || expectedNodeRemovals != nodeRemovals) {
+        expectedNodeRemovals = nodeRemovals;
+        descend(item, null, 0, top);
+        return;
+      }
+
+      comparison = compareItem(item, node);
+      if (comparison == 0) {
+        return;
+      }
+
+      // The last node passed on the near side of item; item is between it and the first ancestor
+      // reached from the other side, so it is in the subtree of the child of start facing item
+      AvlNode<T> start = node;
+      AvlNode<T> currentNode = node;
+      while (true) {
+        while (currentNode.hasParent() && isOnNearSide(currentNode, comparison)) {
+          currentNode = currentNode.getParent();
+        }
+        if (!currentNode.hasParent()) {
+          break;
+        }
+
+        AvlNode<T> ancestor = currentNode.getParent();
+        int ancestorComparison = compareItem(item, ancestor);
+        if (ancestorComparison == 0) {
+          node = ancestor;
+          comparison = 0;
+          return;
+        } else if (Integer.signum(ancestorComparison) != Integer.signum(comparison)) {
+          break;
+        }
+        start = ancestor;
+        currentNode = ancestor;
+      }
+
+      descend(item, start, comparison,
+          (comparison < 0) ? start.getLeft() : start.getRight());
+    }
+
+    /**
+     * @return true if the parent of child is on the same side of item as child, which is the case
+     * when item is greater than child and child is a right child, or smaller and a left child
+     */
+    private boolean isOnNearSide(AvlNode<T> child, int comparison) {
+      AvlNode<T> parent = child.getParent();
+      return (comparison > 0) ? parent.getRight() == child : parent.getLeft() == child;
+    }
+
+    private void descend(T item, AvlNode<T> closestNode, int closestComparison,
+        AvlNode<T> currentNode) {
+      while (currentNode != null) {
+        closestNode = currentNode;
+        closestComparison = compareItem(item, currentNode);
+        if (closestComparison < 0) {
+          currentNode = currentNode.getLeft();
+        } else if (closestComparison > 0) {
+          currentNode = currentNode.getRight();
+        } else {
+          currentNode = null;
+        }
+      }
+      node = closestNode;
+      comparison = closestComparison;
+    }
+  }
+
+  /**
+   * Result of split(item): a tree with the smaller items, the item of the tree equal to item (null
+   * if there was none) and a tree with the greater items
+   */
+  public static class Split<T> {
+    private final AvlTree<T> left;
+    private final T item;
+    private final AvlTree<T> right;
+
+    Split(AvlTree<T> left, T item, AvlTree<T> right) {
+      this.left = left;
+      this.item = item;
+      this.right = right;
+    }
+
+    public AvlTree<T> getLeft() {
+      return left;
+    }
+
+    public T getItem() {
+      return item;
+    }
+
+    public AvlTree<T> getRight() {
+      return right;
+    }
+  }
+
+  /**
+   * Returns the items in pre-order as " | item" each, up to TO_STRING_LIMIT items; see export
+   */
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder();
+    try {
+      export(result, TraversalOrder.PRE_ORDER, TO_STRING_LIMIT);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // a StringBuilder does not throw
+    }
+    return result.toString();
+  }
+
+  /**
+   * Writes the items to output as " | item" each, walking the nodes through their parent links so
+   * that nothing is built but the text of each item. If the tree has more than maximumItems items,
+   * the rest are replaced by " | ... (k more)".
+   *
+   * @param output Destination, such as a StringBuilder or a Writer
+   * @param order Order in which the items are written
+   * @param maximumItems Maximum number of items written
+   * @throws IllegalArgumentException if maximumItems is negative
+   * @throws NullPointerException if order is null
+   */
+  public void export(Appendable output, TraversalOrder order, int maximumItems)
+      throws IOException {
+    Objects.requireNonNull(order);
+    if (maximumItems < 0) {
+      throw new IllegalArgumentException("Negative maximum number of items: " + maximumItems);
+    }
+
+    int writtenItems = 0;
+    if (order == TraversalOrder.LEVEL_ORDER) {
+      ArrayDeque<AvlNode<T>> pendingNodes = new ArrayDeque<>();
+      if (top != null) {
+        pendingNodes.add(top);
+      }
+      while (!pendingNodes.isEmpty() && writtenItems < maximumItems) {
+        AvlNode<T> node = pendingNodes.poll();
+        appendItem(output, node);
+        writtenItems++;
+        if (node.hasLeft()) {
+          pendingNodes.add(node.getLeft());
+        }
+        if (node.hasRight()) {
+          pendingNodes.add(node.getRight());
+        }
+      }
     } else {
-      result = " | " + node.getItem();
-      result += inOrder(node.getLeft());
-      result += inOrder(node.getRight());
-      return result;
+      boolean inOrder = (order == TraversalOrder.IN_ORDER);
+      AvlNode<T> node = inOrder ? findMinimum() : top;
+      while (node != null && writtenItems < maximumItems) {
+        appendItem(output, node);
+        writtenItems++;
+        node = inOrder ? findSuccessor(node) : findPreOrderSuccessor(node);
+      }
+    }
+
+    if (writtenItems < size()) {
+      output.append(" | ... (").append(String.valueOf(size() - writtenItems)).append(" more)");
+    }
+  }
+
+  private void appendItem(Appendable output, AvlNode<T> node) throws IOException {
+    output.append(" | ").append(String.valueOf(node.getItem()));
+  }
+
+  /**
+   * @return The node visited after node in pre-order, or null if node is the last one
+   */
+  private AvlNode<T> findPreOrderSuccessor(AvlNode<T> node) {
+    if (node.hasLeft()) {
+      return node.getLeft();
+    } else if (node.hasRight()) {
+      return node.getRight();
+    }
+
+    while (node.hasParent()) {
+      AvlNode<T> parent = node.getParent();
+      if (parent.getLeft() == node && parent.hasRight()) {
+        return parent.getRight();
+      }
+      node = parent;
     }
+    return null;
   }
 }
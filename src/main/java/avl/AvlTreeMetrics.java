@@ -0,0 +1,140 @@
+//  AvlTreeMetrics.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+/**
+ * Counters of the work done by an AvlTree, collected only while they are enabled with
+ * AvlTree.enableMetrics(). Like the tree, they are not thread-safe.
+ */
+public class AvlTreeMetrics {
+
+  private long comparisons;
+  private long singleRotations;
+  private long doubleRotations;
+  private long rebalancedLevels;
+  private long searches;
+  private long searchPathLength;
+  private int maximumSearchPathLength;
+
+  /**
+   * @return The number of calls to the comparator, including those made to sort or merge batches
+   * and to split the tree. The comparisons of union, intersection and difference are not counted,
+   * because they run in parallel and the counters are not thread-safe.
+   */
+  public long getComparisons() {
+    return comparisons;
+  }
+
+  /**
+   * @return The number of single rotations done to rebalance the tree
+   */
+  public long getSingleRotations() {
+    return singleRotations;
+  }
+
+  /**
+   * @return The number of double rotations done to rebalance the tree
+   */
+  public long getDoubleRotations() {
+    return doubleRotations;
+  }
+
+  /**
+   * @return The number of single rotations done to rebalance the tree, where a double rotation
+   * counts as two
+   */
+  public long getRotations() {
+    return singleRotations + 2 * doubleRotations;
+  }
+
+  /**
+   * @return The number of levels walked up by rebalance
+   */
+  public long getRebalancedLevels() {
+    return rebalancedLevels;
+  }
+
+  /**
+   * @return The number of calls to search or contains
+   */
+  public long getSearches() {
+    return searches;
+  }
+
+  /**
+   * @return The number of nodes visited by all the searches
+   */
+  public long getSearchPathLength() {
+    return searchPathLength;
+  }
+
+  public int getMaximumSearchPathLength() {
+    return maximumSearchPathLength;
+  }
+
+  public double getAverageSearchPathLength() {
+    return (searches == 0) ? 0.0 : (double) searchPathLength / searches;
+  }
+
+  public void reset() {
+    comparisons = 0;
+    singleRotations = 0;
+    doubleRotations = 0;
+    rebalancedLevels = 0;
+    searches = 0;
+    searchPathLength = 0;
+    maximumSearchPathLength = 0;
+  }
+
+  void countComparison() {
+    comparisons++;
+  }
+
+  void countSingleRotation() {
+    singleRotations++;
+  }
+
+  void countDoubleRotation() {
+    doubleRotations++;
+  }
+
+  void countRebalancedLevel() {
+    rebalancedLevels++;
+  }
+
+  void recordSearch(int pathLength) {
+    searches++;
+    searchPathLength += pathLength;
+    maximumSearchPathLength = Math.max(maximumSearchPathLength, pathLength);
+  }
+
+  @Override
+  public String toString() {
+    return "comparisons=" + comparisons
+        + ", singleRotations=" + singleRotations
+        + ", doubleRotations=" + doubleRotations
+        + ", rebalancedLevels=" + rebalancedLevels
+        + ", searches=" + searches
+        + ", averageSearchPathLength=" + getAverageSearchPathLength()
+        + ", maximumSearchPathLength=" + maximumSearchPathLength;
+  }
+}
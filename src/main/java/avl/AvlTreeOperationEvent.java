@@ -0,0 +1,61 @@
+//  AvlTreeOperationEvent.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for a search, insert or delete on an AvlTree with metrics enabled. Only
+ * operations that take longer than the threshold, 1 ms unless the recording sets another one, are
+ * recorded.
+ */
+@Name("avl.AvlTreeOperation")
+@Label("AVL Tree Operation")
+@Category("AVL Tree")
+@Description("Slow search, insert or delete on an AvlTree")
+@StackTrace(false)
+@Threshold("1 ms")
+class AvlTreeOperationEvent extends Event {
+
+  @Label("Operation")
+  String operation;
+
+  @Label("Comparisons")
+  @Description("Comparator calls made by the operation")
+  long comparisons;
+
+  @Label("Rotations")
+  @Description("Single rotations made by the operation, where a double rotation counts as two")
+  long rotations;
+
+  @Label("Tree Size")
+  int treeSize;
+
+  @Label("Tree Height")
+  int treeHeight;
+}
@@ -0,0 +1,341 @@
+//  AvlTreeSnapshot.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary snapshot of the items of an AvlTree. Items are written in ascending order through a
+ * buffer, so a snapshot is loaded back with bulkLoad in linear time and without rebalancing. All
+ * numbers are big-endian. The format is:
+ *
+ * <pre>
+ *   header, HEADER_SIZE bytes:
+ *     offset 0   int   MAGIC
+ *     offset 4   int   VERSION
+ *     offset 8   int   fixed size of the items, or ItemCodec.VARIABLE_SIZE
+ *     offset 12  int   flags: COUNTED if the tree is a multiset
+ *     offset 16  long  number of distinct items
+ *     offset 24  long  generation of the write-ahead log that continues the snapshot, or 0
+ *   items in ascending order, each one preceded by an int length if the size is variable and,
+ *   if COUNTED, followed by its int number of occurrences
+ *   trailer: int CRC32C of the header and the items
+ * </pre>
+ */
+final class AvlTreeSnapshot {
+
+  static final int MAGIC = 0x41564C53; // "AVLS"
+  static final int VERSION = 2;
+  static final int HEADER_SIZE = 32;
+
+  /**
+   * Flag of the snapshots of multisets, whose items are followed by their counts
+   */
+  static final int COUNTED = 1;
+
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private AvlTreeSnapshot() {
+  }
+
+  /**
+   * @param logGeneration Generation of the WriteAheadLog whose records are to be replayed on top
+   * of the snapshot, or 0 if there is none
+   */
+  static <T> void write(AvlTree<T> tree, WritableByteChannel channel, ItemCodec<? super T> codec,
+      long logGeneration) throws IOException {
+    SnapshotWriter writer = new SnapshotWriter(channel);
+    int fixedSize = codec.fixedSize();
+
+    boolean counted = tree.isMultiset();
+
+    writer.reserve(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putInt(fixedSize)
+        .putInt(counted ? COUNTED : 0).putLong(tree.size()).putLong(logGeneration);
+    for (AvlNode<T> node = tree.findMinimum(); node != null; node = tree.findSuccessor(node)) {
+      writeItem(writer, node.getItem(), codec, fixedSize);
+      if (counted) {
+        writer.reserve(Integer.BYTES).putInt(node.getCount());
+      }
+    }
+    writer.finish();
+  }
+
+  private static <T> void writeItem(SnapshotWriter writer, T item, ItemCodec<? super T> codec,
+      int fixedSize) throws IOException {
+    if (fixedSize == ItemCodec.VARIABLE_SIZE) {
+      ByteBuffer buffer = writer.reserve(Integer.BYTES + codec.maximumEncodedSize(item));
+      int lengthPosition = buffer.position();
+      buffer.position(lengthPosition + Integer.BYTES);
+      codec.encode(item, buffer);
+      int size = buffer.position() - lengthPosition - Integer.BYTES;
+      if (size > ItemCodec.MAXIMUM_ENCODED_SIZE) {
+        throw new IOException("Item of " + size + " bytes, larger than the maximum of "
+            + ItemCodec.MAXIMUM_ENCODED_SIZE);
+      }
+      buffer.putInt(lengthPosition, size);
+    } else {
+      ByteBuffer buffer = writer.reserve(fixedSize);
+      int start = buffer.position();
+      codec.encode(item, buffer);
+      if (buffer.position() - start != fixedSize) {
+        throw new IllegalStateException("The codec wrote " + (buffer.position() - start)
+            + " bytes instead of " + fixedSize);
+      }
+    }
+  }
+
+  /**
+   * Reads the header of a snapshot
+   *
+   * @return An iterator over the items of the snapshot, which verifies the checksum when it reaches
+   * the end. Its methods throw UncheckedIOException if the snapshot cannot be read or is corrupt.
+   */
+  static <T> SnapshotReader<T> read(ReadableByteChannel channel, ItemCodec<? extends T> codec)
+      throws IOException {
+    SnapshotReader<T> reader = new SnapshotReader<>(channel, codec);
+    reader.readHeader();
+    return reader;
+  }
+
+  private static class SnapshotWriter {
+    private final WritableByteChannel channel;
+    private final CRC32C checksum;
+    private ByteBuffer buffer;
+
+    SnapshotWriter(WritableByteChannel channel) {
+      this.channel = channel;
+      checksum = new CRC32C();
+      buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /**
+     * @return The buffer, with at least size bytes left
+     */
+    ByteBuffer reserve(int size) throws IOException {
+      if (buffer.remaining() < size) {
+        flush();
+        if (buffer.capacity() < size) {
+          buffer = ByteBuffer.allocateDirect(size);
+        }
+      }
+      return buffer;
+    }
+
+    void finish() throws IOException {
+      flush();
+      buffer.putInt((int) checksum.getValue());
+      buffer.flip();
+      writeFully();
+    }
+
+    private void flush() throws IOException {
+      buffer.flip();
+      checksum.update(buffer.duplicate());
+      writeFully();
+    }
+
+    private void writeFully() throws IOException {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+
+  static class SnapshotReader<T> implements Iterator<T> {
+    private final ReadableByteChannel channel;
+    private final ItemCodec<? extends T> codec;
+    private final CRC32C checksum;
+    private ByteBuffer buffer;
+
+    /**
+     * Position of the buffer from which the bytes are not yet added to the checksum
+     */
+    private int checksumPosition;
+
+    private boolean counted;
+    private long remainingItems;
+    private long logGeneration;
+    private int count;
+    private boolean checksumVerified;
+
+    SnapshotReader(ReadableByteChannel channel, ItemCodec<? extends T> codec) {
+      this.channel = channel;
+      this.codec = codec;
+      checksum = new CRC32C();
+      buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      buffer.flip();
+    }
+
+    void readHeader() throws IOException {
+      fill(HEADER_SIZE);
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException("Not an AVL tree snapshot");
+      }
+      int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported AVL tree snapshot version " + version);
+      }
+      int fixedSize = buffer.getInt();
+      if (fixedSize != codec.fixedSize()) {
+        throw new IOException("The snapshot items have size " + fixedSize
+            + " but the codec expects " + codec.fixedSize());
+      }
+      counted = (buffer.getInt() & COUNTED) != 0;
+      remainingItems = buffer.getLong();
+      if (remainingItems < 0) {
+        throw new IOException("Corrupt AVL tree snapshot: " + remainingItems + " items");
+      }
+      logGeneration = buffer.getLong();
+    }
+
+    long getLogGeneration() {
+      return logGeneration;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (remainingItems > 0) {
+        return true;
+      }
+      if (!checksumVerified) {
+        verifyChecksum();
+        checksumVerified = true;
+      }
+      return false;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      remainingItems--;
+
+      try {
+        int size = codec.fixedSize();
+        if (size == ItemCodec.VARIABLE_SIZE) {
+          fill(Integer.BYTES);
+          size = buffer.getInt();
+          checkItemSize(size);
+        }
+        fill(size);
+        int start = buffer.position();
+        T item = codec.decode(buffer, size);
+        buffer.position(start + size);
+
+        count = 1;
+        if (counted) {
+          fill(Integer.BYTES);
+          count = buffer.getInt();
+          if (count < 1) {
+            throw new IOException("Corrupt AVL tree snapshot: item with " + count + " occurrences");
+          }
+        }
+        return item;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * Rejects a corrupt length before a buffer is allocated for it: it must not exceed
+     * ItemCodec.MAXIMUM_ENCODED_SIZE, nor the bytes left in the channel when they are known
+     */
+    private void checkItemSize(int size) throws IOException {
+      if (size < 0 || size > ItemCodec.MAXIMUM_ENCODED_SIZE) {
+        throw new IOException("Corrupt AVL tree snapshot: item of " + size + " bytes");
+      }
+      if (size > buffer.remaining() && channel instanceof SeekableByteChannel) {
+        SeekableByteChannel seekableChannel = (SeekableByteChannel) channel;
+        if (size > buffer.remaining() + seekableChannel.size() - seekableChannel.position()) {
+          throw new EOFException("Truncated AVL tree snapshot");
+        }
+      }
+    }
+
+    /**
+     * @return The number of occurrences of the item last returned by next, which is 1 unless the
+     * snapshot is of a multiset
+     */
+    int getCount() {
+      return count;
+    }
+
+    private void verifyChecksum() {
+      try {
+        updateChecksum();
+        int expectedChecksum = (int) checksum.getValue();
+        fill(Integer.BYTES);
+        if (buffer.getInt() != expectedChecksum) {
+          throw new IOException("Corrupt AVL tree snapshot: wrong checksum");
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * Reads from the channel until the buffer has at least size bytes left
+     */
+    private void fill(int size) throws IOException {
+      if (buffer.remaining() >= size) {
+        return;
+      }
+
+      updateChecksum();
+      if (buffer.capacity() < size) {
+        ByteBuffer largerBuffer = ByteBuffer.allocateDirect(size);
+        largerBuffer.put(buffer);
+        buffer = largerBuffer;
+      } else {
+        buffer.compact();
+      }
+      while (buffer.position() < size) {
+        if (channel.read(buffer) < 0) {
+          throw new EOFException("Truncated AVL tree snapshot");
+        }
+      }
+      buffer.flip();
+      checksumPosition = 0;
+    }
+
+    /**
+     * Adds the bytes consumed from the buffer to the checksum
+     */
+    private void updateChecksum() {
+      ByteBuffer consumedBytes = buffer.duplicate();
+      consumedBytes.position(checksumPosition).limit(buffer.position());
+      checksum.update(consumedBytes);
+      checksumPosition = buffer.position();
+    }
+  }
+}
@@ -0,0 +1,118 @@
+//  CompactAvlNode.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+/**
+ * Node of a CompactAvlTree. It has no link to its parent and keeps its height in a byte, so with
+ * compressed references it takes 32 bytes instead of the 40 of an AvlNode.
+ */
+public class CompactAvlNode<T> {
+
+  private CompactAvlNode<T> left;
+  private CompactAvlNode<T> right;
+
+  private T item;
+
+  private int size;
+  private byte height;
+
+  /**
+   * Constructor
+   *
+   * @param item
+   */
+  public CompactAvlNode(T item) {
+    if (item == null) {
+      throw new IllegalArgumentException("Item cannot be null");
+    }
+
+    size = 1;
+    this.item = item;
+  }
+
+  public CompactAvlNode<T> getLeft() {
+    return left;
+  }
+
+  public void setLeft(CompactAvlNode<T> left) {
+    this.left = left;
+  }
+
+  public CompactAvlNode<T> getRight() {
+    return right;
+  }
+
+  public void setRight(CompactAvlNode<T> right) {
+    this.right = right;
+  }
+
+  public T getItem() {
+    return item;
+  }
+
+  public void setItem(T item) {
+    if (item == null) {
+      throw new IllegalArgumentException("Item cannot be null");
+    }
+
+    this.item = item;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public void updateHeight() {
+    height = (byte) (1 + Math.max(height(left), height(right)));
+  }
+
+  /**
+   * @return The number of nodes of the subtree rooted at this node
+   */
+  public int getSize() {
+    return size;
+  }
+
+  public void updateSize() {
+    size = 1 + size(left) + size(right);
+  }
+
+  public boolean hasLeft() {
+    return left != null;
+  }
+
+  public boolean hasRight() {
+    return right != null;
+  }
+
+  public boolean isLeaf() {
+    return (!hasLeft() && !hasRight());
+  }
+
+  static int height(CompactAvlNode<?> node) {
+    return (node == null) ? -1 : node.height;
+  }
+
+  static int size(CompactAvlNode<?> node) {
+    return (node == null) ? 0 : node.size;
+  }
+}
@@ -0,0 +1,383 @@
+//  CompactAvlTree.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Avl tree whose nodes have no parent link. insert and delete record the nodes they pass on the way
+ * down in a path stack, which is allocated once per tree, and rebalance by walking that stack back
+ * up to the top. Every node on the path is updated, because the subtree sizes change all the way
+ * up. Compared with AvlTree, each node saves a reference, at the cost of not being able to move
+ * from a node to its successor without a stack.
+ */
+public class CompactAvlTree<T> implements Iterable<T> {
+
+  /**
+   * No Avl tree with less than 2^31 nodes has a longer path from the top to a leaf
+   */
+  private static final int MAXIMUM_PATH_LENGTH = 64;
+
+  private final Comparator<? super T> comparator;
+  private final CompactAvlNode<T>[] path;
+
+  private CompactAvlNode<T> top;
+  private int modCount;
+
+  /**
+   * Constructor
+   *
+   * @param comparator
+   */
+  public CompactAvlTree(Comparator<? super T> comparator) {
+    this.comparator = comparator;
+    path = newPath(MAXIMUM_PATH_LENGTH);
+  }
+
+  @SuppressWarnings("unchecked") // generic arrays cannot be created; the array never leaves the tree
+  private static <T> CompactAvlNode<T>[] newPath(int length) {
+    return (CompactAvlNode<T>[]) new CompactAvlNode<?>[length];
+  }
+
+  public void insert(T item) {
+    if (item == null) {
+      throw new IllegalArgumentException("Item cannot be null");
+    }
+
+    int depth = 0;
+    int comparison = 0;
+    CompactAvlNode<T> currentNode = top;
+    while (currentNode != null) {
+      comparison = compare(item, currentNode);
+      if (comparison == 0) {
+        clearPath(depth);
+        return;
+      }
+      path[depth++] = currentNode;
+      currentNode = (comparison < 0) ? currentNode.getLeft() : currentNode.getRight();
+    }
+
+    CompactAvlNode<T> node = new CompactAvlNode<>(item);
+    if (depth == 0) {
+      top = node;
+    } else if (comparison < 0) {
+      path[depth - 1].setLeft(node);
+    } else {
+      path[depth - 1].setRight(node);
+    }
+    modCount++;
+    rebalancePath(depth);
+  }
+
+  public void delete(T item) {
+    int depth = 0;
+    CompactAvlNode<T> currentNode = top;
+    while (currentNode != null) {
+      int comparison = compare(item, currentNode);
+      if (comparison == 0) {
+        break;
+      }
+      path[depth++] = currentNode;
+      currentNode = (comparison < 0) ? currentNode.getLeft() : currentNode.getRight();
+    }
+    if (currentNode == null) {
+      clearPath(depth);
+      return;
+    }
+
+    CompactAvlNode<T> removedNode = currentNode;
+    if (currentNode.hasLeft() && currentNode.hasRight()) {
+      // the node takes the item of its successor, whose node is unlinked instead
+      path[depth++] = currentNode;
+      removedNode = currentNode.getRight();
+      while (removedNode.hasLeft()) {
+        path[depth++] = removedNode;
+        removedNode = removedNode.getLeft();
+      }
+      currentNode.setItem(removedNode.getItem());
+    }
+
+    CompactAvlNode<T> child =
+        removedNode.hasLeft() ? removedNode.getLeft() : removedNode.getRight();
+    replaceChild(depth - 1, removedNode, child);
+    modCount++;
+    rebalancePath(depth);
+  }
+
+  public CompactAvlNode<T> search(T item) {
+    CompactAvlNode<T> currentNode = top;
+    while (currentNode != null) {
+      int comparison = compare(item, currentNode);
+      if (comparison < 0) {
+        currentNode = currentNode.getLeft();
+      } else if (comparison > 0) {
+        currentNode = currentNode.getRight();
+      } else {
+        return currentNode;
+      }
+    }
+    return null;
+  }
+
+  public boolean contains(T item) {
+    return search(item) != null;
+  }
+
+  /**
+   * @return The node holding the smallest item, or null if the tree is empty
+   */
+  public CompactAvlNode<T> findMinimum() {
+    CompactAvlNode<T> currentNode = top;
+    while (currentNode != null && currentNode.hasLeft()) {
+      currentNode = currentNode.getLeft();
+    }
+    return currentNode;
+  }
+
+  /**
+   * @return The node holding the largest item, or null if the tree is empty
+   */
+  public CompactAvlNode<T> findMaximum() {
+    CompactAvlNode<T> currentNode = top;
+    while (currentNode != null && currentNode.hasRight()) {
+      currentNode = currentNode.getRight();
+    }
+    return currentNode;
+  }
+
+  /**
+   * @return The number of items strictly less than item
+   */
+  public int rank(T item) {
+    int result = 0;
+
+    CompactAvlNode<T> currentNode = top;
+    while (currentNode != null) {
+      int comparison = compare(item, currentNode);
+      if (comparison < 0) {
+        currentNode = currentNode.getLeft();
+      } else if (comparison > 0) {
+        result += CompactAvlNode.size(currentNode.getLeft()) + 1;
+        currentNode = currentNode.getRight();
+      } else {
+        result += CompactAvlNode.size(currentNode.getLeft());
+        currentNode = null;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param index Position of the item in ascending order, starting at 0
+   * @return The item at position index
+   * @throws IndexOutOfBoundsException if index is negative or not less than size()
+   */
+  public T select(int index) {
+    if (index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+    }
+
+    CompactAvlNode<T> currentNode = top;
+    int remaining = index;
+    while (remaining != CompactAvlNode.size(currentNode.getLeft())) {
+      if (remaining < CompactAvlNode.size(currentNode.getLeft())) {
+        currentNode = currentNode.getLeft();
+      } else {
+        remaining -= CompactAvlNode.size(currentNode.getLeft()) + 1;
+        currentNode = currentNode.getRight();
+      }
+    }
+    return currentNode.getItem();
+  }
+
+  public CompactAvlNode<T> getTop() {
+    return top;
+  }
+
+  public int size() {
+    return CompactAvlNode.size(top);
+  }
+
+  public boolean avlIsEmpty() {
+    return top == null;
+  }
+
+  /**
+   * Applies action to every item in ascending order
+   */
+  @Override
+  public void forEach(Consumer<? super T> action) {
+    forEach(top, action);
+  }
+
+  /**
+   * @return An iterator over the items in ascending order, which keeps the nodes still to be
+   * visited in a stack. It fails fast if the tree is modified.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      private final Deque<CompactAvlNode<T>> pendingNodes = pushLeftPath(top, new ArrayDeque<>());
+      private final int expectedModCount = modCount;
+
+      @Override
+      public boolean hasNext() {
+        return !pendingNodes.isEmpty();
+      }
+
+      @Override
+      public T next() {
+        if (modCount != expectedModCount) {
+          throw new ConcurrentModificationException();
+        }
+        if (pendingNodes.isEmpty()) {
+          throw new NoSuchElementException();
+        }
+        CompactAvlNode<T> node = pendingNodes.pop();
+        pushLeftPath(node.getRight(), pendingNodes);
+        return node.getItem();
+      }
+    };
+  }
+
+  /**
+   * Updates and rebalances the nodes of the path stack from depth - 1 up to the top, leaving the
+   * stack empty
+   */
+  private void rebalancePath(int depth) {
+    for (int i = depth - 1; i >= 0; i--) {
+      CompactAvlNode<T> node = path[i];
+      path[i] = null;
+      CompactAvlNode<T> balancedNode = balance(node);
+      if (balancedNode != node) {
+        replaceChild(i - 1, node, balancedNode);
+      }
+    }
+  }
+
+  private void clearPath(int depth) {
+    Arrays.fill(path, 0, depth, null);
+  }
+
+  /**
+   * Replaces oldChild with newChild below the node at position parentIndex of the path stack, or
+   * at the top if parentIndex is -1
+   */
+  private void replaceChild(int parentIndex, CompactAvlNode<T> oldChild,
+      CompactAvlNode<T> newChild) {
+    if (parentIndex < 0) {
+      top = newChild;
+    } else if (path[parentIndex].getLeft() == oldChild) {
+      path[parentIndex].setLeft(newChild);
+    } else {
+      path[parentIndex].setRight(newChild);
+    }
+  }
+
+  /**
+   * Updates the height and size of node and rotates it if it is unbalanced
+   *
+   * @return The top of the rebalanced subtree
+   */
+  private CompactAvlNode<T> balance(CompactAvlNode<T> node) {
+    int balance = CompactAvlNode.height(node.getRight()) - CompactAvlNode.height(node.getLeft());
+    if (balance == -2) {
+      if (CompactAvlNode.height(node.getLeft().getLeft())
+          < CompactAvlNode.height(node.getLeft().getRight())) {
+        node.setLeft(rightRotation(node.getLeft()));
+      }
+      return leftRotation(node);
+    } else if (balance == 2) {
+      if (CompactAvlNode.height(node.getRight().getRight())
+          < CompactAvlNode.height(node.getRight().getLeft())) {
+        node.setRight(leftRotation(node.getRight()));
+      }
+      return rightRotation(node);
+    }
+
+    node.updateHeight();
+    node.updateSize();
+    return node;
+  }
+
+  /**
+   * Lifts the left child of node
+   *
+   * @return The new top of the subtree
+   */
+  private CompactAvlNode<T> leftRotation(CompactAvlNode<T> node) {
+    CompactAvlNode<T> leftNode = node.getLeft();
+    node.setLeft(leftNode.getRight());
+    leftNode.setRight(node);
+
+    node.updateHeight();
+    node.updateSize();
+    leftNode.updateHeight();
+    leftNode.updateSize();
+    return leftNode;
+  }
+
+  /**
+   * Lifts the right child of node
+   *
+   * @return The new top of the subtree
+   */
+  private CompactAvlNode<T> rightRotation(CompactAvlNode<T> node) {
+    CompactAvlNode<T> rightNode = node.getRight();
+    node.setRight(rightNode.getLeft());
+    rightNode.setLeft(node);
+
+    node.updateHeight();
+    node.updateSize();
+    rightNode.updateHeight();
+    rightNode.updateSize();
+    return rightNode;
+  }
+
+  private int compare(T item, CompactAvlNode<T> node) {
+    return comparator.compare(item, node.getItem());
+  }
+
+  private void forEach(CompactAvlNode<T> node, Consumer<? super T> action) {
+    while (node != null) {
+      forEach(node.getLeft(), action);
+      action.accept(node.getItem());
+      node = node.getRight();
+    }
+  }
+
+  private static <T> Deque<CompactAvlNode<T>> pushLeftPath(CompactAvlNode<T> node,
+      Deque<CompactAvlNode<T>> pendingNodes) {
+    while (node != null) {
+      pendingNodes.push(node);
+      node = node.getLeft();
+    }
+    return pendingNodes;
+  }
+}
@@ -0,0 +1,225 @@
+//  ConcurrentAvlTree.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * Thread-safe Avl tree. Lookups first descend the tree without locking under an optimistic stamp of
+ * a StampedLock and only take the read lock if a writer invalidated the stamp; writers take the
+ * write lock. An optimistic descent may observe a tree in the middle of a rotation, so it gives up
+ * when it runs longer than any valid Avl tree is deep or when it fails with an exception, and is
+ * then repeated under the read lock.
+ */
+public class ConcurrentAvlTree<T> {
+
+  /**
+   * No Avl tree with less than 2^31 nodes is deeper than this
+   */
+  private static final int MAXIMUM_DEPTH = 64;
+
+  private static final int EXACT = 0;
+  private static final int FLOOR = 1;
+  private static final int LOWER = 2;
+  private static final int CEILING = 3;
+  private static final int HIGHER = 4;
+
+  private static final InconsistentReadException INCONSISTENT_READ =
+      new InconsistentReadException();
+
+  private final AvlTree<T> tree;
+  private final StampedLock lock;
+
+  /**
+   * Constructor
+   *
+   * @param comparator
+   */
+  public ConcurrentAvlTree(Comparator<? super T> comparator) {
+    tree = new AvlTree<>(comparator);
+    lock = new StampedLock();
+  }
+
+  public void insert(T item) {
+    long stamp = lock.writeLock();
+    try {
+      tree.insert(item);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  public void insertAll(Collection<? extends T> items) {
+    long stamp = lock.writeLock();
+    try {
+      tree.insertAll(items);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  public void delete(T item) {
+    long stamp = lock.writeLock();
+    try {
+      tree.delete(item);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  public boolean contains(T item) {
+    return find(item, EXACT) != null;
+  }
+
+  /**
+   * @return The item of the tree equal to item, or null if there is none
+   */
+  public T get(T item) {
+    return find(item, EXACT);
+  }
+
+  public T floor(T item) {
+    return find(item, FLOOR);
+  }
+
+  public T lower(T item) {
+    return find(item, LOWER);
+  }
+
+  public T ceiling(T item) {
+    return find(item, CEILING);
+  }
+
+  public T higher(T item) {
+    return find(item, HIGHER);
+  }
+
+  public int size() {
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0) {
+      try {
+        int result = tree.size();
+        if (lock.validate(stamp)) {
+          return result;
+        }
+      } catch (RuntimeException e) {
+        // inconsistent view of the tree, read it again under the read lock
+      }
+    }
+
+    stamp = lock.readLock();
+    try {
+      return tree.size();
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  public boolean avlIsEmpty() {
+    return size() == 0;
+  }
+
+  /**
+   * Applies action to every item in ascending order while holding the read lock. Action must not
+   * modify the tree.
+   */
+  public void forEach(Consumer<? super T> action) {
+    long stamp = lock.readLock();
+    try {
+      tree.forEach(action);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  private T find(T item, int mode) {
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0) {
+      try {
+        AvlNode<T> node = descend(item, mode, MAXIMUM_DEPTH);
+        T result = (node == null) ? null : node.getItem();
+        if (lock.validate(stamp)) {
+          return result;
+        }
+      } catch (RuntimeException e) {
+        // inconsistent view of the tree, read it again under the read lock
+      }
+    }
+
+    stamp = lock.readLock();
+    try {
+      AvlNode<T> node = descend(item, mode, Integer.MAX_VALUE);
+      return (node == null) ? null : node.getItem();
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Descends from the top looking for the node that matches item according to mode
+   *
+   * @param maximumDepth Number of levels after which the descent is considered inconsistent
+   * @return The node found, or null if there is none
+   */
+  private AvlNode<T> descend(T item, int mode, int maximumDepth) {
+    AvlNode<T> result = null;
+
+    AvlNode<T> currentNode = tree.getTop();
+    int depth = 0;
+    while (currentNode != null) {
+      if (++depth > maximumDepth) {
+        throw INCONSISTENT_READ;
+      }
+
+      int comparison = tree.compareItem(item, currentNode);
+      if (comparison == 0 && (mode == EXACT || mode == FLOOR || mode == CEILING)) {
+        return currentNode;
+      } else if (comparison < 0 || (comparison == 0 && mode == LOWER)) {
+        if (comparison < 0 && (mode == CEILING || mode == HIGHER)) {
+          result = currentNode;
+        }
+        currentNode = currentNode.getLeft();
+      } else {
+        if (comparison > 0 && (mode == FLOOR || mode == LOWER)) {
+          result = currentNode;
+        }
+        currentNode = currentNode.getRight();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Signals an optimistic descent that went deeper than any consistent tree. It is preallocated and
+   * has no stack trace because it is only used to abandon the descent.
+   */
+  private static class InconsistentReadException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    InconsistentReadException() {
+      super("Inconsistent optimistic read", null, false, false);
+    }
+  }
+}
@@ -0,0 +1,51 @@
+//  CountedAvlNode.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+/**
+ * AvlNode of a multiset, which counts the occurrences of its item. Only trees switched to multiset
+ * mode create them, so the nodes of other trees do not pay for the count.
+ */
+public class CountedAvlNode<T> extends AvlNode<T> {
+
+  private int count;
+
+  /**
+   * Constructor
+   *
+   * @param item
+   */
+  public CountedAvlNode(T item) {
+    super(item);
+    count = 1;
+  }
+
+  @Override
+  public int getCount() {
+    return count;
+  }
+
+  @Override
+  public void setCount(int count) {
+    this.count = count;
+  }
+}
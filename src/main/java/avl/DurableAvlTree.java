@@ -0,0 +1,265 @@
+//  DurableAvlTree.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * Thread-safe Avl tree whose insertions and deletions survive a crash. The state is kept in a
+ * directory as the latest snapshot plus a WriteAheadLog of the mutations made after it. Insert and
+ * delete return once their record is on disk; concurrent calls share the same sync thanks to the
+ * group commit of the log. Checkpoint writes a new snapshot and empties the log.
+ *
+ * Each snapshot stores the generation of the log that continues it. A log of an earlier
+ * generation is already included in the snapshot, which happens when a crash interrupts a
+ * checkpoint after the new snapshot is in place but before the log is emptied, and it is
+ * discarded instead of replayed.
+ *
+ * A mutation is logged before it is applied to the tree, so one whose record cannot be appended
+ * leaves the tree unchanged. If a record cannot be made durable, the tree may hold mutations that
+ * are not on disk: from then on every operation, reads included, throws until the tree is
+ * reopened from the directory.
+ */
+public class DurableAvlTree<T> implements AutoCloseable {
+
+  public static final String SNAPSHOT_FILE_NAME = "tree.snapshot";
+  public static final String LOG_FILE_NAME = "tree.log";
+
+  private final Path directory;
+  private final AvlTree<T> tree;
+  private final ItemCodec<T> codec;
+  private final WriteAheadLog<T> log;
+  private final StampedLock lock;
+
+  private volatile boolean failed;
+
+  private DurableAvlTree(Path directory, AvlTree<T> tree, ItemCodec<T> codec,
+      WriteAheadLog<T> log) {
+    this.directory = directory;
+    this.tree = tree;
+    this.codec = codec;
+    this.log = log;
+    lock = new StampedLock();
+  }
+
+  /**
+   * Recovers the tree stored in directory, loading its snapshot and replaying its log on top of
+   * it. An empty directory gives an empty tree.
+   *
+   * @param directory
+   * @param emptyTree Empty tree, with the ordering of the stored one, that receives the items
+   * @param codec Encoding of the items
+   */
+  public static <T> DurableAvlTree<T> open(Path directory, AvlTree<T> emptyTree,
+      ItemCodec<T> codec) throws IOException {
+    long snapshotLogGeneration = 0;
+    Path snapshot = directory.resolve(SNAPSHOT_FILE_NAME);
+    if (Files.exists(snapshot)) {
+      try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+        snapshotLogGeneration = emptyTree.readSnapshot(channel, codec);
+      }
+    } else if (!emptyTree.avlIsEmpty()) {
+      throw new IllegalStateException("The tree is not empty");
+    }
+
+    Path logPath = directory.resolve(LOG_FILE_NAME);
+    WriteAheadLog<T> log = WriteAheadLog.open(logPath, codec);
+    try {
+      if (log.getGeneration() < snapshotLogGeneration) {
+        log.truncate(snapshotLogGeneration);
+      } else {
+        WriteAheadLog.replay(logPath, codec, emptyTree);
+      }
+    } catch (IOException | RuntimeException e) {
+      log.close();
+      throw e;
+    }
+    return new DurableAvlTree<>(directory, emptyTree, codec, log);
+  }
+
+
+  /**
+   * Inserts item and waits until the insertion is durable. Inserting an item already in the tree
+   * is not logged, unless the tree is a multiset.
+   */
+  public void insert(T item) throws IOException {
+    long sequence;
+    long stamp = lock.writeLock();
+    try {
+      checkNotFailed();
+      if (!tree.isMultiset() && tree.contains(item)) {
+        return;
+      }
+      sequence = log.logInsert(item);
+      tree.insert(item);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+    sync(sequence);
+  }
+
+  /**
+   * Deletes item and waits until the deletion is durable. Deleting an item not in the tree is not
+   * logged.
+   */
+  public void delete(T item) throws IOException {
+    long sequence;
+    long stamp = lock.writeLock();
+    try {
+      checkNotFailed();
+      if (!tree.contains(item)) {
+        return;
+      }
+      sequence = log.logDelete(item);
+      tree.delete(item);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+    sync(sequence);
+  }
+
+  /**
+   * Waits until the record with the given sequence number is durable. If it cannot be, the tree
+   * holds a mutation that is not on disk, and it fails every later operation.
+   */
+  private void sync(long sequence) throws IOException {
+    try {
+      log.sync(sequence);
+    } catch (IOException e) {
+      failed = true;
+      throw e;
+    }
+  }
+
+  private void checkNotFailed() throws IOException {
+    if (failed) {
+      throw new IOException("A write to the log failed; the tree must be reopened");
+    }
+  }
+
+  private void checkReadable() {
+    if (failed) {
+      throw new IllegalStateException("A write to the log failed; the tree must be reopened");
+    }
+  }
+
+  public boolean contains(T item) {
+    long stamp = lock.readLock();
+    try {
+      checkReadable();
+      return tree.contains(item);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  public int size() {
+    long stamp = lock.readLock();
+    try {
+      checkReadable();
+      return tree.size();
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Applies action to every item in ascending order while holding the read lock. Action must not
+   * modify the tree.
+   */
+  public void forEach(Consumer<? super T> action) {
+    long stamp = lock.readLock();
+    try {
+      checkReadable();
+      tree.forEach(action);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Writes a snapshot of the tree and empties the log, starting its next generation. The snapshot
+   * is written to a temporary file that then replaces the previous one, so a crash at any point
+   * leaves a snapshot and a log that recover the tree. Mutations wait for the checkpoint; lookups
+   * do not. Concurrent checkpoints run one after the other.
+   *
+   * Every logged mutation is made durable first, so the snapshot never holds one that failed.
+   */
+  public synchronized void checkpoint() throws IOException {
+    Path snapshot = directory.resolve(SNAPSHOT_FILE_NAME);
+    Path temporarySnapshot = directory.resolve(SNAPSHOT_FILE_NAME + ".tmp");
+
+    long stamp = lock.readLock();
+    try {
+      checkNotFailed();
+      sync(log.getAppendedSequence());
+      long nextLogGeneration = log.getGeneration() + 1;
+      try (FileChannel channel = FileChannel.open(temporarySnapshot, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        tree.writeSnapshot(channel, codec, nextLogGeneration);
+        channel.force(true);
+      }
+      Files.move(temporarySnapshot, snapshot, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+      syncDirectory();
+      log.truncate(nextLogGeneration);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * @return The number of syncs of the log since the tree was opened
+   */
+  public long getSyncCount() {
+    return log.getSyncCount();
+  }
+
+  @Override
+  public void close() throws IOException {
+    long stamp = lock.writeLock();
+    try {
+      log.close();
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Makes the rename of the snapshot durable. Not every platform can open a directory; there the
+   * rename is left to the file system.
+   */
+  private void syncDirectory() {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      // directories cannot be synced on this platform
+    }
+  }
+}
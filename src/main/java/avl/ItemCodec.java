@@ -0,0 +1,130 @@
+//  ItemCodec.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoding of the items of a tree, used by AvlTree.writeSnapshot and loadSnapshot. Items
+ * of a codec with a fixed size are written back to back; otherwise each one is preceded by its
+ * length.
+ */
+public interface ItemCodec<T> {
+
+  int VARIABLE_SIZE = -1;
+
+  /**
+   * Largest encoded item of variable size that snapshots and write-ahead logs accept, so that a
+   * corrupt length cannot make a reader allocate an arbitrarily large buffer
+   */
+  int MAXIMUM_ENCODED_SIZE = 1 << 26;
+
+  /**
+   * @return The number of bytes of every encoded item, or VARIABLE_SIZE if it depends on the item
+   */
+  int fixedSize();
+
+  /**
+   * @return An upper bound of the number of bytes that encode writes for item
+   */
+  default int maximumEncodedSize(T item) {
+    return fixedSize();
+  }
+
+  /**
+   * Writes item at the position of buffer, which has at least maximumEncodedSize(item) bytes left
+   */
+  void encode(T item, ByteBuffer buffer);
+
+  /**
+   * Reads an item from the next size bytes of buffer
+   */
+  T decode(ByteBuffer buffer, int size);
+
+  static ItemCodec<Integer> integers() {
+    return new ItemCodec<Integer>() {
+      @Override
+      public int fixedSize() {
+        return Integer.BYTES;
+      }
+
+      @Override
+      public void encode(Integer item, ByteBuffer buffer) {
+        buffer.putInt(item);
+      }
+
+      @Override
+      public Integer decode(ByteBuffer buffer, int size) {
+        return buffer.getInt();
+      }
+    };
+  }
+
+  static ItemCodec<Long> longs() {
+    return new ItemCodec<Long>() {
+      @Override
+      public int fixedSize() {
+        return Long.BYTES;
+      }
+
+      @Override
+      public void encode(Long item, ByteBuffer buffer) {
+        buffer.putLong(item);
+      }
+
+      @Override
+      public Long decode(ByteBuffer buffer, int size) {
+        return buffer.getLong();
+      }
+    };
+  }
+
+  /**
+   * @return A codec writing strings in UTF-8
+   */
+  static ItemCodec<String> strings() {
+    return new ItemCodec<String>() {
+      @Override
+      public int fixedSize() {
+        return VARIABLE_SIZE;
+      }
+
+      @Override
+      public int maximumEncodedSize(String item) {
+        return 3 * item.length();
+      }
+
+      @Override
+      public void encode(String item, ByteBuffer buffer) {
+        buffer.put(item.getBytes(StandardCharsets.UTF_8));
+      }
+
+      @Override
+      public String decode(ByteBuffer buffer, int size) {
+        byte[] bytes = new byte[size];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+      }
+    };
+  }
+}
@@ -0,0 +1,306 @@
+//  LongAvlTree.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+import java.util.Arrays;
+
+/**
+ * Avl tree of long keys. Nodes are indexes into parallel arrays holding the key, the children and
+ * the height of each node, so keys are never boxed and a node costs 17 bytes of heap. Slots of
+ * deleted nodes are kept in a free list threaded through the left array and reused by insert.
+ */
+public class LongAvlTree {
+
+  public static final int NIL = -1;
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private long[] keys;
+  private int[] left;
+  private int[] right;
+  private byte[] height;
+
+  private int top;
+  private int size;
+  private int freeList;
+  private int firstUnusedSlot;
+  private boolean modified;
+
+  public LongAvlTree() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param initialCapacity Number of nodes the tree can hold before growing its arrays
+   */
+  public LongAvlTree(int initialCapacity) {
+    if (initialCapacity < 1) {
+      throw new IllegalArgumentException("Initial capacity must be positive: " + initialCapacity);
+    }
+
+    keys = new long[initialCapacity];
+    left = new int[initialCapacity];
+    right = new int[initialCapacity];
+    height = new byte[initialCapacity];
+
+    top = NIL;
+    size = 0;
+    freeList = NIL;
+    firstUnusedSlot = 0;
+  }
+
+  /**
+   * @param key
+   * @return true if the key was not in the tree
+   */
+  public boolean insert(long key) {
+    modified = false;
+    top = insert(top, key);
+    return modified;
+  }
+
+  /**
+   * @param key
+   * @return The node holding key, or NIL if it is not in the tree
+   */
+  public int search(long key) {
+    int currentNode = top;
+    while (currentNode != NIL) {
+      long currentKey = keys[currentNode];
+      if (key < currentKey) {
+        currentNode = left[currentNode];
+      } else if (key > currentKey) {
+        currentNode = right[currentNode];
+      } else {
+        return currentNode;
+      }
+    }
+    return NIL;
+  }
+
+  public boolean contains(long key) {
+    return search(key) != NIL;
+  }
+
+  /**
+   * @param key
+   * @return true if the key was in the tree
+   */
+  public boolean delete(long key) {
+    modified = false;
+    top = delete(top, key);
+    return modified;
+  }
+
+  /**
+   * @param node
+   * @return The node holding the smallest key greater than the key of node, or NIL if there is none
+   */
+  public int findSuccessor(int node) {
+    long key = keys[node];
+    int result = NIL;
+    int currentNode = top;
+    while (currentNode != NIL) {
+      if (key < keys[currentNode]) {
+        result = currentNode;
+        currentNode = left[currentNode];
+      } else {
+        currentNode = right[currentNode];
+      }
+    }
+    return result;
+  }
+
+  public long getKey(int node) {
+    return keys[node];
+  }
+
+  public int getLeft(int node) {
+    return left[node];
+  }
+
+  public int getRight(int node) {
+    return right[node];
+  }
+
+  public int getHeight(int node) {
+    return height(node);
+  }
+
+  public int getTop() {
+    return top;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean avlIsEmpty() {
+    return top == NIL;
+  }
+
+  /**
+   * @return The number of nodes the tree can hold before growing its arrays
+   */
+  public int capacity() {
+    return keys.length;
+  }
+
+  private int insert(int node, long key) {
+    if (node == NIL) {
+      modified = true;
+      size++;
+      return allocateNode(key);
+    }
+
+    // insert() may grow the arrays, so the child is stored only once it has returned
+    if (key < keys[node]) {
+      int child = insert(left[node], key);
+      left[node] = child;
+    } else if (key > keys[node]) {
+      int child = insert(right[node], key);
+      right[node] = child;
+    } else {
+      return node;
+    }
+
+    return rebalance(node);
+  }
+
+  private int delete(int node, long key) {
+    if (node == NIL) {
+      return NIL;
+    }
+
+    if (key < keys[node]) {
+      left[node] = delete(left[node], key);
+    } else if (key > keys[node]) {
+      right[node] = delete(right[node], key);
+    } else if (left[node] == NIL || right[node] == NIL) {
+      int child = (left[node] == NIL) ? right[node] : left[node];
+      modified = true;
+      size--;
+      freeNode(node);
+      return child;
+    } else { // has two children
+      int successor = right[node];
+      while (left[successor] != NIL) {
+        successor = left[successor];
+      }
+      keys[node] = keys[successor];
+      right[node] = delete(right[node], keys[successor]);
+    }
+
+    return rebalance(node);
+  }
+
+  private int rebalance(int node) {
+    int result = node;
+
+    updateHeight(node);
+    int balance = getBalance(node);
+    if (balance == -2) {
+      if (height(left[left[node]]) < height(right[left[node]])) {
+        left[node] = rightRotation(left[node]);
+      }
+      result = leftRotation(node);
+    } else if (balance == 2) {
+      if (height(right[right[node]]) < height(left[right[node]])) {
+        right[node] = leftRotation(right[node]);
+      }
+      result = rightRotation(node);
+    }
+
+    return result;
+  }
+
+  private int leftRotation(int node) {
+    int leftNode = left[node];
+
+    left[node] = right[leftNode];
+    right[leftNode] = node;
+
+    updateHeight(node);
+    updateHeight(leftNode);
+
+    return leftNode;
+  }
+
+  private int rightRotation(int node) {
+    int rightNode = right[node];
+
+    right[node] = left[rightNode];
+    left[rightNode] = node;
+
+    updateHeight(node);
+    updateHeight(rightNode);
+
+    return rightNode;
+  }
+
+  private void updateHeight(int node) {
+    height[node] = (byte) (1 + Math.max(height(left[node]), height(right[node])));
+  }
+
+  private int getBalance(int node) {
+    return height(right[node]) - height(left[node]);
+  }
+
+  private int height(int node) {
+    return (node == NIL) ? -1 : height[node];
+  }
+
+  private int allocateNode(long key) {
+    int node;
+    if (freeList != NIL) {
+      node = freeList;
+      freeList = left[node];
+    } else {
+      if (firstUnusedSlot == keys.length) {
+        grow();
+      }
+      node = firstUnusedSlot++;
+    }
+
+    keys[node] = key;
+    left[node] = NIL;
+    right[node] = NIL;
+    height[node] = 0;
+
+    return node;
+  }
+
+  private void freeNode(int node) {
+    left[node] = freeList;
+    freeList = node;
+  }
+
+  private void grow() {
+    int newCapacity = keys.length + (keys.length >> 1) + 1;
+    keys = Arrays.copyOf(keys, newCapacity);
+    left = Arrays.copyOf(left, newCapacity);
+    right = Arrays.copyOf(right, newCapacity);
+    height = Arrays.copyOf(height, newCapacity);
+  }
+}
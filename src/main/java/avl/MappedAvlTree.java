@@ -0,0 +1,245 @@
+//  MappedAvlTree.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * OffHeapAvlTree whose nodes live in a memory-mapped file. Mutations are applied to the mapping in
+ * place, and reopening an index only reads its header and maps its chunks, so pages are loaded
+ * lazily as lookups touch them. All numbers are big-endian. The file layout is:
+ *
+ * <pre>
+ *   header, HEADER_SIZE bytes:
+ *     offset 0   int  MAGIC
+ *     offset 4   int  VERSION
+ *     offset 8   int  key width
+ *     offset 12  int  value width
+ *     offset 16  int  top node (NIL if the tree is empty)
+ *     offset 20  int  number of keys
+ *     offset 24  int  first node of the free list (NIL if empty)
+ *     offset 28  int  first node slot never used
+ *     offset 32  int  number of chunks
+ *   chunk i, at HEADER_SIZE + i * 2^16 * node width: 2^16 nodes laid out as in OffHeapAvlTree
+ * </pre>
+ *
+ * Changes reach the disk when the operating system writes the pages back, or when force() is
+ * called. A crash in the middle of a mutation can leave the file inconsistent.
+ */
+public class MappedAvlTree extends OffHeapAvlTree {
+
+  public static final int MAGIC = 0x41564C49; // "AVLI"
+  public static final int VERSION = 1;
+  public static final int HEADER_SIZE = 4096;
+
+  private static final int MAGIC_OFFSET = 0;
+  private static final int VERSION_OFFSET = 4;
+  private static final int KEY_WIDTH_OFFSET = 8;
+  private static final int VALUE_WIDTH_OFFSET = 12;
+  private static final int TOP_OFFSET = 16;
+  private static final int SIZE_OFFSET = 20;
+  private static final int FREE_LIST_OFFSET = 24;
+  private static final int FIRST_UNUSED_SLOT_OFFSET = 28;
+  private static final int CHUNK_COUNT_OFFSET = 32;
+
+  private FileChannel channel;
+  private MappedByteBuffer header;
+
+  private MappedAvlTree(FileChannel channel, MappedByteBuffer header, int keyWidth,
+      int valueWidth) {
+    super(keyWidth, valueWidth);
+    this.channel = channel;
+    this.header = header;
+  }
+
+  private MappedAvlTree(FileChannel channel, MappedByteBuffer header, int keyWidth, int valueWidth,
+      ByteBuffer[] chunks, int top, int size, int freeList, int firstUnusedSlot) {
+    super(keyWidth, valueWidth, chunks, top, size, freeList, firstUnusedSlot);
+    this.channel = channel;
+    this.header = header;
+  }
+
+  /**
+   * Creates an empty index file, replacing the file if it exists
+   *
+   * @param path
+   * @param keyWidth Number of bytes of every key
+   * @param valueWidth Number of bytes of every value, 0 if the index holds keys only
+   */
+  public static MappedAvlTree create(Path path, int keyWidth, int valueWidth) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+      MappedAvlTree tree = new MappedAvlTree(channel, header, keyWidth, valueWidth);
+
+      header.putInt(MAGIC_OFFSET, MAGIC);
+      header.putInt(VERSION_OFFSET, VERSION);
+      header.putInt(KEY_WIDTH_OFFSET, keyWidth);
+      header.putInt(VALUE_WIDTH_OFFSET, valueWidth);
+      tree.stateChanged();
+
+      return tree;
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens an existing index file. Only the header is read; nodes are paged in on demand.
+   *
+   * @param path
+   * @throws IOException if the file is not an index, or its header is corrupt or describes more
+   * chunks than the file holds
+   */
+  public static MappedAvlTree open(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    MappedByteBuffer header = null;
+    ByteBuffer[] chunks = new ByteBuffer[0];
+    try {
+      if (channel.size() < HEADER_SIZE) {
+        throw new IOException("Not an AVL index file: " + path);
+      }
+      header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+      if (header.getInt(MAGIC_OFFSET) != MAGIC) {
+        throw new IOException("Not an AVL index file: " + path);
+      }
+      if (header.getInt(VERSION_OFFSET) != VERSION) {
+        throw new IOException("Unsupported AVL index version " + header.getInt(VERSION_OFFSET));
+      }
+
+      int keyWidth = header.getInt(KEY_WIDTH_OFFSET);
+      int valueWidth = header.getInt(VALUE_WIDTH_OFFSET);
+      if (keyWidth < 1 || valueWidth < 0
+          || NODES_PER_CHUNK * (KEY_OFFSET + (long) keyWidth + valueWidth) > Integer.MAX_VALUE) {
+        throw new IOException("Corrupt AVL index: key width " + keyWidth + ", value width "
+            + valueWidth);
+      }
+      long chunkBytes = (long) NODES_PER_CHUNK * (KEY_OFFSET + keyWidth + valueWidth);
+      int chunkCount = header.getInt(CHUNK_COUNT_OFFSET);
+      checkHeader(header, chunkCount);
+      if (channel.size() < HEADER_SIZE + chunkCount * chunkBytes) {
+        throw new IOException("Truncated AVL index: " + channel.size() + " bytes for "
+            + chunkCount + " chunks");
+      }
+
+      chunks = new ByteBuffer[chunkCount];
+      for (int i = 0; i < chunks.length; i++) {
+        chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + i * chunkBytes,
+            chunkBytes);
+      }
+
+      return new MappedAvlTree(channel, header, keyWidth, valueWidth, chunks,
+          header.getInt(TOP_OFFSET), header.getInt(SIZE_OFFSET),
+          header.getInt(FREE_LIST_OFFSET), header.getInt(FIRST_UNUSED_SLOT_OFFSET));
+    } catch (IOException | RuntimeException e) {
+      for (ByteBuffer chunk : chunks) {
+        if (chunk != null) {
+          free(chunk);
+        }
+      }
+      if (header != null) {
+        free(header);
+      }
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Checks that the node counts and indexes of the header are consistent with each other and with
+   * the number of chunks
+   */
+  private static void checkHeader(ByteBuffer header, int chunkCount) throws IOException {
+    int top = header.getInt(TOP_OFFSET);
+    int size = header.getInt(SIZE_OFFSET);
+    int freeList = header.getInt(FREE_LIST_OFFSET);
+    int firstUnusedSlot = header.getInt(FIRST_UNUSED_SLOT_OFFSET);
+    if (chunkCount < 0 || chunkCount > (1 << (Integer.SIZE - 1 - CHUNK_SHIFT))
+        || firstUnusedSlot < 0 || firstUnusedSlot > (long) chunkCount * NODES_PER_CHUNK
+        || size < 0 || size > firstUnusedSlot
+        || (size == 0) != (top == NIL) || top < NIL || top >= firstUnusedSlot
+        || freeList < NIL || freeList >= firstUnusedSlot) {
+      throw new IOException("Corrupt AVL index: top " + top + ", size " + size + ", free list "
+          + freeList + ", first unused slot " + firstUnusedSlot + ", " + chunkCount + " chunks");
+    }
+  }
+
+  /**
+   * Writes every modified page of the index to the storage device
+   */
+  public void force() {
+    if (isClosed()) {
+      throw new IllegalStateException("The tree is closed");
+    }
+
+    for (int i = 0; i < getChunkCount(); i++) {
+      ((MappedByteBuffer) getChunk(i)).force();
+    }
+    header.force();
+  }
+
+  /**
+   * Unmaps the index at once and closes its file. Modified pages not yet forced are still written
+   * back by the operating system.
+   */
+  @Override
+  public void close() {
+    if (!isClosed()) {
+      super.close();
+      free(header);
+      header = null;
+      try {
+        channel.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  @Override
+  ByteBuffer allocateChunk(int chunkIndex, int chunkBytes) {
+    try {
+      return channel.map(FileChannel.MapMode.READ_WRITE,
+          HEADER_SIZE + (long) chunkIndex * chunkBytes, chunkBytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  void stateChanged() {
+    header.putInt(TOP_OFFSET, getTop());
+    header.putInt(SIZE_OFFSET, size());
+    header.putInt(FREE_LIST_OFFSET, getFreeList());
+    header.putInt(FIRST_UNUSED_SLOT_OFFSET, getFirstUnusedSlot());
+    header.putInt(CHUNK_COUNT_OFFSET, getChunkCount());
+  }
+}
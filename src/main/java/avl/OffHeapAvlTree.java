@@ -0,0 +1,623 @@
+//  OffHeapAvlTree.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Avl tree whose nodes live outside the Java heap, in direct byte buffers. Keys are fixed-width
+ * byte strings compared as unsigned big-endian numbers, and each node may carry a fixed-width value.
+ * Nodes are addressed by an int index and stored in chunks of 2^16 nodes, so the tree grows by
+ * appending chunks and never copies existing nodes. The layout of a node is:
+ *
+ * <pre>
+ *   offset 0          int   left child (NIL if none)
+ *   offset 4          int   right child (NIL if none)
+ *   offset 8          byte  height
+ *   offset 9          key   keyWidth bytes
+ *   offset 9+keyWidth value valueWidth bytes
+ * </pre>
+ *
+ * close() frees the buffers at once through sun.misc.Unsafe.invokeCleaner. On a runtime without
+ * it, the memory is only returned when the buffers are garbage collected. After close() every
+ * operation that reads or writes nodes throws IllegalStateException.
+ */
+public class OffHeapAvlTree implements AutoCloseable {
+
+  public static final int NIL = -1;
+
+  static final int CHUNK_SHIFT = 16;
+  static final int NODES_PER_CHUNK = 1 << CHUNK_SHIFT;
+  static final int CHUNK_MASK = NODES_PER_CHUNK - 1;
+
+  static final int LEFT_OFFSET = 0;
+  static final int RIGHT_OFFSET = 4;
+  static final int HEIGHT_OFFSET = 8;
+  static final int KEY_OFFSET = 9;
+
+  private static final VarHandle LONG_VIEW =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  /**
+   * sun.misc.Unsafe.invokeCleaner(ByteBuffer) bound to the Unsafe instance, or null if the runtime
+   * does not provide it
+   */
+  private static final MethodHandle INVOKE_CLEANER = findInvokeCleaner();
+
+  private final int keyWidth;
+  private final int valueWidth;
+  private final int nodeWidth;
+
+  private ByteBuffer[] chunks;
+
+  private int top;
+  private int size;
+  private int freeList;
+  private int firstUnusedSlot;
+  private boolean modified;
+
+  /**
+   * Constructor
+   *
+   * @param keyWidth Number of bytes of every key
+   * @param valueWidth Number of bytes of every value, 0 if the tree holds keys only
+   */
+  public OffHeapAvlTree(int keyWidth, int valueWidth) {
+    if (keyWidth < 1) {
+      throw new IllegalArgumentException("Key width must be positive: " + keyWidth);
+    }
+    if (valueWidth < 0) {
+      throw new IllegalArgumentException("Value width cannot be negative: " + valueWidth);
+    }
+    if ((long) (KEY_OFFSET + keyWidth + valueWidth) * NODES_PER_CHUNK > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Node width is too large: " + (keyWidth + valueWidth));
+    }
+
+    this.keyWidth = keyWidth;
+    this.valueWidth = valueWidth;
+    this.nodeWidth = KEY_OFFSET + keyWidth + valueWidth;
+
+    chunks = new ByteBuffer[0];
+    top = NIL;
+    size = 0;
+    freeList = NIL;
+    firstUnusedSlot = 0;
+  }
+
+  /**
+   * Constructor used to reopen a tree whose nodes are already stored in chunks
+   */
+  OffHeapAvlTree(int keyWidth, int valueWidth, ByteBuffer[] chunks, int top, int size,
+      int freeList, int firstUnusedSlot) {
+    this(keyWidth, valueWidth);
+    this.chunks = chunks;
+    this.top = top;
+    this.size = size;
+    this.freeList = freeList;
+    this.firstUnusedSlot = firstUnusedSlot;
+  }
+
+  /**
+   * Inserts a key in a tree without values
+   *
+   * @param key
+   * @return true if the key was not in the tree
+   */
+  public boolean insert(byte[] key) {
+    return insert(key, null);
+  }
+
+  /**
+   * Inserts a key with its value. If the key is already in the tree its value is replaced.
+   *
+   * @param key
+   * @param value valueWidth bytes, or null to leave the value slot zeroed
+   * @return true if the key was not in the tree
+   */
+  public boolean insert(byte[] key, byte[] value) {
+    checkOpen();
+    checkKey(key);
+    if (value != null && value.length != valueWidth) {
+      throw new IllegalArgumentException(
+          "Value must have " + valueWidth + " bytes: " + value.length);
+    }
+
+    modified = false;
+    top = insert(top, key, value);
+    if (modified) {
+      stateChanged();
+    }
+    return modified;
+  }
+
+  /**
+   * @param key
+   * @return The node holding key, or NIL if it is not in the tree
+   */
+  public int search(byte[] key) {
+    checkOpen();
+    checkKey(key);
+
+    int currentNode = top;
+    while (currentNode != NIL) {
+      int comparison = compareKey(key, currentNode);
+      if (comparison < 0) {
+        currentNode = left(currentNode);
+      } else if (comparison > 0) {
+        currentNode = right(currentNode);
+      } else {
+        return currentNode;
+      }
+    }
+    return NIL;
+  }
+
+  public boolean contains(byte[] key) {
+    return search(key) != NIL;
+  }
+
+  /**
+   * @param key
+   * @return true if the key was in the tree
+   */
+  public boolean delete(byte[] key) {
+    checkOpen();
+    checkKey(key);
+
+    modified = false;
+    top = delete(top, key);
+    if (modified) {
+      stateChanged();
+    }
+    return modified;
+  }
+
+  /**
+   * @param node
+   * @return The node holding the smallest key greater than the key of node, or NIL if there is none
+   */
+  public int findSuccessor(int node) {
+    checkOpen();
+
+    int result;
+    if (right(node) != NIL) {
+      result = right(node);
+      while (left(result) != NIL) {
+        result = left(result);
+      }
+    } else {
+      result = NIL;
+      int currentNode = top;
+      while (currentNode != node) {
+        if (compareNodes(node, currentNode) < 0) {
+          result = currentNode;
+          currentNode = left(currentNode);
+        } else {
+          currentNode = right(currentNode);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Copies the key of node into destination, which must hold at least keyWidth bytes
+   */
+  public void getKey(int node, byte[] destination) {
+    checkOpen();
+    chunk(node).get(offset(node) + KEY_OFFSET, destination, 0, keyWidth);
+  }
+
+  /**
+   * Copies the value of node into destination, which must hold at least valueWidth bytes
+   */
+  public void getValue(int node, byte[] destination) {
+    checkOpen();
+    chunk(node).get(offset(node) + KEY_OFFSET + keyWidth, destination, 0, valueWidth);
+  }
+
+  public void setValue(int node, byte[] value) {
+    checkOpen();
+    if (value.length != valueWidth) {
+      throw new IllegalArgumentException(
+          "Value must have " + valueWidth + " bytes: " + value.length);
+    }
+    chunk(node).put(offset(node) + KEY_OFFSET + keyWidth, value, 0, valueWidth);
+  }
+
+  public int getLeft(int node) {
+    checkOpen();
+    return left(node);
+  }
+
+  public int getRight(int node) {
+    checkOpen();
+    return right(node);
+  }
+
+  public int getHeight(int node) {
+    checkOpen();
+    return height(node);
+  }
+
+  public int getTop() {
+    return top;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean avlIsEmpty() {
+    return top == NIL;
+  }
+
+  public int getKeyWidth() {
+    return keyWidth;
+  }
+
+  public int getValueWidth() {
+    return valueWidth;
+  }
+
+  /**
+   * @return The number of off-heap bytes reserved for nodes
+   */
+  public long reservedBytes() {
+    checkOpen();
+    return (long) chunks.length * NODES_PER_CHUNK * nodeWidth;
+  }
+
+  int getFreeList() {
+    return freeList;
+  }
+
+  int getFirstUnusedSlot() {
+    return firstUnusedSlot;
+  }
+
+  int getChunkCount() {
+    return chunks.length;
+  }
+
+  ByteBuffer getChunk(int chunkIndex) {
+    return chunks[chunkIndex];
+  }
+
+  int getNodeWidth() {
+    return nodeWidth;
+  }
+
+  /**
+   * Provides the storage of a new chunk of nodes
+   *
+   * @param chunkIndex Position of the chunk, starting at 0
+   * @param chunkBytes Size of the chunk
+   */
+  ByteBuffer allocateChunk(int chunkIndex, int chunkBytes) {
+    return ByteBuffer.allocateDirect(chunkBytes);
+  }
+
+  /**
+   * Called after every insertion or deletion that modified the tree, once its state (top, size,
+   * free list and chunks) is up to date
+   */
+  void stateChanged() {
+  }
+
+  public boolean isClosed() {
+    return chunks == null;
+  }
+
+  /**
+   * Frees every buffer of the tree. Closing a closed tree does nothing.
+   */
+  @Override
+  public void close() {
+    if (chunks == null) {
+      return;
+    }
+
+    ByteBuffer[] closedChunks = chunks;
+    chunks = null;
+    top = NIL;
+    size = 0;
+    for (ByteBuffer chunk : closedChunks) {
+      free(chunk);
+    }
+  }
+
+  /**
+   * Frees the memory of a direct or mapped buffer, which must not be used afterwards
+   */
+  static void free(ByteBuffer buffer) {
+    if (INVOKE_CLEANER != null) {
+      try {
+        INVOKE_CLEANER.invokeExact(buffer);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  private static MethodHandle findInvokeCleaner() {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      return MethodHandles.lookup()
+          .findVirtual(unsafeClass, "invokeCleaner",
+              MethodType.methodType(void.class, ByteBuffer.class))
+          .bindTo(theUnsafe.get(null));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private int insert(int node, byte[] key, byte[] value) {
+    if (node == NIL) {
+      modified = true;
+      size++;
+      return allocateNode(key, value);
+    }
+
+    int comparison = compareKey(key, node);
+    if (comparison < 0) {
+      int child = insert(left(node), key, value);
+      setLeft(node, child);
+    } else if (comparison > 0) {
+      int child = insert(right(node), key, value);
+      setRight(node, child);
+    } else {
+      if (value != null) {
+        chunk(node).put(offset(node) + KEY_OFFSET + keyWidth, value, 0, valueWidth);
+      }
+      return node;
+    }
+
+    return rebalance(node);
+  }
+
+  private int delete(int node, byte[] key) {
+    if (node == NIL) {
+      return NIL;
+    }
+
+    int comparison = compareKey(key, node);
+    if (comparison < 0) {
+      setLeft(node, delete(left(node), key));
+    } else if (comparison > 0) {
+      setRight(node, delete(right(node), key));
+    } else if (left(node) == NIL || right(node) == NIL) {
+      int child = (left(node) == NIL) ? right(node) : left(node);
+      modified = true;
+      size--;
+      freeNode(node);
+      return child;
+    } else { // has two children
+      int successor = right(node);
+      while (left(successor) != NIL) {
+        successor = left(successor);
+      }
+      chunk(node).put(offset(node) + KEY_OFFSET, chunk(successor),
+          offset(successor) + KEY_OFFSET, keyWidth + valueWidth);
+      modified = true;
+      size--;
+      setRight(node, deleteMinimum(right(node)));
+    }
+
+    return rebalance(node);
+  }
+
+  private int deleteMinimum(int node) {
+    if (left(node) == NIL) {
+      int child = right(node);
+      freeNode(node);
+      return child;
+    }
+
+    setLeft(node, deleteMinimum(left(node)));
+    return rebalance(node);
+  }
+
+  private int rebalance(int node) {
+    int result = node;
+
+    updateHeight(node);
+    int balance = getBalance(node);
+    if (balance == -2) {
+      if (height(left(left(node))) < height(right(left(node)))) {
+        setLeft(node, rightRotation(left(node)));
+      }
+      result = leftRotation(node);
+    } else if (balance == 2) {
+      if (height(right(right(node))) < height(left(right(node)))) {
+        setRight(node, leftRotation(right(node)));
+      }
+      result = rightRotation(node);
+    }
+
+    return result;
+  }
+
+  private int leftRotation(int node) {
+    int leftNode = left(node);
+
+    setLeft(node, right(leftNode));
+    setRight(leftNode, node);
+
+    updateHeight(node);
+    updateHeight(leftNode);
+
+    return leftNode;
+  }
+
+  private int rightRotation(int node) {
+    int rightNode = right(node);
+
+    setRight(node, left(rightNode));
+    setLeft(rightNode, node);
+
+    updateHeight(node);
+    updateHeight(rightNode);
+
+    return rightNode;
+  }
+
+  private void updateHeight(int node) {
+    chunk(node).put(offset(node) + HEIGHT_OFFSET,
+        (byte) (1 + Math.max(height(left(node)), height(right(node)))));
+  }
+
+  private int getBalance(int node) {
+    return height(right(node)) - height(left(node));
+  }
+
+  /**
+   * Compares a key with the key of a node as unsigned big-endian numbers, eight bytes at a time
+   */
+  private int compareKey(byte[] key, int node) {
+    ByteBuffer chunk = chunk(node);
+    int keyOffset = offset(node) + KEY_OFFSET;
+
+    int i = 0;
+    while (i + Long.BYTES <= keyWidth) {
+      long a = (long) LONG_VIEW.get(key, i);
+      long b = chunk.getLong(keyOffset + i);
+      if (a != b) {
+        return Long.compareUnsigned(a, b);
+      }
+      i += Long.BYTES;
+    }
+    while (i < keyWidth) {
+      int comparison = Byte.compareUnsigned(key[i], chunk.get(keyOffset + i));
+      if (comparison != 0) {
+        return comparison;
+      }
+      i++;
+    }
+    return 0;
+  }
+
+  private int compareNodes(int node1, int node2) {
+    ByteBuffer chunk1 = chunk(node1);
+    ByteBuffer chunk2 = chunk(node2);
+    int offset1 = offset(node1) + KEY_OFFSET;
+    int offset2 = offset(node2) + KEY_OFFSET;
+
+    for (int i = 0; i < keyWidth; i++) {
+      int comparison = Byte.compareUnsigned(chunk1.get(offset1 + i), chunk2.get(offset2 + i));
+      if (comparison != 0) {
+        return comparison;
+      }
+    }
+    return 0;
+  }
+
+  private int left(int node) {
+    return chunk(node).getInt(offset(node) + LEFT_OFFSET);
+  }
+
+  private void setLeft(int node, int left) {
+    chunk(node).putInt(offset(node) + LEFT_OFFSET, left);
+  }
+
+  private int right(int node) {
+    return chunk(node).getInt(offset(node) + RIGHT_OFFSET);
+  }
+
+  private void setRight(int node, int right) {
+    chunk(node).putInt(offset(node) + RIGHT_OFFSET, right);
+  }
+
+  private int height(int node) {
+    return (node == NIL) ? -1 : chunk(node).get(offset(node) + HEIGHT_OFFSET);
+  }
+
+  private ByteBuffer chunk(int node) {
+    return chunks[node >>> CHUNK_SHIFT];
+  }
+
+  private int offset(int node) {
+    return (node & CHUNK_MASK) * nodeWidth;
+  }
+
+  private int allocateNode(byte[] key, byte[] value) {
+    int node;
+    if (freeList != NIL) {
+      node = freeList;
+      freeList = left(node);
+    } else {
+      if (firstUnusedSlot == Integer.MAX_VALUE) {
+        throw new IllegalStateException("The tree cannot hold more nodes");
+      }
+      if ((firstUnusedSlot >>> CHUNK_SHIFT) == chunks.length) {
+        ByteBuffer chunk = allocateChunk(chunks.length, NODES_PER_CHUNK * nodeWidth);
+        chunks = Arrays.copyOf(chunks, chunks.length + 1);
+        chunks[chunks.length - 1] = chunk;
+      }
+      node = firstUnusedSlot++;
+    }
+
+    ByteBuffer chunk = chunk(node);
+    int offset = offset(node);
+    chunk.putInt(offset + LEFT_OFFSET, NIL);
+    chunk.putInt(offset + RIGHT_OFFSET, NIL);
+    chunk.put(offset + HEIGHT_OFFSET, (byte) 0);
+    chunk.put(offset + KEY_OFFSET, key, 0, keyWidth);
+    if (value != null) {
+      chunk.put(offset + KEY_OFFSET + keyWidth, value, 0, valueWidth);
+    } else {
+      for (int i = 0; i < valueWidth; i++) {
+        chunk.put(offset + KEY_OFFSET + keyWidth + i, (byte) 0);
+      }
+    }
+
+    return node;
+  }
+
+  private void freeNode(int node) {
+    setLeft(node, freeList);
+    freeList = node;
+  }
+
+  private void checkKey(byte[] key) {
+    if (key.length != keyWidth) {
+      throw new IllegalArgumentException("Key must have " + keyWidth + " bytes: " + key.length);
+    }
+  }
+
+  private void checkOpen() {
+    if (chunks == null) {
+      throw new IllegalStateException("The tree is closed");
+    }
+  }
+}
@@ -0,0 +1,886 @@
+//  OptimisticAvlTree.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+import java.util.Comparator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent Avl set with fine-grained locking, following Bronson, Casper, Chafi and Olukotun, "A
+ * Practical Concurrent Binary Search Tree" (PPoPP 2010).
+ *
+ * <ul>
+ * <li>Lookups take no locks. Every node carries a version that a rotation changes when it moves
+ * the node down, so a reader descends hand over hand, validating the version of each node after
+ * reading the link to its child, and backs up one level when the validation fails.</li>
+ * <li>Writers lock only the nodes whose links they change: the parent of a new leaf, the parent of
+ * an unlinked node, or the two to four nodes of a rotation.</li>
+ * <li>Balance is relaxed. A writer repairs the heights and the balance of the nodes it damaged,
+ * walking up while repairs are needed, and several writers may be doing so at the same time, so the
+ * tree is a valid Avl tree once all the writers have finished.</li>
+ * <li>Deleting an item held in a node with two children only marks the node as absent, leaving it
+ * as a routing node. Rebalancing unlinks routing nodes as soon as they have at most one child.</li>
+ * </ul>
+ *
+ * Heights follow the convention of AvlTree: a leaf has height 0 and an empty subtree -1.
+ */
+public class OptimisticAvlTree<T> {
+
+  private static final long UNLINKED = 1L;
+  private static final long SHRINKING = 2L;
+  private static final long VERSION_INCREMENT = 4L;
+
+  private static final int SPIN_COUNT = 100;
+  private static final int YIELD_COUNT = 10;
+
+  private static final int UNLINK_REQUIRED = -2;
+  private static final int REBALANCE_REQUIRED = -3;
+  private static final int NOTHING_REQUIRED = -4;
+
+  private static final Object RETRY = new Object();
+
+  private final Node<T> rootHolder;
+  private final Comparator<? super T> comparator;
+  private final LongAdder size;
+
+  /**
+   * Constructor
+   *
+   * @param comparator
+   */
+  public OptimisticAvlTree(Comparator<? super T> comparator) {
+    rootHolder = new Node<>(null, -1, false, null);
+    this.comparator = comparator;
+    size = new LongAdder();
+  }
+
+  /**
+   * @return true if item was not in the tree
+   */
+  public boolean insert(T item) {
+    if (item == null) {
+      throw new IllegalArgumentException("Item cannot be null");
+    }
+    return update(item, true);
+  }
+
+  /**
+   * @return true if item was in the tree
+   */
+  public boolean delete(T item) {
+    return update(item, false);
+  }
+
+  public boolean contains(T item) {
+    while (true) {
+      Node<T> right = rootHolder.right;
+      if (right == null) {
+        return false;
+      }
+
+      int comparison = compare(item, right);
+      if (comparison == 0) {
+        return right.present;
+      }
+
+      long version = right.version;
+      if (isShrinkingOrUnlinked(version)) {
+        right.waitUntilShrinkCompleted(version);
+      } else if (right == rootHolder.right) {
+        Object result = attemptContains(item, right, comparison, version);
+        if (result != RETRY) {
+          return (Boolean) result;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return The number of items. It is exact only while no insert or delete is in progress.
+   */
+  public int size() {
+    return (int) size.sum();
+  }
+
+  public boolean avlIsEmpty() {
+    return size() == 0;
+  }
+
+  /**
+   * Checks, while no writer is active, that the tree is ordered and balanced, that heights and
+   * parent links are right and that no routing node could have been unlinked
+   *
+   * @return The height of the tree
+   */
+  int checkStructure() {
+    return checkSubtree(rootHolder.right, rootHolder);
+  }
+
+  private Object attemptContains(T item, Node<T> node, int comparison, long nodeVersion) {
+    while (true) {
+      Node<T> child = node.child(comparison);
+      if (child == null) {
+        return (node.version != nodeVersion) ? RETRY : Boolean.FALSE;
+      }
+
+      int childComparison = compare(item, child);
+      if (childComparison == 0) {
+        return child.present;
+      }
+
+      long childVersion = child.version;
+      if (isShrinkingOrUnlinked(childVersion)) {
+        child.waitUntilShrinkCompleted(childVersion);
+        if (node.version != nodeVersion) {
+          return RETRY;
+        }
+      } else if (child != node.child(comparison)) {
+        if (node.version != nodeVersion) {
+          return RETRY;
+        }
+      } else {
+        // the link from node to child was valid when child's version was read, so from now on
+        // only child's version needs validating
+        if (node.version != nodeVersion) {
+          return RETRY;
+        }
+        Object result = attemptContains(item, child, childComparison, childVersion);
+        if (result != RETRY) {
+          return result;
+        }
+      }
+    }
+  }
+
+  private boolean update(T item, boolean present) {
+    while (true) {
+      Node<T> right = rootHolder.right;
+      if (right == null) {
+        if (!present) {
+          return false;
+        }
+        if (attemptInsertIntoEmpty(item)) {
+          size.increment();
+          return true;
+        }
+      } else {
+        long version = right.version;
+        if (isShrinkingOrUnlinked(version)) {
+          right.waitUntilShrinkCompleted(version);
+        } else if (right == rootHolder.right) {
+          Object result = attemptUpdate(item, present, rootHolder, right, version);
+          if (result != RETRY) {
+            return (Boolean) result;
+          }
+        }
+      }
+    }
+  }
+
+  private boolean attemptInsertIntoEmpty(T item) {
+    synchronized (rootHolder) {
+      if (rootHolder.right != null) {
+        return false;
+      }
+      rootHolder.right = new Node<>(item, 0, true, rootHolder);
+      return true;
+    }
+  }
+
+  private Object attemptUpdate(T item, boolean present, Node<T> parent, Node<T> node,
+      long nodeVersion) {
+    int comparison = compare(item, node);
+    if (comparison == 0) {
+      return attemptNodeUpdate(present, parent, node);
+    }
+
+    while (true) {
+      Node<T> child = node.child(comparison);
+      if (node.version != nodeVersion) {
+        return RETRY;
+      }
+
+      if (child == null) {
+        if (!present) {
+          return Boolean.FALSE;
+        }
+
+        Node<T> damagedNode;
+        synchronized (node) {
+          if (node.version != nodeVersion) {
+            return RETRY;
+          }
+          if (node.child(comparison) != null) {
+            // lost a race with another insert below node, read the child again
+            continue;
+          }
+          node.setChild(comparison, new Node<>(item, 0, true, node));
+          damagedNode = fixHeight(node);
+        }
+        size.increment();
+        fixHeightAndRebalance(damagedNode);
+        return Boolean.TRUE;
+      }
+
+      long childVersion = child.version;
+      if (isShrinkingOrUnlinked(childVersion)) {
+        child.waitUntilShrinkCompleted(childVersion);
+      } else if (child == node.child(comparison)) {
+        if (node.version != nodeVersion) {
+          return RETRY;
+        }
+        Object result = attemptUpdate(item, present, node, child, childVersion);
+        if (result != RETRY) {
+          return result;
+        }
+      }
+    }
+  }
+
+  /**
+   * Inserts or deletes the item of a node found by a valid descent. Parent is only used to unlink
+   * node.
+   */
+  private Object attemptNodeUpdate(boolean present, Node<T> parent, Node<T> node) {
+    if (node.present == present) {
+      return Boolean.FALSE;
+    }
+
+    if (!present && (node.left == null || node.right == null)) {
+      Node<T> damagedNode;
+      synchronized (parent) {
+        if (isUnlinked(parent.version) || node.parent != parent) {
+          return RETRY;
+        }
+        synchronized (node) {
+          if (!node.present) {
+            return Boolean.FALSE;
+          }
+          if (!attemptUnlink(parent, node)) {
+            return RETRY;
+          }
+        }
+        damagedNode = fixHeight(parent);
+      }
+      size.decrement();
+      fixHeightAndRebalance(damagedNode);
+      return Boolean.TRUE;
+    }
+
+    synchronized (node) {
+      if (isUnlinked(node.version)) {
+        return RETRY;
+      }
+      if (node.present == present) {
+        return Boolean.FALSE;
+      }
+      if (!present && (node.left == null || node.right == null)) {
+        // a child was unlinked meanwhile, so node has to be unlinked too
+        return RETRY;
+      }
+      node.present = present;
+    }
+    if (present) {
+      size.increment();
+    } else {
+      size.decrement();
+    }
+    return Boolean.TRUE;
+  }
+
+  /**
+   * Replaces node by its only child, if any. Parent and node must be locked. Heights are not
+   * updated.
+   */
+  private boolean attemptUnlink(Node<T> parent, Node<T> node) {
+    Node<T> parentLeft = parent.left;
+    Node<T> parentRight = parent.right;
+    if (parentLeft != node && parentRight != node) {
+      return false;
+    }
+
+    Node<T> left = node.left;
+    Node<T> right = node.right;
+    if (left != null && right != null) {
+      return false;
+    }
+
+    Node<T> splice = (left != null) ? left : right;
+    if (parentLeft == node) {
+      parent.left = splice;
+    } else {
+      parent.right = splice;
+    }
+    if (splice != null) {
+      splice.parent = parent;
+    }
+
+    node.version = UNLINKED;
+    node.present = false;
+
+    return true;
+  }
+
+  /**
+   * @return What node needs: UNLINK_REQUIRED, REBALANCE_REQUIRED, NOTHING_REQUIRED, or its new
+   * height. Any other thread changing node or its children afterwards takes the responsibility of
+   * repairing it.
+   */
+  private int nodeCondition(Node<T> node) {
+    Node<T> left = node.left;
+    Node<T> right = node.right;
+
+    if ((left == null || right == null) && !node.present) {
+      return UNLINK_REQUIRED;
+    }
+
+    int height = node.height;
+    int leftHeight = height(left);
+    int rightHeight = height(right);
+
+    int newHeight = 1 + Math.max(leftHeight, rightHeight);
+    int balance = rightHeight - leftHeight;
+
+    if (balance < -1 || balance > 1) {
+      return REBALANCE_REQUIRED;
+    }
+
+    return (height != newHeight) ? newHeight : NOTHING_REQUIRED;
+  }
+
+  /**
+   * Walks up from node repairing heights and balance until no more repairs are needed
+   */
+  private void fixHeightAndRebalance(Node<T> node) {
+    Node<T> lastRebalancedParent = null;
+    while (node != null && node.parent != null) {
+      int condition = nodeCondition(node);
+      if (condition == NOTHING_REQUIRED || isUnlinked(node.version)) {
+        break;
+      }
+
+      if (condition != UNLINK_REQUIRED && condition != REBALANCE_REQUIRED) {
+        synchronized (node) {
+          node = fixHeight(node);
+        }
+      } else {
+        Node<T> parent = node.parent;
+        synchronized (parent) {
+          if (!isUnlinked(parent.version) && node.parent == parent) {
+            lastRebalancedParent = parent;
+            synchronized (node) {
+              node = rebalance(parent, node);
+            }
+          }
+        }
+      }
+    }
+
+    // A rotation returns the lowest node it damaged, and the repairs below it may end before
+    // reaching the parent of the rotation, whose height can be stale too
+    for (Node<T> ancestor = lastRebalancedParent; ancestor != null && ancestor.parent != null;
+        ancestor = ancestor.parent) {
+      if (!isUnlinked(ancestor.version) && nodeCondition(ancestor) != NOTHING_REQUIRED) {
+        fixHeightAndRebalance(ancestor);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Updates the height of node, which must be locked
+   *
+   * @return The next node to repair, or null if there is none
+   */
+  private Node<T> fixHeight(Node<T> node) {
+    int condition = nodeCondition(node);
+    switch (condition) {
+      case REBALANCE_REQUIRED:
+      case UNLINK_REQUIRED:
+        return node;
+      case NOTHING_REQUIRED:
+        return null;
+      default:
+        node.height = condition;
+        return node.parent;
+    }
+  }
+
+  /**
+   * Unlinks, rotates or updates the height of node. Parent and node must be locked.
+   *
+   * @return The next node to repair, or null if there is none
+   */
+  private Node<T> rebalance(Node<T> parent, Node<T> node) {
+    Node<T> left = node.left;
+    Node<T> right = node.right;
+
+    if ((left == null || right == null) && !node.present) {
+      if (attemptUnlink(parent, node)) {
+        return fixHeight(parent);
+      } else {
+        return node;
+      }
+    }
+
+    int height = node.height;
+    int leftHeight = height(left);
+    int rightHeight = height(right);
+    int newHeight = 1 + Math.max(leftHeight, rightHeight);
+    int balance = rightHeight - leftHeight;
+
+    if (balance < -1) {
+      return rebalanceLeftHeavy(parent, node, left, rightHeight);
+    } else if (balance > 1) {
+      return rebalanceRightHeavy(parent, node, right, leftHeight);
+    } else if (newHeight != height) {
+      node.height = newHeight;
+      return fixHeight(parent);
+    } else {
+      return null;
+    }
+  }
+
+  private Node<T> rebalanceLeftHeavy(Node<T> parent, Node<T> node, Node<T> left,
+      int rightHeight) {
+    synchronized (left) {
+      int leftHeight = left.height;
+      if (leftHeight - rightHeight <= 1) {
+        return node;
+      }
+
+      Node<T> leftRight = left.right;
+      int leftLeftHeight = height(left.left);
+      int leftRightHeight = height(leftRight);
+      if (leftLeftHeight >= leftRightHeight) {
+        return leftRotation(parent, node, left, rightHeight, leftLeftHeight, leftRight,
+            leftRightHeight);
+      }
+
+      synchronized (leftRight) {
+        leftRightHeight = leftRight.height;
+        if (leftLeftHeight >= leftRightHeight) {
+          return leftRotation(parent, node, left, rightHeight, leftLeftHeight, leftRight,
+              leftRightHeight);
+        }
+
+        // the double rotation is done only if it leaves left balanced; otherwise left is
+        // rebalanced on its own first
+        int leftRightLeftHeight = height(leftRight.left);
+        int leftBalance = leftRightLeftHeight - leftLeftHeight;
+        if (leftBalance >= -1 && leftBalance <= 1) {
+          return doubleLeftRotation(parent, node, left, rightHeight, leftLeftHeight, leftRight,
+              leftRightLeftHeight);
+        }
+      }
+
+      return rebalanceRightHeavy(node, left, leftRight, leftLeftHeight);
+    }
+  }
+
+  private Node<T> rebalanceRightHeavy(Node<T> parent, Node<T> node, Node<T> right,
+      int leftHeight) {
+    synchronized (right) {
+      int rightHeight = right.height;
+      if (rightHeight - leftHeight <= 1) {
+        return node;
+      }
+
+      Node<T> rightLeft = right.left;
+      int rightLeftHeight = height(rightLeft);
+      int rightRightHeight = height(right.right);
+      if (rightRightHeight >= rightLeftHeight) {
+        return rightRotation(parent, node, leftHeight, right, rightLeft, rightLeftHeight,
+            rightRightHeight);
+      }
+
+      synchronized (rightLeft) {
+        rightLeftHeight = rightLeft.height;
+        if (rightRightHeight >= rightLeftHeight) {
+          return rightRotation(parent, node, leftHeight, right, rightLeft, rightLeftHeight,
+              rightRightHeight);
+        }
+
+        int rightLeftRightHeight = height(rightLeft.right);
+        int rightBalance = rightRightHeight - rightLeftRightHeight;
+        if (rightBalance >= -1 && rightBalance <= 1) {
+          return doubleRightRotation(parent, node, leftHeight, right, rightLeft,
+              rightRightHeight, rightLeftRightHeight);
+        }
+      }
+
+      return rebalanceLeftHeavy(node, right, rightLeft, rightRightHeight);
+    }
+  }
+
+  /**
+   * Lifts left above node. Parent, node and left must be locked.
+   *
+   * @return The next node to repair, or null if there is none
+   */
+  private Node<T> leftRotation(Node<T> parent, Node<T> node, Node<T> left, int rightHeight,
+      int leftLeftHeight, Node<T> leftRight, int leftRightHeight) {
+    long nodeVersion = node.version;
+    Node<T> parentLeft = parent.left;
+
+    node.version = beginShrink(nodeVersion);
+
+    node.left = leftRight;
+    if (leftRight != null) {
+      leftRight.parent = node;
+    }
+
+    left.right = node;
+    node.parent = left;
+
+    if (parentLeft == node) {
+      parent.left = left;
+    } else {
+      parent.right = left;
+    }
+    left.parent = parent;
+
+    int newNodeHeight = 1 + Math.max(leftRightHeight, rightHeight);
+    node.height = newNodeHeight;
+    left.height = 1 + Math.max(leftLeftHeight, newNodeHeight);
+
+    node.version = endShrink(nodeVersion);
+
+    int nodeBalance = rightHeight - leftRightHeight;
+    if (nodeBalance < -1 || nodeBalance > 1) {
+      return node;
+    }
+    if ((leftRight == null || node.right == null) && !node.present) {
+      return node;
+    }
+
+    int leftBalance = newNodeHeight - leftLeftHeight;
+    if (leftBalance < -1 || leftBalance > 1) {
+      return left;
+    }
+    if (left.left == null && !left.present) {
+      return left;
+    }
+
+    return fixHeight(parent);
+  }
+
+  /**
+   * Lifts right above node. Parent, node and right must be locked.
+   *
+   * @return The next node to repair, or null if there is none
+   */
+  private Node<T> rightRotation(Node<T> parent, Node<T> node, int leftHeight, Node<T> right,
+      Node<T> rightLeft, int rightLeftHeight, int rightRightHeight) {
+    long nodeVersion = node.version;
+    Node<T> parentLeft = parent.left;
+
+    node.version = beginShrink(nodeVersion);
+
+    node.right = rightLeft;
+    if (rightLeft != null) {
+      rightLeft.parent = node;
+    }
+
+    right.left = node;
+    node.parent = right;
+
+    if (parentLeft == node) {
+      parent.left = right;
+    } else {
+      parent.right = right;
+    }
+    right.parent = parent;
+
+    int newNodeHeight = 1 + Math.max(leftHeight, rightLeftHeight);
+    node.height = newNodeHeight;
+    right.height = 1 + Math.max(newNodeHeight, rightRightHeight);
+
+    node.version = endShrink(nodeVersion);
+
+    int nodeBalance = rightLeftHeight - leftHeight;
+    if (nodeBalance < -1 || nodeBalance > 1) {
+      return node;
+    }
+    if ((rightLeft == null || node.left == null) && !node.present) {
+      return node;
+    }
+
+    int rightBalance = rightRightHeight - newNodeHeight;
+    if (rightBalance < -1 || rightBalance > 1) {
+      return right;
+    }
+    if (right.right == null && !right.present) {
+      return right;
+    }
+
+    return fixHeight(parent);
+  }
+
+  /**
+   * Lifts the right child of left above left and node. Parent, node, left and leftRight must be
+   * locked.
+   *
+   * @return The next node to repair, or null if there is none
+   */
+  private Node<T> doubleLeftRotation(Node<T> parent, Node<T> node, Node<T> left,
+      int rightHeight, int leftLeftHeight, Node<T> leftRight, int leftRightLeftHeight) {
+    long nodeVersion = node.version;
+    long leftVersion = left.version;
+
+    Node<T> parentLeft = parent.left;
+    Node<T> leftRightLeft = leftRight.left;
+    Node<T> leftRightRight = leftRight.right;
+    int leftRightRightHeight = height(leftRightRight);
+
+    node.version = beginShrink(nodeVersion);
+    left.version = beginShrink(leftVersion);
+
+    node.left = leftRightRight;
+    if (leftRightRight != null) {
+      leftRightRight.parent = node;
+    }
+
+    left.right = leftRightLeft;
+    if (leftRightLeft != null) {
+      leftRightLeft.parent = left;
+    }
+
+    leftRight.left = left;
+    left.parent = leftRight;
+    leftRight.right = node;
+    node.parent = leftRight;
+
+    if (parentLeft == node) {
+      parent.left = leftRight;
+    } else {
+      parent.right = leftRight;
+    }
+    leftRight.parent = parent;
+
+    int newNodeHeight = 1 + Math.max(leftRightRightHeight, rightHeight);
+    node.height = newNodeHeight;
+    int newLeftHeight = 1 + Math.max(leftLeftHeight, leftRightLeftHeight);
+    left.height = newLeftHeight;
+    leftRight.height = 1 + Math.max(newLeftHeight, newNodeHeight);
+
+    node.version = endShrink(nodeVersion);
+    left.version = endShrink(leftVersion);
+
+    // a routing node left with a single child is unlinked while its locks are still held, as
+    // nothing would repair it later
+    if ((left.left == null || leftRightLeft == null) && !left.present) {
+      attemptUnlink(leftRight, left);
+      newLeftHeight = height(leftRight.left);
+      leftRight.height = 1 + Math.max(newLeftHeight, newNodeHeight);
+    }
+
+    int nodeBalance = rightHeight - leftRightRightHeight;
+    if (nodeBalance < -1 || nodeBalance > 1) {
+      return node;
+    }
+    if ((leftRightRight == null || node.right == null) && !node.present) {
+      return node;
+    }
+
+    int leftRightBalance = newNodeHeight - newLeftHeight;
+    if (leftRightBalance < -1 || leftRightBalance > 1) {
+      return leftRight;
+    }
+
+    return fixHeight(parent);
+  }
+
+  /**
+   * Lifts the left child of right above right and node. Parent, node, right and rightLeft must be
+   * locked.
+   *
+   * @return The next node to repair, or null if there is none
+   */
+  private Node<T> doubleRightRotation(Node<T> parent, Node<T> node, int leftHeight,
+      Node<T> right, Node<T> rightLeft, int rightRightHeight, int rightLeftRightHeight) {
+    long nodeVersion = node.version;
+    long rightVersion = right.version;
+
+    Node<T> parentLeft = parent.left;
+    Node<T> rightLeftLeft = rightLeft.left;
+    Node<T> rightLeftRight = rightLeft.right;
+    int rightLeftLeftHeight = height(rightLeftLeft);
+
+    node.version = beginShrink(nodeVersion);
+    right.version = beginShrink(rightVersion);
+
+    node.right = rightLeftLeft;
+    if (rightLeftLeft != null) {
+      rightLeftLeft.parent = node;
+    }
+
+    right.left = rightLeftRight;
+    if (rightLeftRight != null) {
+      rightLeftRight.parent = right;
+    }
+
+    rightLeft.right = right;
+    right.parent = rightLeft;
+    rightLeft.left = node;
+    node.parent = rightLeft;
+
+    if (parentLeft == node) {
+      parent.left = rightLeft;
+    } else {
+      parent.right = rightLeft;
+    }
+    rightLeft.parent = parent;
+
+    int newNodeHeight = 1 + Math.max(leftHeight, rightLeftLeftHeight);
+    node.height = newNodeHeight;
+    int newRightHeight = 1 + Math.max(rightLeftRightHeight, rightRightHeight);
+    right.height = newRightHeight;
+    rightLeft.height = 1 + Math.max(newNodeHeight, newRightHeight);
+
+    node.version = endShrink(nodeVersion);
+    right.version = endShrink(rightVersion);
+
+    if ((right.right == null || rightLeftRight == null) && !right.present) {
+      attemptUnlink(rightLeft, right);
+      newRightHeight = height(rightLeft.right);
+      rightLeft.height = 1 + Math.max(newNodeHeight, newRightHeight);
+    }
+
+    int nodeBalance = rightLeftLeftHeight - leftHeight;
+    if (nodeBalance < -1 || nodeBalance > 1) {
+      return node;
+    }
+    if ((rightLeftLeft == null || node.left == null) && !node.present) {
+      return node;
+    }
+
+    int rightLeftBalance = newRightHeight - newNodeHeight;
+    if (rightLeftBalance < -1 || rightLeftBalance > 1) {
+      return rightLeft;
+    }
+
+    return fixHeight(parent);
+  }
+
+  private int checkSubtree(Node<T> node, Node<T> parent) {
+    if (node == null) {
+      return -1;
+    }
+    if (node.parent != parent || isShrinkingOrUnlinked(node.version)) {
+      throw new IllegalStateException("Wrong parent link or version at " + node.item);
+    }
+    if ((node.left == null || node.right == null) && !node.present) {
+      throw new IllegalStateException("Routing node with less than two children " + node.item);
+    }
+    if (node.left != null && compare(node.left.item, node) >= 0) {
+      throw new IllegalStateException("Wrong order at " + node.item);
+    }
+    if (node.right != null && compare(node.right.item, node) <= 0) {
+      throw new IllegalStateException("Wrong order at " + node.item);
+    }
+
+    int leftHeight = checkSubtree(node.left, node);
+    int rightHeight = checkSubtree(node.right, node);
+    if (node.height != 1 + Math.max(leftHeight, rightHeight)
+        || Math.abs(rightHeight - leftHeight) > 1) {
+      throw new IllegalStateException("Wrong height or balance at " + node.item);
+    }
+    return node.height;
+  }
+
+  private int compare(T item, Node<T> node) {
+    return comparator.compare(item, node.item);
+  }
+
+  private static int height(Node<?> node) {
+    return (node == null) ? -1 : node.height;
+  }
+
+  private static boolean isShrinkingOrUnlinked(long version) {
+    return (version & (SHRINKING | UNLINKED)) != 0;
+  }
+
+  private static boolean isUnlinked(long version) {
+    return version == UNLINKED;
+  }
+
+  private static long beginShrink(long version) {
+    return version | SHRINKING;
+  }
+
+  private static long endShrink(long version) {
+    return (version & ~SHRINKING) + VERSION_INCREMENT;
+  }
+
+  private static final class Node<T> {
+    final T item;
+    volatile int height;
+    volatile boolean present;
+    volatile long version;
+    volatile Node<T> parent;
+    volatile Node<T> left;
+    volatile Node<T> right;
+
+    Node(T item, int height, boolean present, Node<T> parent) {
+      this.item = item;
+      this.height = height;
+      this.present = present;
+      this.parent = parent;
+    }
+
+    Node<T> child(int comparison) {
+      return (comparison < 0) ? left : right;
+    }
+
+    void setChild(int comparison, Node<T> child) {
+      if (comparison < 0) {
+        left = child;
+      } else {
+        right = child;
+      }
+    }
+
+    /**
+     * Waits until the rotation that is moving this node down, if any, has finished
+     */
+    void waitUntilShrinkCompleted(long version) {
+      if ((version & SHRINKING) == 0) {
+        return;
+      }
+      for (int tries = 0; tries < SPIN_COUNT; tries++) {
+        if (this.version != version) {
+          return;
+        }
+      }
+      for (int tries = 0; tries < YIELD_COUNT; tries++) {
+        Thread.yield();
+        if (this.version != version) {
+          return;
+        }
+      }
+      // the rotation holds the lock of this node until it ends
+      synchronized (this) {
+      }
+    }
+  }
+}
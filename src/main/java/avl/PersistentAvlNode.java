@@ -0,0 +1,100 @@
+//  PersistentAvlNode.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+/**
+ * Immutable node of a PersistentAvlTree. It has no link to its parent, so the same node can be
+ * shared by any number of versions of a tree.
+ */
+public final class PersistentAvlNode<T> {
+
+  private final PersistentAvlNode<T> left;
+  private final PersistentAvlNode<T> right;
+
+  private final int height;
+  private final int size;
+
+  private final T item;
+
+  /**
+   * Constructor
+   *
+   * @param item
+   * @param left Left subtree, may be null
+   * @param right Right subtree, may be null
+   */
+  public PersistentAvlNode(T item, PersistentAvlNode<T> left, PersistentAvlNode<T> right) {
+    if (item == null) {
+      throw new IllegalArgumentException("Item cannot be null");
+    }
+
+    this.left = left;
+    this.right = right;
+    height = 1 + Math.max(height(left), height(right));
+    size = 1 + size(left) + size(right);
+
+    this.item = item;
+  }
+
+  public PersistentAvlNode<T> getLeft() {
+    return left;
+  }
+
+  public PersistentAvlNode<T> getRight() {
+    return right;
+  }
+
+  public T getItem() {
+    return item;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * @return The number of nodes of the subtree rooted at this node
+   */
+  public int getSize() {
+    return size;
+  }
+
+  public boolean hasLeft() {
+    return left != null;
+  }
+
+  public boolean hasRight() {
+    return right != null;
+  }
+
+  public boolean isLeaf() {
+    return (!hasLeft() && !hasRight());
+  }
+
+  static int height(PersistentAvlNode<?> node) {
+    return (node == null) ? -1 : node.height;
+  }
+
+  static int size(PersistentAvlNode<?> node) {
+    return (node == null) ? 0 : node.size;
+  }
+}
@@ -0,0 +1,252 @@
+//  PersistentAvlTree.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Immutable Avl tree. insert and delete leave the tree unchanged and return a new tree that shares
+ * every node except the O(log n) ones copied along the path from the top to the modified position.
+ * A snapshot is therefore just a reference to a tree, and a version that is no longer referenced is
+ * reclaimed by the garbage collector, except for the nodes still shared with newer versions.
+ * Instances can be read from any number of threads without synchronization.
+ */
+public final class PersistentAvlTree<T> implements Iterable<T> {
+
+  private final PersistentAvlNode<T> top;
+  private final Comparator<? super T> comparator;
+
+  /**
+   * Creates an empty tree
+   *
+   * @param comparator
+   */
+  public PersistentAvlTree(Comparator<? super T> comparator) {
+    this(null, comparator);
+  }
+
+  private PersistentAvlTree(PersistentAvlNode<T> top, Comparator<? super T> comparator) {
+    this.top = top;
+    this.comparator = comparator;
+  }
+
+  /**
+   * @return A tree holding the items of this one plus item; this tree if it already holds item
+   */
+  public PersistentAvlTree<T> insert(T item) {
+    if (item == null) {
+      throw new IllegalArgumentException("Item cannot be null");
+    }
+
+    PersistentAvlNode<T> newTop = insert(top, item);
+    return (newTop == top) ? this : new PersistentAvlTree<>(newTop, comparator);
+  }
+
+  /**
+   * @return A tree holding the items of this one except item; this tree if it does not hold item
+   */
+  public PersistentAvlTree<T> delete(T item) {
+    PersistentAvlNode<T> newTop = delete(top, item);
+    return (newTop == top) ? this : new PersistentAvlTree<>(newTop, comparator);
+  }
+
+  /**
+   * @return The item of the tree equal to item, or null if there is none
+   */
+  public T search(T item) {
+    PersistentAvlNode<T> currentNode = top;
+    while (currentNode != null) {
+      int comparison = compare(item, currentNode);
+      if (comparison < 0) {
+        currentNode = currentNode.getLeft();
+      } else if (comparison > 0) {
+        currentNode = currentNode.getRight();
+      } else {
+        return currentNode.getItem();
+      }
+    }
+    return null;
+  }
+
+  public boolean contains(T item) {
+    return search(item) != null;
+  }
+
+  public PersistentAvlNode<T> getTop() {
+    return top;
+  }
+
+  public int size() {
+    return PersistentAvlNode.size(top);
+  }
+
+  public boolean avlIsEmpty() {
+    return top == null;
+  }
+
+  /**
+   * Applies action to every item in ascending order
+   */
+  @Override
+  public void forEach(Consumer<? super T> action) {
+    forEach(top, action);
+  }
+
+  /**
+   * @return An iterator over the items in ascending order. The tree is immutable, so the iterator
+   * never fails and does not support remove.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      private final Deque<PersistentAvlNode<T>> path = pushLeftPath(top, new ArrayDeque<>());
+
+      @Override
+      public boolean hasNext() {
+        return !path.isEmpty();
+      }
+
+      @Override
+      public T next() {
+        if (path.isEmpty()) {
+          throw new NoSuchElementException();
+        }
+        PersistentAvlNode<T> node = path.pop();
+        pushLeftPath(node.getRight(), path);
+        return node.getItem();
+      }
+    };
+  }
+
+  private PersistentAvlNode<T> insert(PersistentAvlNode<T> node, T item) {
+    if (node == null) {
+      return new PersistentAvlNode<>(item, null, null);
+    }
+
+    int comparison = compare(item, node);
+    if (comparison < 0) {
+      PersistentAvlNode<T> left = insert(node.getLeft(), item);
+      return (left == node.getLeft()) ? node : balance(node.getItem(), left, node.getRight());
+    } else if (comparison > 0) {
+      PersistentAvlNode<T> right = insert(node.getRight(), item);
+      return (right == node.getRight()) ? node : balance(node.getItem(), node.getLeft(), right);
+    } else {
+      return node;
+    }
+  }
+
+  private PersistentAvlNode<T> delete(PersistentAvlNode<T> node, T item) {
+    if (node == null) {
+      return null;
+    }
+
+    int comparison = compare(item, node);
+    if (comparison < 0) {
+      PersistentAvlNode<T> left = delete(node.getLeft(), item);
+      return (left == node.getLeft()) ? node : balance(node.getItem(), left, node.getRight());
+    } else if (comparison > 0) {
+      PersistentAvlNode<T> right = delete(node.getRight(), item);
+      return (right == node.getRight()) ? node : balance(node.getItem(), node.getLeft(), right);
+    } else if (!node.hasLeft()) {
+      return node.getRight();
+    } else if (!node.hasRight()) {
+      return node.getLeft();
+    } else { // has two children
+      PersistentAvlNode<T> successor = node.getRight();
+      while (successor.hasLeft()) {
+        successor = successor.getLeft();
+      }
+      return balance(successor.getItem(), node.getLeft(), deleteMinimum(node.getRight()));
+    }
+  }
+
+  private PersistentAvlNode<T> deleteMinimum(PersistentAvlNode<T> node) {
+    if (!node.hasLeft()) {
+      return node.getRight();
+    }
+    return balance(node.getItem(), deleteMinimum(node.getLeft()), node.getRight());
+  }
+
+  /**
+   * Builds a node from item and two subtrees whose heights differ by at most 2, rotating if needed
+   */
+  private PersistentAvlNode<T> balance(T item, PersistentAvlNode<T> left,
+      PersistentAvlNode<T> right) {
+    int balance = PersistentAvlNode.height(right) - PersistentAvlNode.height(left);
+    if (balance == -2) {
+      if (PersistentAvlNode.height(left.getLeft()) < PersistentAvlNode.height(left.getRight())) {
+        left = rightRotation(left.getItem(), left.getLeft(), left.getRight());
+      }
+      return leftRotation(item, left, right);
+    } else if (balance == 2) {
+      if (PersistentAvlNode.height(right.getRight()) < PersistentAvlNode.height(right.getLeft())) {
+        right = leftRotation(right.getItem(), right.getLeft(), right.getRight());
+      }
+      return rightRotation(item, left, right);
+    }
+    return new PersistentAvlNode<>(item, left, right);
+  }
+
+  /**
+   * Lifts the left subtree above item
+   */
+  private PersistentAvlNode<T> leftRotation(T item, PersistentAvlNode<T> left,
+      PersistentAvlNode<T> right) {
+    return new PersistentAvlNode<>(left.getItem(), left.getLeft(),
+        new PersistentAvlNode<>(item, left.getRight(), right));
+  }
+
+  /**
+   * Lifts the right subtree above item
+   */
+  private PersistentAvlNode<T> rightRotation(T item, PersistentAvlNode<T> left,
+      PersistentAvlNode<T> right) {
+    return new PersistentAvlNode<>(right.getItem(),
+        new PersistentAvlNode<>(item, left, right.getLeft()), right.getRight());
+  }
+
+  private int compare(T item, PersistentAvlNode<T> node) {
+    return comparator.compare(item, node.getItem());
+  }
+
+  private void forEach(PersistentAvlNode<T> node, Consumer<? super T> action) {
+    while (node != null) {
+      forEach(node.getLeft(), action);
+      action.accept(node.getItem());
+      node = node.getRight();
+    }
+  }
+
+  private static <T> Deque<PersistentAvlNode<T>> pushLeftPath(PersistentAvlNode<T> node,
+      Deque<PersistentAvlNode<T>> path) {
+    while (node != null) {
+      path.push(node);
+      node = node.getLeft();
+    }
+    return path;
+  }
+}
@@ -0,0 +1,40 @@
+//  TraversalOrder.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+/**
+ * Order in which AvlTree.export visits the items
+ */
+public enum TraversalOrder {
+  /**
+   * Ascending order
+   */
+  IN_ORDER,
+  /**
+   * Each node before its left subtree and then its right subtree, which is the order of toString()
+   */
+  PRE_ORDER,
+  /**
+   * Level by level from the top, each level from left to right
+   */
+  LEVEL_ORDER
+}
@@ -0,0 +1,489 @@
+//  WriteAheadLog.java
+//
+//  Author:
+//       Antonio J. Nebro <antonio@lcc.uma.es>
+//
+//  Copyright (c) 2013 Antonio J. Nebro
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU Lesser General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU Lesser General Public License for more details.
+//
+//  You should have received a copy of the GNU Lesser General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+
+package avl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of the insertions and deletions of an AvlTree. Records are appended to a buffer
+ * in memory, and sync(sequence) makes them durable with group commit: the first thread that needs
+ * its record on disk writes every record appended so far as one frame and forces the file once,
+ * while the threads whose records are in that frame wait for it. Records appended meanwhile go to
+ * the next frame. All numbers are big-endian. The file layout is:
+ *
+ * <pre>
+ *   header, HEADER_SIZE bytes: int MAGIC, int VERSION, long generation
+ *   frames, each one:
+ *     int   number of bytes of the records
+ *     int   CRC32C of the records
+ *     records, each one: byte INSERT or DELETE, int length if the codec has variable size, item
+ * </pre>
+ *
+ * A crash in the middle of a write leaves a torn frame at the end of the file, whose checksum does
+ * not match; replay stops before it and open cuts it off. The generation tells apart the logs that
+ * continue different snapshots: truncate empties the log and starts a new generation.
+ */
+public class WriteAheadLog<T> implements AutoCloseable {
+
+  public static final int MAGIC = 0x41564C57; // "AVLW"
+  public static final int VERSION = 1;
+  public static final int HEADER_SIZE = 16;
+
+  private static final int GENERATION_OFFSET = 8;
+
+  static final byte INSERT = 1;
+  static final byte DELETE = 2;
+
+  private static final int FRAME_HEADER_SIZE = 8;
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final FileChannel channel;
+  private final ItemCodec<? super T> codec;
+
+  // used only by the thread writing a frame
+  private final CRC32C checksum;
+  private final ByteBuffer frameHeader;
+
+  private ByteBuffer pendingRecords;
+  private ByteBuffer spareRecords;
+  private long appendedSequence;
+  private long durableSequence;
+  private boolean flushing;
+  private IOException failure;
+  private boolean closed;
+  private long syncCount;
+  private long generation;
+
+  private WriteAheadLog(FileChannel channel, ItemCodec<? super T> codec, long generation) {
+    this.channel = channel;
+    this.codec = codec;
+    this.generation = generation;
+    checksum = new CRC32C();
+    frameHeader = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+    pendingRecords = ByteBuffer.allocate(BUFFER_SIZE);
+    spareRecords = ByteBuffer.allocate(BUFFER_SIZE);
+  }
+
+  /**
+   * Opens the log file for appending, creating it with generation 0 if it does not exist or a
+   * crash left its header incomplete. A torn frame at the end of the file is cut off. The records
+   * already in the file are not read; see replay.
+   *
+   * @param path
+   * @param codec Encoding of the items
+   */
+  public static <T> WriteAheadLog<T> open(Path path, ItemCodec<? super T> codec)
+      throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long generation = 0;
+      if (channel.size() < HEADER_SIZE) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION)
+            .putLong(generation);
+        header.flip();
+        channel.truncate(0);
+        while (header.hasRemaining()) {
+          channel.write(header, header.position());
+        }
+        channel.force(true);
+      } else {
+        LogReader reader = new LogReader(channel);
+        generation = reader.getGeneration();
+        while (reader.nextFrame() != null) {
+          // skip to the end of the last complete frame
+        }
+        if (reader.getFrameEnd() < channel.size()) {
+          channel.truncate(reader.getFrameEnd());
+          channel.force(true);
+        }
+      }
+      channel.position(channel.size());
+      return new WriteAheadLog<>(channel, codec, generation);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Applies the records of the log file to tree, in the order they were appended, up to the first
+   * torn frame. Records are applied as they are, which is not idempotent for multisets, so the
+   * log must only be replayed on a tree that holds none of its records. DurableAvlTree ensures it
+   * by storing in each snapshot the generation of the log that continues it, and discarding logs
+   * of earlier generations.
+   *
+   * @return The number of records replayed
+   */
+  public static <T> long replay(Path path, ItemCodec<? extends T> codec, AvlTree<T> tree)
+      throws IOException {
+    long replayedRecords = 0;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      LogReader reader = new LogReader(channel);
+      ByteBuffer records;
+      while ((records = reader.nextFrame()) != null) {
+        while (records.hasRemaining()) {
+          byte operation = records.get();
+          int size = codec.fixedSize();
+          if (size == ItemCodec.VARIABLE_SIZE) {
+            size = records.getInt();
+          }
+          if (size < 0 || size > ItemCodec.MAXIMUM_ENCODED_SIZE || size > records.remaining()) {
+            throw new IOException("Corrupt AVL tree log: item of " + size + " bytes");
+          }
+          int start = records.position();
+          T item = codec.decode(records, size);
+          records.position(start + size);
+
+          if (operation == INSERT) {
+            tree.insert(item);
+          } else if (operation == DELETE) {
+            tree.delete(item);
+          } else {
+            throw new IOException("Corrupt AVL tree log: unknown operation " + operation);
+          }
+          replayedRecords++;
+        }
+      }
+    }
+    return replayedRecords;
+  }
+
+  /**
+   * Appends the insertion of item. The record is durable once sync has been called with the
+   * returned sequence number or a greater one.
+   *
+   * @return The sequence number of the record
+   */
+  public long logInsert(T item) throws IOException {
+    return append(INSERT, item);
+  }
+
+  /**
+   * Appends the deletion of item
+   *
+   * @return The sequence number of the record
+   */
+  public long logDelete(T item) throws IOException {
+    return append(DELETE, item);
+  }
+
+  /**
+   * Waits until the record with the given sequence number, and every one before it, is on disk.
+   * If no other thread is writing a frame, the calling thread writes every pending record and
+   * forces the file.
+   */
+  public void sync(long sequence) throws IOException {
+    ByteBuffer batch;
+    long batchSequence;
+    synchronized (this) {
+      while (durableSequence < sequence && flushing) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for the log");
+        }
+      }
+      if (durableSequence >= sequence) {
+        return;
+      }
+      checkNotFailed();
+
+      flushing = true;
+      batch = pendingRecords;
+      batchSequence = appendedSequence;
+      pendingRecords = spareRecords;
+      spareRecords = null;
+    }
+
+    try {
+      writeFrame(batch);
+    } catch (IOException e) {
+      synchronized (this) {
+        failure = e;
+        flushing = false;
+        notifyAll();
+      }
+      throw e;
+    }
+
+    synchronized (this) {
+      durableSequence = Math.max(durableSequence, batchSequence);
+      batch.clear();
+      spareRecords = batch;
+      flushing = false;
+      syncCount++;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Empties the log, once its records are no longer needed because a snapshot holds them, and
+   * starts newGeneration. The records are cut off before the generation is written, so a crash in
+   * between leaves an empty log of the old generation. Every record appended so far is considered
+   * durable. Appends must not run concurrently with this call.
+   *
+   * @throws IllegalArgumentException if newGeneration is not greater than the current generation
+   */
+  public synchronized void truncate(long newGeneration) throws IOException {
+    if (newGeneration <= generation) {
+      throw new IllegalArgumentException("Generation " + newGeneration
+          + " is not greater than the current generation " + generation);
+    }
+    while (flushing) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the log");
+      }
+    }
+    checkNotFailed();
+
+    pendingRecords.clear();
+    channel.truncate(HEADER_SIZE);
+    channel.position(HEADER_SIZE);
+    channel.force(true);
+
+    ByteBuffer generationBuffer = ByteBuffer.allocate(Long.BYTES).putLong(newGeneration);
+    generationBuffer.flip();
+    while (generationBuffer.hasRemaining()) {
+      channel.write(generationBuffer, GENERATION_OFFSET + generationBuffer.position());
+    }
+    channel.force(true);
+    generation = newGeneration;
+    durableSequence = appendedSequence;
+    notifyAll();
+  }
+
+  /**
+   * @return The sequence number of the last record appended, which sync makes durable together
+   * with every record before it
+   */
+  synchronized long getAppendedSequence() {
+    return appendedSequence;
+  }
+
+  /**
+   * @return The generation of the log, which is 0 until the first truncate
+   */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * @return The number of times the file has been forced to make records durable
+   */
+  public synchronized long getSyncCount() {
+    return syncCount;
+  }
+
+  /**
+   * Makes every appended record durable and closes the file
+   */
+  @Override
+  public void close() throws IOException {
+    long sequence;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      sequence = appendedSequence;
+    }
+    try {
+      if (failure == null) {
+        sync(sequence);
+      }
+    } finally {
+      channel.close();
+    }
+  }
+
+  private synchronized long append(byte operation, T item) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("The log is closed");
+    }
+    checkNotFailed();
+
+    int fixedSize = codec.fixedSize();
+    boolean variableSize = (fixedSize == ItemCodec.VARIABLE_SIZE);
+    ensureCapacity(1 + (variableSize ? Integer.BYTES : 0) + codec.maximumEncodedSize(item));
+
+    int recordStart = pendingRecords.position();
+    try {
+      pendingRecords.put(operation);
+      if (variableSize) {
+        int lengthPosition = pendingRecords.position();
+        pendingRecords.position(lengthPosition + Integer.BYTES);
+        codec.encode(item, pendingRecords);
+        int size = pendingRecords.position() - lengthPosition - Integer.BYTES;
+        if (size > ItemCodec.MAXIMUM_ENCODED_SIZE) {
+          throw new IOException("Item of " + size + " bytes, larger than the maximum of "
+              + ItemCodec.MAXIMUM_ENCODED_SIZE);
+        }
+        pendingRecords.putInt(lengthPosition, size);
+      } else {
+        codec.encode(item, pendingRecords);
+      }
+    } catch (IOException | RuntimeException e) {
+      pendingRecords.position(recordStart); // no partial record is left behind
+      throw e;
+    }
+    return ++appendedSequence;
+  }
+
+  private void ensureCapacity(int size) {
+    if (pendingRecords.remaining() < size) {
+      ByteBuffer largerBuffer = ByteBuffer.allocate(
+          Math.max(2 * pendingRecords.capacity(), pendingRecords.position() + size));
+      pendingRecords.flip();
+      largerBuffer.put(pendingRecords);
+      pendingRecords = largerBuffer;
+    }
+  }
+
+  private void checkNotFailed() throws IOException {
+    if (failure != null) {
+      throw new IOException("A previous write to the log failed", failure);
+    }
+  }
+
+  private void writeFrame(ByteBuffer records) throws IOException {
+    records.flip();
+    checksum.reset();
+    checksum.update(records.duplicate());
+    frameHeader.clear();
+    frameHeader.putInt(records.remaining()).putInt((int) checksum.getValue());
+    frameHeader.flip();
+
+    ByteBuffer[] buffers = {frameHeader, records};
+    while (records.hasRemaining()) {
+      channel.write(buffers);
+    }
+    channel.force(false);
+  }
+
+  /**
+   * Reads the frames of a log file through a buffer, from its header to the first torn frame
+   */
+  private static class LogReader {
+    private final FileChannel channel;
+    private final long fileSize;
+    private final CRC32C checksum;
+    private ByteBuffer buffer;
+    private long bufferEnd;
+    private long frameEnd;
+    private long generation;
+
+    LogReader(FileChannel channel) throws IOException {
+      this.channel = channel;
+      fileSize = channel.size();
+      checksum = new CRC32C();
+      buffer = ByteBuffer.allocateDirect(1 << 20);
+      buffer.flip();
+
+      if (!fill(HEADER_SIZE) || buffer.getInt() != MAGIC) {
+        throw new IOException("Not an AVL tree log");
+      }
+      int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported AVL tree log version " + version);
+      }
+      generation = buffer.getLong();
+      frameEnd = HEADER_SIZE;
+    }
+
+    long getGeneration() {
+      return generation;
+    }
+
+    /**
+     * @return The records of the next frame, or null if there are no more complete frames
+     */
+    ByteBuffer nextFrame() throws IOException {
+      if (!fill(FRAME_HEADER_SIZE)) {
+        return null;
+      }
+      int length = buffer.getInt();
+      int expectedChecksum = buffer.getInt();
+      if (length < 0 || length > fileSize - frameEnd - FRAME_HEADER_SIZE || !fill(length)) {
+        return null;
+      }
+
+      ByteBuffer records = buffer.slice();
+      records.limit(length);
+      checksum.reset();
+      checksum.update(records.duplicate());
+      if ((int) checksum.getValue() != expectedChecksum) {
+        return null;
+      }
+
+      buffer.position(buffer.position() + length);
+      frameEnd += FRAME_HEADER_SIZE + length;
+      return records;
+    }
+
+    /**
+     * @return The offset of the file after the last complete frame returned
+     */
+    long getFrameEnd() {
+      return frameEnd;
+    }
+
+    /**
+     * Reads from the file until the buffer has at least size bytes left
+     *
+     * @return false if the file ends before
+     */
+    private boolean fill(int size) throws IOException {
+      if (buffer.remaining() >= size) {
+        return true;
+      }
+
+      if (buffer.capacity() < size) {
+        ByteBuffer largerBuffer = ByteBuffer.allocateDirect(size);
+        largerBuffer.put(buffer);
+        buffer = largerBuffer;
+      } else {
+        buffer.compact();
+      }
+      while (buffer.position() < size) {
+        int bytesRead = channel.read(buffer, bufferEnd);
+        if (bytesRead < 0) {
+          buffer.flip();
+          return false;
+        }
+        bufferEnd += bytesRead;
+      }
+      buffer.flip();
+      return true;
+    }
+  }
+}
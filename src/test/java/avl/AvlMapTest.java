@@ -0,0 +1,297 @@
+package avl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Given an AVL map")
+class AvlMapTest {
+
+    private AtomicInteger comparisons;
+    private AvlMap<Integer, String> avlMap;
+
+    @BeforeEach
+    public void setUp() {
+        comparisons = new AtomicInteger();
+        avlMap = new AvlMap<>((Integer o1, Integer o2) -> {
+            comparisons.incrementAndGet();
+            return Integer.compare(o1, o2);
+        });
+    }
+
+    @Test
+    @DisplayName("When created, the map is empty")
+    void mapIsEmptyWhenCreated() {
+        assertThat(avlMap).isEmpty();
+        assertThat(avlMap.get(1)).isNull();
+        assertThat(avlMap.firstEntry()).isNull();
+        assertThat(avlMap.pollLastEntry()).isNull();
+        assertThrows(NoSuchElementException.class, () -> avlMap.firstKey());
+        assertThat(avlMap.checkStructure()).isEqualTo(-1);
+    }
+
+    @Test
+    @DisplayName("When keys have a natural ordering and no comparator is given, a null key throws exception")
+    void put_WhenKeyIsNullAndOrderingIsNatural_ThrowsException() {
+        AvlMap<String, Integer> naturalMap = new AvlMap<>();
+
+        assertThrows(NullPointerException.class, () -> naturalMap.put(null, 1));
+        naturalMap.put("b", 2);
+        naturalMap.put("a", 1);
+        assertThat(naturalMap.firstKey()).isEqualTo("a");
+        assertThrows(NullPointerException.class, () -> naturalMap.get(null));
+    }
+
+    @Test
+    @DisplayName("When copying a sorted map, its ordering is kept")
+    void copyOfSortedMapKeepsItsOrdering() {
+        TreeMap<Integer, String> treeMap = new TreeMap<>(Comparator.reverseOrder());
+        treeMap.put(1, "one");
+        treeMap.put(2, "two");
+
+        AvlMap<Integer, String> copy = new AvlMap<>(treeMap);
+
+        assertThat(copy.comparator()).isEqualTo(treeMap.comparator());
+        assertThat(copy.keySet()).containsExactly(2, 1);
+        assertThat(copy).isEqualTo(treeMap);
+    }
+
+    @Nested
+    @DisplayName("When modifying the map")
+    class modifications {
+
+        @Test
+        @DisplayName("with put, then the previous value is returned and replaced")
+        void putReplacesValue() {
+            assertThat(avlMap.put(1, "a")).isNull();
+            assertThat(avlMap.put(1, "b")).isEqualTo("a");
+            assertThat(avlMap.putIfAbsent(1, "c")).isEqualTo("b");
+
+            assertThat(avlMap).containsExactly(Map.entry(1, "b"));
+        }
+
+        @Test
+        @DisplayName("with (7, 4, 3, 2, 1), then the tree is rebalanced")
+        void insertedKeysAreRebalanced() {
+            for (int key : new int[]{7, 4, 3, 2, 1}) {
+                avlMap.put(key, "v" + key);
+            }
+
+            assertThat(avlMap.checkStructure()).isEqualTo(2);
+            assertThat(avlMap.keySet()).containsExactly(1, 2, 3, 4, 7);
+        }
+
+        @Test
+        @DisplayName("with computeIfAbsent, then a new key is compared only along one path")
+        void computeIfAbsentDescendsOnce() {
+            for (int key = 0; key < 1023; key++) {
+                avlMap.put(key, "v" + key);
+            }
+            int height = avlMap.checkStructure();
+
+            comparisons.set(0);
+            assertThat(avlMap.computeIfAbsent(5000, key -> "new")).isEqualTo("new");
+            assertThat(comparisons.get()).isLessThanOrEqualTo(height + 1);
+
+            comparisons.set(0);
+            assertThat(avlMap.computeIfAbsent(5000, key -> "other")).isEqualTo("new");
+            assertThat(comparisons.get()).isLessThanOrEqualTo(height + 2);
+        }
+
+        @Test
+        @DisplayName("with merge, then values are combined, inserted or removed")
+        void mergeCombinesValues() {
+            avlMap.merge(1, "a", String::concat);
+            avlMap.merge(1, "b", String::concat);
+            avlMap.merge(2, "c", String::concat);
+            avlMap.merge(2, "d", (oldValue, value) -> null);
+
+            assertThat(avlMap).containsExactly(Map.entry(1, "ab"));
+        }
+
+        @Test
+        @DisplayName("with compute returning null, then the key is removed")
+        void computeReturningNullRemovesKey() {
+            avlMap.put(1, "a");
+
+            assertThat(avlMap.compute(1, (key, value) -> null)).isNull();
+            assertThat(avlMap.computeIfPresent(2, (key, value) -> "x")).isNull();
+            assertThat(avlMap).isEmpty();
+        }
+
+        @Test
+        @DisplayName("inside a mapping function, throws exception")
+        void computeIfAbsent_WhenFunctionModifiesMap_ThrowsException() {
+            assertThrows(ConcurrentModificationException.class,
+                    () -> avlMap.computeIfAbsent(1, key -> avlMap.put(2, "b")));
+        }
+
+        @Test
+        @DisplayName("through an entry of the entry set, then the value is written to the map")
+        void entrySetValueWritesThrough() {
+            avlMap.put(1, "a");
+
+            avlMap.entrySet().iterator().next().setValue("b");
+
+            assertThat(avlMap.get(1)).isEqualTo("b");
+            assertThrows(UnsupportedOperationException.class,
+                    () -> avlMap.firstEntry().setValue("c"));
+        }
+
+        @Test
+        @DisplayName("during an iteration, the iterator throws exception")
+        void iterator_WhenMapIsModified_ThrowsException() {
+            avlMap.put(1, "a");
+            avlMap.put(2, "b");
+            Iterator<Integer> iterator = avlMap.keySet().iterator();
+            iterator.next();
+
+            avlMap.remove(2);
+
+            assertThrows(ConcurrentModificationException.class, iterator::next);
+        }
+    }
+
+    @Nested
+    @DisplayName("When the map has the keys 0, 10, ..., 90")
+    class mapWithEntries {
+
+        @BeforeEach
+        public void setUp() {
+            for (int key = 0; key < 100; key += 10) {
+                avlMap.put(key, "v" + key);
+            }
+        }
+
+        @Test
+        @DisplayName("then the navigation methods find the closest keys")
+        void navigationFindsClosestKeys() {
+            assertThat(avlMap.floorKey(25)).isEqualTo(20);
+            assertThat(avlMap.lowerKey(20)).isEqualTo(10);
+            assertThat(avlMap.ceilingKey(25)).isEqualTo(30);
+            assertThat(avlMap.higherKey(90)).isNull();
+            assertThat(avlMap.firstEntry()).isEqualTo(Map.entry(0, "v0"));
+            assertThat(avlMap.lastKey()).isEqualTo(90);
+        }
+
+        @Test
+        @DisplayName("then a sub map holds only its range and rejects keys outside it")
+        void subMapIsBounded() {
+            NavigableMap<Integer, String> subMap = avlMap.subMap(20, true, 50, false);
+
+            assertThat(subMap.keySet()).containsExactly(20, 30, 40);
+            assertThat(subMap.get(60)).isNull();
+            assertThat(subMap.firstKey()).isEqualTo(20);
+            assertThat(subMap.floorKey(100)).isEqualTo(40);
+            assertThrows(IllegalArgumentException.class, () -> subMap.put(50, "x"));
+            assertThrows(IllegalArgumentException.class, () -> subMap.subMap(10, true, 30, true));
+            assertThrows(IllegalArgumentException.class, () -> avlMap.subMap(50, true, 20, true));
+
+            subMap.put(25, "v25");
+            assertThat(avlMap.get(25)).isEqualTo("v25");
+        }
+
+        @Test
+        @DisplayName("then the descending map iterates in reverse order")
+        void descendingMapIsReversed() {
+            NavigableMap<Integer, String> descendingMap = avlMap.descendingMap();
+
+            assertThat(descendingMap.firstKey()).isEqualTo(90);
+            assertThat(descendingMap.higherKey(50)).isEqualTo(40);
+            assertThat(descendingMap.headMap(70, true).keySet()).containsExactly(90, 80, 70);
+            assertThat(descendingMap.descendingMap().keySet()).isEqualTo(avlMap.keySet());
+            assertThat(avlMap.descendingKeySet().descendingIterator().next()).isEqualTo(0);
+        }
+
+        @Test
+        @DisplayName("then removing through iterators deletes the entries")
+        void iteratorRemovesEntries() {
+            for (Iterator<Integer> iterator = avlMap.keySet().iterator(); iterator.hasNext(); ) {
+                if (iterator.next() % 20 == 0) {
+                    iterator.remove();
+                }
+            }
+            avlMap.subMap(30, 71).values().removeIf(value -> value.equals("v50"));
+
+            assertThat(avlMap.keySet()).containsExactly(10, 30, 70, 90);
+            assertThat(avlMap.checkStructure()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    @DisplayName("The map and its views match a TreeMap after random operations")
+    void mapMatchesTreeMapAfterRandomWorkload() {
+        Random random = new Random(1);
+        NavigableMap<Integer, String> expected = new TreeMap<>();
+        for (int i = 0; i < 50_000; i++) {
+            int key = random.nextInt(500);
+            String value = "v" + random.nextInt(10);
+            switch (random.nextInt(6)) {
+                case 0:
+                    assertThat(avlMap.put(key, value)).isEqualTo(expected.put(key, value));
+                    break;
+                case 1:
+                    assertThat(avlMap.remove(key)).isEqualTo(expected.remove(key));
+                    break;
+                case 2:
+                    assertThat(avlMap.merge(key, value, String::concat))
+                            .isEqualTo(expected.merge(key, value, String::concat));
+                    break;
+                case 3:
+                    assertThat(avlMap.computeIfAbsent(key, k -> value))
+                            .isEqualTo(expected.computeIfAbsent(key, k -> value));
+                    break;
+                case 4:
+                    assertThat(avlMap.compute(key, (k, v) -> (v == null) ? value : null))
+                            .isEqualTo(expected.compute(key, (k, v) -> (v == null) ? value : null));
+                    break;
+                default:
+                    assertThat(avlMap.ceilingEntry(key)).isEqualTo(expected.ceilingEntry(key));
+                    assertThat(avlMap.lowerKey(key)).isEqualTo(expected.lowerKey(key));
+                    break;
+            }
+        }
+        avlMap.checkStructure();
+
+        assertThat(avlMap).isEqualTo(expected);
+        assertThat(new ArrayList<>(avlMap.entrySet())).isEqualTo(new ArrayList<>(expected.entrySet()));
+        for (int from = -10; from < 510; from += 37) {
+            int to = from + random.nextInt(100);
+            assertViewsMatch(avlMap.subMap(from, false, to, true), expected.subMap(from, false, to, true));
+            assertViewsMatch(avlMap.headMap(to, false).descendingMap(),
+                    expected.headMap(to, false).descendingMap());
+            assertViewsMatch(avlMap.descendingMap().tailMap(from, true),
+                    expected.descendingMap().tailMap(from, true));
+        }
+    }
+
+    private void assertViewsMatch(NavigableMap<Integer, String> actual,
+            NavigableMap<Integer, String> expected) {
+        List<Integer> keys = new ArrayList<>(actual.keySet());
+        assertThat(keys).isEqualTo(new ArrayList<>(expected.keySet()));
+        assertThat(actual.size()).isEqualTo(expected.size());
+        assertThat(actual.firstEntry()).isEqualTo(expected.firstEntry());
+        assertThat(actual.lastEntry()).isEqualTo(expected.lastEntry());
+        for (int key = -20; key < 520; key += 13) {
+            assertThat(actual.floorKey(key)).isEqualTo(expected.floorKey(key));
+            assertThat(actual.higherKey(key)).isEqualTo(expected.higherKey(key));
+            assertThat(actual.containsKey(key)).isEqualTo(expected.containsKey(key));
+        }
+    }
+}
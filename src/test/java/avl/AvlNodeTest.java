@@ -69,7 +69,7 @@ class AvlNodeTest {
     void getHeight_WhenSetRightAndLeftNode_ReturnsHighestPlusOne() {
         AvlNode<Integer> rightNode = getDummyNode();
         AvlNode<Integer> leftNode = getDummyNode();
-        ReflectionTestUtils.setField(rightNode, "height", 2);
+        ReflectionTestUtils.setField(rightNode, "height", (byte) 2);
 
         node.setRight(rightNode);
         node.setLeft(leftNode);
@@ -79,6 +79,28 @@ class AvlNodeTest {
                 .isEqualTo(3);
     }
 
+    @Test
+    @DisplayName("When children are set, size is the sum of their sizes plus one")
+    void getSize_WhenSetRightAndLeftNode_ReturnsSumPlusOne() {
+        AvlNode<Integer> rightNode = getDummyNode();
+        AvlNode<Integer> leftNode = getDummyNode();
+        ReflectionTestUtils.setField(rightNode, "size", 3);
+
+        node.setRight(rightNode);
+        node.setLeft(leftNode);
+        node.updateSize();
+
+        assertThat(node.getSize())
+                .isEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("When created, size is one")
+    void getSize_WhenCreated_ReturnsOne() {
+        assertThat(node.getSize())
+                .isEqualTo(1);
+    }
+
     @Test
     @DisplayName("When parent node is set, node has parent")
     void hasParent_WhenSetParent_ReturnsTrue() {
@@ -117,20 +139,10 @@ class AvlNodeTest {
                 .isEqualTo(6);
     }
 
-    @Test
-    @DisplayName("When setting closest node, changes closest node")
-    void setClosestNode_WhenNodeIsNotNull_ChangesClosestNode() {
-        AvlNode<Integer> dummyNode = getDummyNode();
-        node.setClosestNode(dummyNode);
-
-        assertThat(node.getClosestNode())
-                .isEqualTo(dummyNode);
-    }
-
     @Test
     @DisplayName("When height is set, returns same height")
     void getHeight_WhenHeightIsNotValid_ThrowsException() {
-        int expectedHeight = 1000213;
+        byte expectedHeight = 127;
         ReflectionTestUtils.setField(node, "height", expectedHeight);
 
         assertThat(node.getHeight())
@@ -0,0 +1,124 @@
+package avl;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Given an AVL tree with metrics")
+class AvlTreeMetricsTest {
+
+    private AvlTree<Integer> avlTree;
+
+    @BeforeEach
+    public void setUp() {
+        avlTree = new AvlTree<>(Comparator.comparingInt((Integer o) -> o));
+    }
+
+    @Test
+    @DisplayName("When created, metrics are disabled")
+    void metricsAreDisabledByDefault() {
+        assertThat(avlTree.getMetrics()).isNull();
+
+        AvlTreeMetrics metrics = avlTree.enableMetrics();
+        assertThat(avlTree.enableMetrics()).isSameAs(metrics);
+
+        avlTree.disableMetrics();
+        assertThat(avlTree.getMetrics()).isNull();
+    }
+
+    @Test
+    @DisplayName("When searching, comparisons and path lengths are counted")
+    void searchesAreCounted() {
+        avlTree.bulkLoad(IntStream.rangeClosed(1, 7).boxed());
+        AvlTreeMetrics metrics = avlTree.enableMetrics();
+
+        avlTree.search(4);
+        avlTree.contains(1);
+        avlTree.contains(8);
+
+        assertThat(metrics.getSearches()).isEqualTo(3);
+        assertThat(metrics.getComparisons()).isEqualTo(7);
+        assertThat(metrics.getMaximumSearchPathLength()).isEqualTo(3);
+        assertThat(metrics.getAverageSearchPathLength()).isEqualTo(7.0 / 3);
+    }
+
+    @Test
+    @DisplayName("When inserting, single and double rotations are told apart")
+    void rotationsAreCounted() {
+        AvlTreeMetrics metrics = avlTree.enableMetrics();
+
+        for (int item : new int[]{1, 2, 3, 10, 5}) {
+            avlTree.insert(item);
+        }
+
+        assertThat(metrics.getSingleRotations()).isEqualTo(1);
+        assertThat(metrics.getDoubleRotations()).isEqualTo(1);
+        assertThat(metrics.getRotations()).isEqualTo(3);
+        assertThat(metrics.getRebalancedLevels()).isPositive();
+
+        metrics.reset();
+        assertThat(metrics.getComparisons()).isZero();
+        assertThat(metrics.getRebalancedLevels()).isZero();
+    }
+
+    @Test
+    @DisplayName("When inserting a batch, the comparisons made to sort it are counted")
+    void batchComparisonsAreCounted() {
+        List<Integer> batch = List.of(3, 1, 2);
+        AvlTreeMetrics metrics = avlTree.enableMetrics();
+        AtomicInteger calls = new AtomicInteger();
+        AvlTree<Integer> countedTree = new AvlTree<>(
+                (Integer o1, Integer o2) -> {
+                    calls.incrementAndGet();
+                    return Integer.compare(o1, o2);
+                });
+        countedTree.insertAll(batch);
+
+        avlTree.insertAll(batch);
+
+        assertThat(metrics.getComparisons()).isEqualTo(calls.get()).isPositive();
+    }
+
+    @Test
+    @DisplayName("When a recording is running, operations are emitted as events")
+    void operationsAreRecordedAsEvents(@TempDir Path directory) throws IOException {
+        avlTree.enableMetrics();
+        Path file = directory.resolve("operations.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable("avl.AvlTreeOperation").withThreshold(Duration.ZERO);
+            recording.start();
+            avlTree.insert(1);
+            avlTree.insert(2);
+            avlTree.search(2);
+            avlTree.delete(1);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("avl.AvlTreeOperation"))
+                .collect(Collectors.toList());
+        assertThat(events).extracting(event -> event.getString("operation"))
+                .containsExactly("insert", "insert", "search", "delete");
+
+        RecordedEvent search = events.get(2);
+        assertThat(search.getLong("comparisons")).isEqualTo(2);
+        assertThat(search.getInt("treeSize")).isEqualTo(2);
+    }
+}
@@ -0,0 +1,201 @@
+package avl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Given a snapshot of an AVL tree")
+class AvlTreeSnapshotTest {
+
+    private AvlTree<Integer> avlTree;
+
+    @BeforeEach
+    public void setUp() {
+        avlTree = AvlTree.naturalOrder();
+    }
+
+    @Test
+    @DisplayName("When it is written to a file and loaded, then the tree has the same items")
+    void snapshotRoundTripThroughFile(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("tree.snapshot");
+        avlTree.bulkLoad(IntStream.range(0, 300_000).map(item -> 3 * item).boxed());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            avlTree.writeSnapshot(channel, ItemCodec.integers());
+        }
+
+        AvlTree<Integer> loadedTree = AvlTree.naturalOrder();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            loadedTree.loadSnapshot(channel, ItemCodec.integers());
+        }
+
+        assertThat(channelSize(path)).isEqualTo(AvlTreeSnapshot.HEADER_SIZE + 4 * 300_000 + 4);
+        assertThat(loadedTree.size()).isEqualTo(300_000);
+        assertThat(loadedTree).containsExactlyElementsOf(avlTree);
+        assertThat(loadedTree.getTop().getHeight()).isEqualTo(avlTree.getTop().getHeight());
+    }
+
+    @Test
+    @DisplayName("When the items have variable size, then each one is restored")
+    void variableSizeItemsAreRestored() throws IOException {
+        char[] longCharacters = new char[1_500_000];
+        Arrays.fill(longCharacters, 'ñ');
+        AvlTree<String> stringTree = AvlTree.naturalOrder();
+        stringTree.insertAll(Arrays.asList("", "avl", "árbol", "木", new String(longCharacters)));
+
+        AvlTree<String> loadedTree = AvlTree.naturalOrder();
+        loadedTree.loadSnapshot(readChannel(write(stringTree, ItemCodec.strings())),
+                ItemCodec.strings());
+
+        assertThat(loadedTree).containsExactlyElementsOf(stringTree);
+    }
+
+    @Test
+    @DisplayName("When the tree is empty, then an empty tree is loaded")
+    void emptyTreeIsRestored() throws IOException {
+        byte[] snapshot = write(avlTree, ItemCodec.integers());
+
+        AvlTree<Integer> loadedTree = AvlTree.naturalOrder();
+        loadedTree.loadSnapshot(readChannel(snapshot), ItemCodec.integers());
+
+        assertThat(snapshot).hasSize(AvlTreeSnapshot.HEADER_SIZE + 4);
+        assertThat(loadedTree.avlIsEmpty()).isTrue();
+    }
+
+    @Test
+    @DisplayName("When the tree is a multiset, then each distinct item is written once with its count")
+    void multisetCountsAreRestored() throws IOException {
+        AvlTree<Integer> multiset = AvlTree.<Integer>naturalOrder().enableMultiset();
+        for (int i = 0; i < 1_000_000; i++) {
+            multiset.insert(i % 2);
+        }
+        multiset.insert(7);
+        byte[] snapshot = write(multiset, ItemCodec.integers());
+
+        AvlTree<Integer> loadedMultiset = AvlTree.<Integer>naturalOrder().enableMultiset();
+        loadedMultiset.loadSnapshot(readChannel(snapshot), ItemCodec.integers());
+        avlTree.loadSnapshot(readChannel(snapshot), ItemCodec.integers());
+
+        assertThat(snapshot).hasSize(AvlTreeSnapshot.HEADER_SIZE + 3 * (4 + 4) + 4);
+        assertThat(loadedMultiset.count(0)).isEqualTo(500_000);
+        assertThat(loadedMultiset.count(7)).isEqualTo(1);
+        assertThat(loadedMultiset.totalCount()).isEqualTo(1_000_001);
+        assertThat(avlTree.count(0)).isEqualTo(1);
+        assertThat(avlTree.totalCount()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("When a byte is corrupted, loading throws exception and the tree stays empty")
+    void loadSnapshot_WhenSnapshotIsCorrupt_ThrowsException() throws IOException {
+        avlTree.insertAll(Arrays.asList(1, 2, 3, 4, 5));
+        byte[] snapshot = write(avlTree, ItemCodec.integers());
+        snapshot[AvlTreeSnapshot.HEADER_SIZE + 4 * 4] ^= 1; // the last item, 5, becomes 2^24 + 5
+
+        AvlTree<Integer> loadedTree = AvlTree.naturalOrder();
+        IOException exception = assertThrows(IOException.class,
+                () -> loadedTree.loadSnapshot(readChannel(snapshot), ItemCodec.integers()));
+
+        assertThat(exception).hasMessageContaining("checksum");
+        assertThat(loadedTree.avlIsEmpty()).isTrue();
+    }
+
+    @Test
+    @DisplayName("When the snapshot is truncated, loading throws exception")
+    void loadSnapshot_WhenSnapshotIsTruncated_ThrowsException() throws IOException {
+        avlTree.insertAll(Arrays.asList(1, 2, 3));
+        byte[] snapshot = write(avlTree, ItemCodec.integers());
+
+        assertThrows(EOFException.class, () -> AvlTree.<Integer>naturalOrder().loadSnapshot(
+                readChannel(Arrays.copyOf(snapshot, snapshot.length - 5)), ItemCodec.integers()));
+    }
+
+    @Test
+    @DisplayName("When the length of an item is corrupted, loading throws exception before allocating it")
+    void loadSnapshot_WhenItemLengthIsCorrupt_ThrowsException(@TempDir Path directory)
+            throws IOException {
+        AvlTree<String> stringTree = AvlTree.naturalOrder();
+        stringTree.insertAll(Arrays.asList("avl", "tree"));
+        byte[] snapshot = write(stringTree, ItemCodec.strings());
+        ByteBuffer.wrap(snapshot).putInt(AvlTreeSnapshot.HEADER_SIZE, Integer.MAX_VALUE);
+
+        IOException exception = assertThrows(IOException.class, () -> AvlTree.<String>naturalOrder()
+                .loadSnapshot(readChannel(snapshot), ItemCodec.strings()));
+        assertThat(exception).hasMessageContaining("item of " + Integer.MAX_VALUE + " bytes");
+
+        Path path = directory.resolve("tree.snapshot");
+        ByteBuffer.wrap(snapshot).putInt(AvlTreeSnapshot.HEADER_SIZE, ItemCodec.MAXIMUM_ENCODED_SIZE);
+        Files.write(path, snapshot);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            assertThrows(EOFException.class, () -> AvlTree.<String>naturalOrder()
+                    .loadSnapshot(channel, ItemCodec.strings()));
+        }
+    }
+
+    @Test
+    @DisplayName("When the snapshot was written with another ordering, loading throws exception")
+    void loadSnapshot_WhenOrderingIsDifferent_ThrowsException() throws IOException {
+        avlTree.insertAll(Arrays.asList(1, 2, 3));
+        byte[] snapshot = write(avlTree, ItemCodec.integers());
+
+        AvlTree<Integer> reversedTree = new AvlTree<>(Comparator.reverseOrder());
+        assertThrows(IOException.class,
+                () -> reversedTree.loadSnapshot(readChannel(snapshot), ItemCodec.integers()));
+        assertThat(reversedTree.avlIsEmpty()).isTrue();
+    }
+
+    @Test
+    @DisplayName("When the data is not a snapshot or the codec does not match, loading throws exception")
+    void loadSnapshot_WhenDataIsNotASnapshot_ThrowsException() throws IOException {
+        byte[] snapshot = write(avlTree, ItemCodec.integers());
+
+        assertThrows(IOException.class, () -> AvlTree.<Integer>naturalOrder()
+                .loadSnapshot(readChannel(new byte[64]), ItemCodec.integers()));
+        assertThrows(IOException.class, () -> AvlTree.<Long>naturalOrder()
+                .loadSnapshot(readChannel(snapshot), ItemCodec.longs()));
+    }
+
+    @Test
+    @DisplayName("When the tree is not empty, loading throws exception")
+    void loadSnapshot_WhenTreeIsNotEmpty_ThrowsException() throws IOException {
+        byte[] snapshot = write(avlTree, ItemCodec.integers());
+        avlTree.insert(1);
+
+        assertThrows(IllegalStateException.class,
+                () -> avlTree.loadSnapshot(readChannel(snapshot), ItemCodec.integers()));
+    }
+
+    private <T> byte[] write(AvlTree<T> tree, ItemCodec<? super T> codec) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        tree.writeSnapshot(Channels.newChannel(output), codec);
+        return output.toByteArray();
+    }
+
+    private ReadableByteChannel readChannel(byte[] snapshot) {
+        return Channels.newChannel(new ByteArrayInputStream(snapshot));
+    }
+
+    private long channelSize(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.size();
+        }
+    }
+}
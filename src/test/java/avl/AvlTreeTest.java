@@ -5,10 +5,32 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mockito;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
  * Created with IntelliJ IDEA. User: Antonio J. Nebro Date: 08/07/13
@@ -16,7 +38,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 class AvlTreeTest {
 
     private AvlTree<Integer> avlTree;
-    private Comparator<?> comparator;
+    private Comparator<Integer> comparator;
 
     @BeforeEach
     public void setUp() {
@@ -485,86 +507,1105 @@ class AvlTreeTest {
     class insertedNode {
 
         @Test
-        @DisplayName("and two nodes are inserted in right and left respectively, then searchClosestNode returns their respective value for each one")
+        @DisplayName("and two nodes are inserted in right and left respectively, then searchClosest returns the node they hang from")
         void testInsertingRightAndLeftElementsJustAfterTop() {
             AvlNode<Integer> node = new AvlNode<>(6);
             avlTree.insertAvlNode(node);
 
+            assertThat(avlTree.searchClosest(4)).isEqualTo(node);
+            assertThat(avlTree.searchClosest(9)).isEqualTo(node);
+            assertThat(avlTree.searchClosest(6)).isEqualTo(node);
+
             AvlNode<Integer> nodeLeft = new AvlNode<>(4);
             AvlNode<Integer> nodeRight = new AvlNode<>(9);
+            avlTree.insertAvlNode(nodeLeft);
+            avlTree.insertAvlNode(nodeRight);
 
-            assertThat(avlTree.searchClosestNode(nodeLeft))
-                    .isEqualTo(-1);
-            assertThat(avlTree.searchClosestNode(nodeRight))
-                    .isEqualTo(1);
-            assertThat(avlTree.searchClosestNode(node))
-                    .isZero();
+            assertThat(avlTree.searchClosest(7)).isEqualTo(nodeRight);
+            assertThat(avlTree.searchClosest(5)).isEqualTo(nodeLeft);
+            assertThat(node.getLeft()).isEqualTo(nodeLeft);
+            assertThat(node.getRight()).isEqualTo(nodeRight);
 
-            assertThat(nodeLeft.getClosestNode())
-                    .isEqualTo(node);
-            assertThat(nodeRight.getClosestNode())
-                    .isEqualTo(node);
+            String tree = " | 6 | 4 | 9";
+            assertThat(tree).isEqualTo(avlTree.toString());
+        }
+    }
 
-            node.setLeft(nodeLeft);
-            node.setRight(nodeRight);
+    @DisplayName("When some nodes are inserted")
+    @Nested
+    class someNodesInserted {
 
-            AvlNode<Integer> nodeRightLeft = new AvlNode<>(7);
+        @DisplayName("(7, 4, 9, 6, 8), then each one is linked below the node returned by searchClosest")
+        @Test
+        void testSearchClosestNode() {
+            assertThat(avlTree.searchClosest(7)).isNull();
+            avlTree.insert(7);
 
-            assertThat(avlTree.searchClosestNode(nodeRightLeft))
-                    .isEqualTo(-1);
-            assertThat(nodeRightLeft.getClosestNode())
-                    .isEqualTo(nodeRight);
+            for (int item : new int[]{4, 9, 6, 8}) {
+                AvlNode<Integer> closestNode = avlTree.searchClosest(item);
+                AvlNode<Integer> node = new AvlNode<>(item);
+                avlTree.insertAvlNode(node);
 
-            AvlNode<Integer> nodeLeftRight = new AvlNode<>(5);
-            assertThat(avlTree.searchClosestNode(nodeLeftRight))
-                    .isEqualTo(1);
-            assertThat(nodeLeft).isEqualTo(nodeLeftRight.getClosestNode());
+                assertThat(node.getParent()).isEqualTo(closestNode);
+                assertThat(avlTree.searchClosest(item)).isEqualTo(node);
+            }
 
-            String tree = " | 6 | 4 | 9";
+            String tree = " | 7 | 4 | 6 | 9 | 8";
             assertThat(tree).isEqualTo(avlTree.toString());
         }
+
     }
 
-    @DisplayName("When some nodes are inserted")
+
+    @DisplayName("When looking up items by key")
     @Nested
-    class someNodesInserted {
+    class keyBasedLookup {
+        private static final int NUMBER_OF_ITEMS = 1000;
+        private static final int NUMBER_OF_LOOKUPS = 100_000;
+
+        private Integer[] presentKeys;
+        private Integer[] missingKeys;
+
+        @BeforeEach
+        void setUp() {
+            presentKeys = new Integer[NUMBER_OF_ITEMS];
+            missingKeys = new Integer[NUMBER_OF_ITEMS];
+            for (int i = 0; i < NUMBER_OF_ITEMS; i++) {
+                presentKeys[i] = 2 * i;
+                missingKeys[i] = 2 * i + 1;
+                avlTree.insert(presentKeys[i]);
+            }
+        }
 
-        @DisplayName("(7, 4, 9, 6, 8), then searchClosest returns 1, -1 or 0 depending on their value")
         @Test
-        void testSearchClosestNode() {
-            int result;
-            AvlNode<Integer> node = new AvlNode<>(7);
-            result = avlTree.searchClosestNode(node);
-            assertThat(0).isEqualTo(result);
-            avlTree.insertAvlNode(node);
+        @DisplayName("contains returns true for present items and false for missing ones")
+        void containsReturnsWhetherTheItemIsPresent() {
+            assertThat(avlTree.contains(10)).isTrue();
+            assertThat(avlTree.contains(11)).isFalse();
+        }
 
-            node = new AvlNode<>(4);
-            result = avlTree.searchClosestNode(node);
-            assertThat(-1).isEqualTo(result);
-            avlTree.insertAvlNode(node);
+        @Test
+        @DisplayName("searchClosest returns the matching node or the node where the item would be attached")
+        void searchClosestReturnsMatchingOrParentNode() {
+            assertThat(avlTree.searchClosest(10).getItem()).isEqualTo(10);
 
-            node = new AvlNode<>(9);
-            result = avlTree.searchClosestNode(node);
-            assertThat(1).isEqualTo(result);
-            avlTree.insertAvlNode(node);
+            AvlNode<Integer> closest = avlTree.searchClosest(11);
+            assertThat(closest.getItem()).isIn(10, 12);
+            assertThat(closest.getItem() == 10 ? closest.hasRight() : closest.hasLeft()).isFalse();
+        }
 
-            node = new AvlNode<>(6);
-            result = avlTree.searchClosestNode(node);
-            assertThat(1).isEqualTo(result);
-            avlTree.insertAvlNode(node);
+        @Test
+        @DisplayName("searchClosest returns null on an empty tree")
+        void searchClosestReturnsNullOnEmptyTree() {
+            assertThat(new AvlTree<Integer>(comparator).searchClosest(1)).isNull();
+        }
 
-            node = new AvlNode<>(8);
-            result = avlTree.searchClosestNode(node);
-            assertThat(-1).isEqualTo(result);
-            avlTree.insertAvlNode(node);
+        @Test
+        @DisplayName("search, contains and delete of a missing item allocate nothing")
+        void lookupsDoNotAllocate() {
+            com.sun.management.ThreadMXBean threadBean =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long threadId = Thread.currentThread().getId();
+            performLookups();
+
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+            int found = performLookups();
+            long allocatedAfter = threadBean.getThreadAllocatedBytes(threadId);
+
+            assertThat(found).isEqualTo(NUMBER_OF_LOOKUPS);
+            assertThat((allocatedAfter - allocatedBefore) / NUMBER_OF_LOOKUPS).isZero();
+        }
 
-            String tree = " | 7 | 4 | 6 | 9 | 8";
-            assertThat(tree).isEqualTo(avlTree.toString());
+        private int performLookups() {
+            int found = 0;
+            for (int i = 0; i < NUMBER_OF_LOOKUPS; i++) {
+                if (avlTree.search(presentKeys[i % NUMBER_OF_ITEMS]) != null) {
+                    found++;
+                }
+                if (avlTree.contains(missingKeys[i % NUMBER_OF_ITEMS])) {
+                    found--;
+                }
+                avlTree.delete(missingKeys[i % NUMBER_OF_ITEMS]);
+                avlTree.searchClosest(missingKeys[i % NUMBER_OF_ITEMS]);
+            }
+            return found;
+        }
+    }
+
+
+    @DisplayName("When counting the rebalancing cost")
+    @Nested
+    class rebalanceCost {
+
+        @Test
+        @DisplayName("An insertion whose rotation restores the subtree height stops walking up")
+        void rebalanceStopsWhenRotationRestoresHeight() {
+            insertNodes(avlTree, 4, 2, 6, 1, 3, 5, 7, 8);
+            AvlTreeMetrics metrics = avlTree.enableMetrics();
+
+            avlTree.insert(9);
+
+            assertThat(metrics.getRebalancedLevels()).isEqualTo(3);
+            assertThat(metrics.getRotations()).isEqualTo(1);
+            assertThat(avlTree.getTop().getItem()).isEqualTo(4);
+            assertThat(avlTree.getTop().getHeight()).isEqualTo(3);
+            assertIsValidAvlTree(avlTree);
+        }
+
+        @Test
+        @DisplayName("Sequential insertions walk a constant number of levels on average")
+        void sequentialInsertionsWalkFewLevels() {
+            int numberOfItems = 1 << 12;
+            AvlTreeMetrics metrics = avlTree.enableMetrics();
+            for (int i = 0; i < numberOfItems; i++) {
+                avlTree.insert(i);
+            }
+
+            assertThat(metrics.getRebalancedLevels()).isLessThan(4L * numberOfItems);
+            assertThat(metrics.getRotations()).isLessThan(numberOfItems);
+            assertIsValidAvlTree(avlTree);
+        }
+
+        @Test
+        @DisplayName("The tree stays balanced after random insertions and deletions")
+        void treeStaysBalancedAfterRandomWorkload() {
+            Random random = new Random(1);
+            TreeSet<Integer> expected = new TreeSet<>();
+            for (int i = 0; i < 20_000; i++) {
+                int item = random.nextInt(2_000);
+                if (random.nextBoolean()) {
+                    avlTree.insert(item);
+                    expected.add(item);
+                } else {
+                    avlTree.delete(item);
+                    expected.remove(item);
+                }
+            }
+
+            assertIsValidAvlTree(avlTree);
+            for (int item = 0; item < 2_000; item++) {
+                assertThat(avlTree.contains(item)).isEqualTo(expected.contains(item));
+            }
+        }
+
+        @Test
+        @DisplayName("Resetting the counters sets them to zero")
+        void resetSetsCountersToZero() {
+            AvlTreeMetrics metrics = avlTree.enableMetrics();
+            insertNodes(avlTree, 1, 2, 3);
+            assertThat(metrics.getRotations()).isEqualTo(1);
+            metrics.reset();
+
+            assertThat(metrics.getRebalancedLevels()).isZero();
+            assertThat(metrics.getRotations()).isZero();
+        }
+    }
+
+
+    @DisplayName("When bulk loading sorted items")
+    @Nested
+    class bulkLoad {
+
+        @Test
+        @DisplayName("(1 .. 7), then the tree is perfectly balanced")
+        void bulkLoadBuildsAPerfectlyBalancedTree() {
+            avlTree.bulkLoad(new Integer[]{1, 2, 3, 4, 5, 6, 7});
+
+            assertThat(avlTree).hasToString(" | 4 | 2 | 1 | 3 | 6 | 5 | 7");
+            assertThat(avlTree.getTop().getHeight()).isEqualTo(2);
+            assertIsValidAvlTree(avlTree);
+        }
+
+        @ParameterizedTest(name = "With {0} items")
+        @DisplayName("from a stream, then every item is found and the tree is balanced")
+        @ValueSource(ints = {0, 1, 2, 10, 1000, 4095})
+        void bulkLoadFromAStreamKeepsEveryItem(int numberOfItems) {
+            avlTree.bulkLoad(IntStream.range(0, numberOfItems).boxed());
+
+            assertIsValidAvlTree(avlTree);
+            for (int item = 0; item < numberOfItems; item++) {
+                assertThat(avlTree.contains(item)).isTrue();
+            }
+            assertThat(avlTree.contains(numberOfItems)).isFalse();
+        }
+
+        @Test
+        @DisplayName("with repeated items, then each item is inserted once")
+        void bulkLoadSkipsRepeatedItems() {
+            avlTree.bulkLoad(Arrays.asList(1, 1, 2, 3, 3).iterator());
+
+            assertThat(avlTree).hasToString(" | 2 | 1 | 3");
+        }
+
+        @Test
+        @DisplayName("then the tree can be modified afterwards")
+        void bulkLoadedTreeCanBeModified() {
+            avlTree.bulkLoad(IntStream.range(0, 100).boxed());
+            for (int item = 0; item < 100; item += 3) {
+                avlTree.delete(item);
+            }
+            for (int item = 100; item < 150; item++) {
+                avlTree.insert(item);
+            }
+
+            assertIsValidAvlTree(avlTree);
+        }
+
+        @Test
+        @DisplayName("not sorted, throws exception")
+        void bulkLoad_WhenItemsAreNotSorted_ThrowsException() {
+            assertThrows(IllegalArgumentException.class,
+                    () -> avlTree.bulkLoad(new Integer[]{1, 3, 2}));
+        }
+
+        @Test
+        @DisplayName("into a non empty tree, throws exception")
+        void bulkLoad_WhenTreeIsNotEmpty_ThrowsException() {
+            avlTree.insert(1);
+
+            assertThrows(IllegalStateException.class,
+                    () -> avlTree.bulkLoad(new Integer[]{2, 3}));
+        }
+    }
+
+
+    @DisplayName("When inserting a batch of items")
+    @Nested
+    class insertAll {
+
+        @Test
+        @DisplayName("into an empty tree, then the tree is built from the sorted batch")
+        void insertAllIntoAnEmptyTree() {
+            avlTree.insertAll(Arrays.asList(5, 3, 7, 1, 3));
+
+            assertThat(avlTree).hasToString(" | 5 | 3 | 1 | 7");
+            assertIsValidAvlTree(avlTree);
         }
 
+        @Test
+        @DisplayName("larger than the tree, then it is merged with the existing nodes")
+        void insertAllMergesALargeBatch() {
+            insertNodes(avlTree, 10, 20, 30);
+            AvlNode<Integer> existingNode = avlTree.search(20);
+            List<Integer> batch = new ArrayList<>();
+            for (int item = 0; item < 40; item++) {
+                batch.add(item);
+            }
+            Collections.shuffle(batch, new Random(1));
+
+            avlTree.insertAll(batch);
+
+            assertIsValidAvlTree(avlTree);
+            assertThat(avlTree.search(20)).isSameAs(existingNode);
+            for (int item = 0; item < 40; item++) {
+                assertThat(avlTree.contains(item)).isTrue();
+            }
+            assertThat(avlTree.getTop().getHeight()).isEqualTo(5);
+        }
+
+        @Test
+        @DisplayName("smaller than the tree, then items are inserted one by one")
+        void insertAllInsertsASmallBatch() {
+            for (int item = 0; item < 1000; item += 2) {
+                avlTree.insert(item);
+            }
+            AvlNode<Integer> top = avlTree.getTop();
+
+            avlTree.insertAll(Arrays.asList(7, 3, 5, 3, 998));
+
+            assertIsValidAvlTree(avlTree);
+            assertThat(avlTree.getTop()).isSameAs(top);
+            assertThat(avlTree.contains(3)).isTrue();
+            assertThat(avlTree.contains(5)).isTrue();
+            assertThat(avlTree.contains(7)).isTrue();
+        }
+
+        @Test
+        @DisplayName("matching a TreeSet after random batches")
+        void insertAllMatchesTreeSet() {
+            Random random = new Random(1);
+            TreeSet<Integer> expected = new TreeSet<>();
+            for (int round = 0; round < 50; round++) {
+                List<Integer> batch = new ArrayList<>();
+                int batchSize = random.nextInt(200);
+                for (int i = 0; i < batchSize; i++) {
+                    batch.add(random.nextInt(5_000));
+                }
+                avlTree.insertAll(batch);
+                expected.addAll(batch);
+            }
+
+            assertIsValidAvlTree(avlTree);
+            for (int item = 0; item < 5_000; item++) {
+                assertThat(avlTree.contains(item)).isEqualTo(expected.contains(item));
+            }
+        }
+    }
+
+
+    @DisplayName("When iterating over the tree")
+    @Nested
+    class iteration {
+
+        @Test
+        @DisplayName("then items are returned in ascending order")
+        void iteratorReturnsItemsInOrder() {
+            insertNodes(avlTree, 20, 8, 22, 4, 12, 24, 10, 14);
+
+            assertThat(avlTree).containsExactly(4, 8, 10, 12, 14, 20, 22, 24);
+        }
+
+        @Test
+        @DisplayName("an empty tree, then there are no items")
+        void iteratorOfEmptyTreeHasNoItems() {
+            Iterator<Integer> iterator = avlTree.iterator();
+
+            assertThat(iterator.hasNext()).isFalse();
+            assertThrows(NoSuchElementException.class, iterator::next);
+        }
+
+        @Test
+        @DisplayName("and the tree is modified, then the iterator throws exception")
+        void iteratorFailsFastWhenTreeIsModified() {
+            insertNodes(avlTree, 1, 2, 3);
+            Iterator<Integer> iterator = avlTree.iterator();
+            iterator.next();
+
+            avlTree.delete(3);
+
+            assertThrows(ConcurrentModificationException.class, iterator::next);
+        }
+
+        @Test
+        @DisplayName("and the tree is modified by forEach, then it throws exception")
+        void forEachFailsFastWhenTreeIsModified() {
+            insertNodes(avlTree, 1, 2, 3);
+
+            assertThrows(ConcurrentModificationException.class,
+                    () -> avlTree.forEach(item -> avlTree.insert(item + 10)));
+        }
+
+        @Test
+        @DisplayName("with forEach, then items are visited in order without allocating")
+        void forEachVisitsItemsInOrderWithoutAllocating() {
+            for (int item = 1000; item > 0; item--) {
+                avlTree.insert(item);
+            }
+            long[] sum = new long[1];
+            int[] previous = new int[1];
+            Consumer<Integer> action = item -> {
+                assertThat(item > previous[0]).isTrue();
+                previous[0] = item;
+                sum[0] += item;
+            };
+            com.sun.management.ThreadMXBean threadBean =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long threadId = Thread.currentThread().getId();
+            avlTree.forEach(item -> sum[0] += item);
+
+            sum[0] = 0;
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 100; i++) {
+                avlTree.forEach(item -> sum[0] += item);
+            }
+            long allocatedAfter = threadBean.getThreadAllocatedBytes(threadId);
+
+            assertThat(sum[0]).isEqualTo(100 * 500_500L);
+            assertThat((allocatedAfter - allocatedBefore) / (100 * 1000)).isZero();
+
+            previous[0] = 0;
+            avlTree.forEach(action);
+            assertThat(previous[0]).isEqualTo(1000);
+        }
     }
 
 
+    @DisplayName("When navigating the tree (10, 20, 30, 40, 50)")
+    @Nested
+    class navigation {
+
+        @BeforeEach
+        void setUp() {
+            insertNodes(avlTree, 30, 10, 50, 20, 40);
+        }
+
+        @Test
+        @DisplayName("then floor and ceiling return the nearest item, including an equal one")
+        void floorAndCeilingIncludeEqualItems() {
+            assertThat(avlTree.floor(30)).isEqualTo(30);
+            assertThat(avlTree.floor(35)).isEqualTo(30);
+            assertThat(avlTree.floor(5)).isNull();
+            assertThat(avlTree.ceiling(30)).isEqualTo(30);
+            assertThat(avlTree.ceiling(35)).isEqualTo(40);
+            assertThat(avlTree.ceiling(55)).isNull();
+        }
+
+        @Test
+        @DisplayName("then lower and higher return the nearest strictly smaller or greater item")
+        void lowerAndHigherExcludeEqualItems() {
+            assertThat(avlTree.lower(30)).isEqualTo(20);
+            assertThat(avlTree.lower(10)).isNull();
+            assertThat(avlTree.higher(30)).isEqualTo(40);
+            assertThat(avlTree.higher(50)).isNull();
+        }
+
+        @Test
+        @DisplayName("then findMinimum and findMaximum return the extreme nodes")
+        void findMinimumAndMaximum() {
+            assertThat(avlTree.findMinimum().getItem()).isEqualTo(10);
+            assertThat(avlTree.findMaximum().getItem()).isEqualTo(50);
+            assertThat(new AvlTree<Integer>(comparator).findMaximum()).isNull();
+        }
+
+        @Test
+        @DisplayName("then range returns the items between the bounds")
+        void rangeReturnsItemsBetweenBounds() {
+            assertThat(avlTree.range(20, true, 40, true)).containsExactly(20, 30, 40);
+            assertThat(avlTree.range(20, false, 40, false)).containsExactly(30);
+            assertThat(avlTree.range(15, true, 45, true)).containsExactly(20, 30, 40);
+            assertThat(avlTree.range(30, false, 30, true)).isEmpty();
+            assertThat(avlTree.range(31, true, 39, true)).isEmpty();
+            assertThat(avlTree.range(0, true, 100, true)).containsExactly(10, 20, 30, 40, 50);
+        }
+
+        @Test
+        @DisplayName("then a range whose start is greater than its end throws exception")
+        void range_WhenStartIsGreaterThanEnd_ThrowsException() {
+            assertThrows(IllegalArgumentException.class, () -> avlTree.range(40, true, 20, true));
+        }
+
+        @Test
+        @DisplayName("then headSet and tailSet return the items before and after a bound")
+        void headSetAndTailSet() {
+            assertThat(avlTree.headSet(30, false)).containsExactly(10, 20);
+            assertThat(avlTree.headSet(30, true)).containsExactly(10, 20, 30);
+            assertThat(avlTree.headSet(5, true)).isEmpty();
+            assertThat(avlTree.tailSet(30, false)).containsExactly(40, 50);
+            assertThat(avlTree.tailSet(30, true)).containsExactly(30, 40, 50);
+            assertThat(avlTree.tailSet(55, true)).isEmpty();
+        }
+
+        @Test
+        @DisplayName("then range views reflect later changes")
+        void rangeViewsReflectChanges() {
+            Iterable<Integer> range = avlTree.range(20, true, 40, true);
+
+            avlTree.insert(25);
+            avlTree.delete(40);
+
+            assertThat(range).containsExactly(20, 25, 30);
+        }
+    }
+
+
+    @DisplayName("When using order statistics")
+    @Nested
+    class orderStatistics {
+
+        @Test
+        @DisplayName("on an empty tree, then size is zero and select throws exception")
+        void emptyTreeHasSizeZero() {
+            assertThat(avlTree.size()).isZero();
+            assertThat(avlTree.rank(5)).isZero();
+            assertThrows(IndexOutOfBoundsException.class, () -> avlTree.select(0));
+        }
+
+        @Test
+        @DisplayName("on the tree (10, 20, 30, 40, 50), then rank and select are inverse")
+        void rankAndSelect() {
+            insertNodes(avlTree, 30, 10, 50, 20, 40);
+
+            assertThat(avlTree.size()).isEqualTo(5);
+            assertThat(avlTree.rank(10)).isZero();
+            assertThat(avlTree.rank(35)).isEqualTo(3);
+            assertThat(avlTree.rank(50)).isEqualTo(4);
+            assertThat(avlTree.rank(60)).isEqualTo(5);
+            assertThat(avlTree.select(0)).isEqualTo(10);
+            assertThat(avlTree.select(3)).isEqualTo(40);
+            assertThrows(IndexOutOfBoundsException.class, () -> avlTree.select(5));
+            assertThrows(IndexOutOfBoundsException.class, () -> avlTree.select(-1));
+        }
+
+        @Test
+        @DisplayName("after a random mixed workload, then sizes, rank and select are consistent")
+        void sizesAreConsistentAfterRandomWorkload() {
+            Random random = new Random(7);
+            TreeSet<Integer> expected = new TreeSet<>();
+            for (int round = 0; round < 30; round++) {
+                for (int i = 0; i < 500; i++) {
+                    int item = random.nextInt(3_000);
+                    if (random.nextInt(3) > 0) {
+                        avlTree.insert(item);
+                        expected.add(item);
+                    } else {
+                        avlTree.delete(item);
+                        expected.remove(item);
+                    }
+                }
+                List<Integer> batch = new ArrayList<>();
+                for (int i = 0; i < random.nextInt(1_000); i++) {
+                    batch.add(random.nextInt(3_000));
+                }
+                avlTree.insertAll(batch);
+                expected.addAll(batch);
+
+                assertThat(avlTree.size()).isEqualTo(expected.size());
+                assertIsValidAvlTree(avlTree);
+            }
+
+            List<Integer> sortedItems = new ArrayList<>(expected);
+            for (int index = 0; index < sortedItems.size(); index++) {
+                assertThat(avlTree.select(index)).isEqualTo(sortedItems.get(index));
+                assertThat(avlTree.rank(sortedItems.get(index))).isEqualTo(index);
+            }
+        }
+    }
+
+
+    @DisplayName("When joining and splitting trees")
+    @Nested
+    class joinAndSplit {
+
+        @Test
+        @DisplayName("trees of very different heights, then the joined tree is balanced")
+        void joinTreesOfDifferentHeights() {
+            AvlTree<Integer> leftTree = new AvlTree<>(comparator);
+            leftTree.bulkLoad(IntStream.range(0, 1_000).boxed());
+            AvlTree<Integer> rightTree = new AvlTree<>(comparator);
+            insertNodes(rightTree, 2_000, 2_001);
+
+            AvlTree<Integer> joinedTree = AvlTree.join(leftTree, 1_500, rightTree);
+
+            assertIsValidAvlTree(joinedTree);
+            assertThat(joinedTree.size()).isEqualTo(1_003);
+            assertThat(joinedTree.select(1_000)).isEqualTo(1_500);
+            assertThat(leftTree.avlIsEmpty()).isTrue();
+            assertThat(rightTree.avlIsEmpty()).isTrue();
+        }
+
+        @Test
+        @DisplayName("with a pivot out of order, then throws exception")
+        void join_WhenPivotIsOutOfOrder_ThrowsException() {
+            AvlTree<Integer> leftTree = new AvlTree<>(comparator);
+            insertNodes(leftTree, 1, 5);
+
+            assertThrows(IllegalArgumentException.class,
+                    () -> AvlTree.join(leftTree, 3, new AvlTree<>(comparator)));
+        }
+
+        @Test
+        @DisplayName("at every item and between items, then both halves are valid")
+        void splitAtEveryPosition() {
+            for (int item = -1; item <= 60; item++) {
+                AvlTree<Integer> tree = new AvlTree<>(comparator);
+                tree.bulkLoad(IntStream.range(0, 30).map(i -> 2 * i).boxed());
+
+                AvlTree.Split<Integer> split = tree.split(item);
+
+                assertThat(tree.avlIsEmpty()).isTrue();
+                assertIsValidAvlTree(split.getLeft());
+                assertIsValidAvlTree(split.getRight());
+                int expectedLeftSize = Math.max(0, Math.min(30, (item + 1) / 2));
+                assertThat(split.getLeft().size()).isEqualTo(expectedLeftSize);
+                assertThat(split.getItem()).isEqualTo(
+                        (item >= 0 && item < 60 && item % 2 == 0) ? item : null);
+                assertThat(split.getRight().size())
+                        .isEqualTo(30 - expectedLeftSize - (split.getItem() == null ? 0 : 1));
+            }
+        }
+    }
+
+
+    @DisplayName("When applying set operations")
+    @Nested
+    class setOperations {
+
+        private TreeSet<Integer> firstItems;
+        private TreeSet<Integer> secondItems;
+        private AvlTree<Integer> secondTree;
+
+        @BeforeEach
+        void setUp() {
+            Random random = new Random(3);
+            firstItems = new TreeSet<>();
+            secondItems = new TreeSet<>();
+            for (int i = 0; i < 60_000; i++) {
+                firstItems.add(random.nextInt(200_000));
+            }
+            for (int i = 0; i < 20_000; i++) {
+                secondItems.add(random.nextInt(200_000));
+            }
+            avlTree.insertAll(firstItems);
+            secondTree = new AvlTree<>(comparator);
+            secondTree.insertAll(secondItems);
+        }
+
+        @Test
+        @DisplayName("union, then the tree holds the items of both")
+        void union() {
+            avlTree.union(secondTree);
+            firstItems.addAll(secondItems);
+
+            assertIsValidAvlTree(avlTree);
+            assertThat(avlTree).containsExactlyElementsOf(firstItems);
+            assertThat(secondTree.avlIsEmpty()).isTrue();
+        }
+
+        @Test
+        @DisplayName("intersection, then the tree holds the common items")
+        void intersection() {
+            avlTree.intersection(secondTree);
+            firstItems.retainAll(secondItems);
+
+            assertIsValidAvlTree(avlTree);
+            assertThat(avlTree).containsExactlyElementsOf(firstItems);
+        }
+
+        @Test
+        @DisplayName("difference, then the tree holds the items missing from the other")
+        void difference() {
+            avlTree.difference(secondTree);
+            firstItems.removeAll(secondItems);
+
+            assertIsValidAvlTree(avlTree);
+            assertThat(avlTree).containsExactlyElementsOf(firstItems);
+        }
+
+        @Test
+        @DisplayName("with the tree itself, then union keeps it and difference empties it")
+        void operationsWithItself() {
+            avlTree.union(avlTree);
+            assertThat(avlTree.size()).isEqualTo(firstItems.size());
+
+            avlTree.difference(avlTree);
+            assertThat(avlTree.avlIsEmpty()).isTrue();
+        }
+    }
+
+    @DisplayName("When streaming the items")
+    @Nested
+    class streams {
+
+        @Test
+        @DisplayName("sequentially, then the items come in ascending order")
+        void streamReturnsItemsInOrder() {
+            insertNodes(avlTree, 30, 10, 50, 20, 40);
+
+            assertThat(avlTree.stream().map(item -> item / 10)).containsExactly(1, 2, 3, 4, 5);
+            assertThat(avlTree.stream().skip(3)).containsExactly(40, 50);
+        }
+
+        @Test
+        @DisplayName("in parallel, then aggregations see every item once")
+        void parallelStreamSeesEveryItemOnce() {
+            avlTree.bulkLoad(IntStream.range(0, 100_000).boxed());
+
+            assertThat(avlTree.parallelStream().mapToLong(Integer::longValue).sum())
+                    .isEqualTo(99_999L * 100_000 / 2);
+            assertThat(avlTree.parallelStream().filter(item -> item % 3 == 0).count())
+                    .isEqualTo(33_334);
+            assertThat(avlTree.parallelStream().map(item -> item * 2).collect(Collectors.toList()))
+                    .isSorted().hasSize(100_000);
+        }
+
+        @Test
+        @DisplayName("then the spliterator splits into halves of exact size")
+        void spliteratorSplitsIntoEvenHalves() {
+            avlTree.bulkLoad(IntStream.range(0, 101).boxed());
+            Spliterator<Integer> spliterator = avlTree.spliterator();
+
+            Spliterator<Integer> prefix = spliterator.trySplit();
+
+            assertThat(spliterator.hasCharacteristics(Spliterator.SORTED | Spliterator.DISTINCT
+                    | Spliterator.NONNULL | Spliterator.SUBSIZED)).isTrue();
+            assertThat(prefix.estimateSize()).isEqualTo(50);
+            assertThat(spliterator.estimateSize()).isEqualTo(51);
+            assertThat(prefix.tryAdvance(item -> assertThat(item).isZero())).isTrue();
+            assertThat(spliterator.tryAdvance(item -> assertThat(item).isEqualTo(50))).isTrue();
+            assertThat(prefix.trySplit().estimateSize()).isEqualTo(24);
+        }
+
+        @Test
+        @DisplayName("and the tree is modified, then the spliterator fails fast")
+        void spliteratorFailsFastWhenTreeIsModified() {
+            insertNodes(avlTree, 1, 2, 3);
+            Spliterator<Integer> spliterator = avlTree.spliterator();
+
+            avlTree.insert(4);
+
+            assertThrows(ConcurrentModificationException.class,
+                    () -> spliterator.forEachRemaining(item -> { }));
+        }
+    }
+
+    @Nested
+    @DisplayName("When the tree is a multiset")
+    class multiset {
+
+        @BeforeEach
+        public void setUp() {
+            avlTree.enableMultiset();
+        }
+
+        @Test
+        @DisplayName("and an item is inserted again, then its count grows and no node is added")
+        void repeatedInsertionsAreCounted() {
+            insertNodes(avlTree, 5, 3, 5, 8, 5, 3);
+            avlTree.cursor().insert(8);
+
+            assertThat(avlTree.count(5)).isEqualTo(3);
+            assertThat(avlTree.count(3)).isEqualTo(2);
+            assertThat(avlTree.count(8)).isEqualTo(2);
+            assertThat(avlTree.count(4)).isZero();
+            assertThat(avlTree.size()).isEqualTo(3);
+            assertThat(avlTree.totalCount()).isEqualTo(7);
+            assertThat(avlTree).containsExactly(3, 5, 8);
+        }
+
+        @Test
+        @DisplayName("and an item is deleted, then its node is removed only when its count reaches zero")
+        void deletionsDecrementTheCount() {
+            insertNodes(avlTree, 4, 2, 6, 1, 3, 5, 7, 4, 4);
+
+            avlTree.delete(4);
+            avlTree.delete(4);
+            assertThat(avlTree.getTop().getItem()).isEqualTo(4);
+            avlTree.delete(4);
+            avlTree.delete(4);
+
+            assertThat(avlTree.count(4)).isZero();
+            assertThat(avlTree.totalCount()).isEqualTo(6);
+            assertThat(avlTree).containsExactly(1, 2, 3, 5, 6, 7);
+            assertIsValidAvlTree(avlTree);
+        }
+
+        @Test
+        @DisplayName("and items are loaded or inserted in batches, then repeated items are counted")
+        void batchesCountRepeatedItems() {
+            avlTree.bulkLoad(new Integer[]{1, 1, 2, 3, 3, 3});
+            avlTree.insertAll(Arrays.asList(3, 4, 4, 1, 5, 6, 7, 8, 9, 10));
+
+            assertThat(avlTree.count(1)).isEqualTo(3);
+            assertThat(avlTree.count(3)).isEqualTo(4);
+            assertThat(avlTree.count(4)).isEqualTo(2);
+            assertThat(avlTree.size()).isEqualTo(10);
+            assertThat(avlTree.totalCount()).isEqualTo(16);
+        }
+
+        @Test
+        @DisplayName("and a snapshot is written, then the counts are restored")
+        void snapshotRestoresCounts() throws IOException {
+            insertNodes(avlTree, 2, 1, 2, 2);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            avlTree.writeSnapshot(Channels.newChannel(output), ItemCodec.integers());
+
+            AvlTree<Integer> loadedTree = AvlTree.<Integer>naturalOrder().enableMultiset();
+            loadedTree.loadSnapshot(Channels.newChannel(new ByteArrayInputStream(output.toByteArray())),
+                    ItemCodec.integers());
+
+            assertThat(loadedTree.count(2)).isEqualTo(3);
+            assertThat(loadedTree.totalCount()).isEqualTo(4);
+        }
+
+        @Test
+        @DisplayName("and items are repeated at random, then the counts match a map of occurrences")
+        void countsMatchAMap() {
+            Random random = new Random(1);
+            Map<Integer, Integer> expected = new HashMap<>();
+            for (int i = 0; i < 50_000; i++) {
+                int item = random.nextInt(50);
+                if (random.nextInt(3) > 0) {
+                    avlTree.insert(item);
+                    expected.merge(item, 1, Integer::sum);
+                } else {
+                    avlTree.delete(item);
+                    expected.computeIfPresent(item, (key, count) -> (count == 1) ? null : count - 1);
+                }
+            }
+
+            for (int item = 0; item < 50; item++) {
+                assertThat(avlTree.count(item)).isEqualTo(expected.getOrDefault(item, 0));
+            }
+            assertThat(avlTree.size()).isEqualTo(expected.size());
+            assertThat(avlTree.totalCount())
+                    .isEqualTo(expected.values().stream().mapToLong(count -> count).sum());
+            assertIsValidAvlTree(avlTree);
+        }
+
+        @Test
+        @DisplayName("then only its nodes keep a count, and it does not take nodes without one")
+        void onlyMultisetNodesAreCounted() {
+            AvlTree<Integer> setTree = new AvlTree<>(comparator);
+            setTree.insert(1);
+            avlTree.insert(1);
+
+            assertThat(setTree.getTop()).isExactlyInstanceOf(AvlNode.class);
+            assertThat(avlTree.getTop()).isInstanceOf(CountedAvlNode.class);
+            assertThrows(UnsupportedOperationException.class, () -> setTree.getTop().setCount(2));
+            assertThrows(IllegalArgumentException.class, () -> avlTree.insertAvlNode(new AvlNode<>(2)));
+        }
+
+        @Test
+        @DisplayName("then it cannot be enabled on a tree with items, and set operations throw exception")
+        void unsupportedOperations() {
+            AvlTree<Integer> setTree = new AvlTree<>(comparator);
+            setTree.insert(1);
+
+            assertThrows(IllegalStateException.class, setTree::enableMultiset);
+            assertThrows(UnsupportedOperationException.class, () -> avlTree.union(setTree));
+            assertThrows(UnsupportedOperationException.class, () -> avlTree.split(1));
+        }
+    }
+
+    @Nested
+    @DisplayName("When exporting the items as text")
+    class export {
+
+        @BeforeEach
+        public void setUp() {
+            insertNodes(avlTree, 4, 2, 6, 1, 3, 5, 7);
+        }
+
+        @Test
+        @DisplayName("in each order, then the items are written in that order")
+        void itemsAreWrittenInOrder() throws IOException {
+            assertThat(export(TraversalOrder.IN_ORDER, 10)).isEqualTo(" | 1 | 2 | 3 | 4 | 5 | 6 | 7");
+            assertThat(export(TraversalOrder.PRE_ORDER, 10)).isEqualTo(" | 4 | 2 | 1 | 3 | 6 | 5 | 7");
+            assertThat(export(TraversalOrder.LEVEL_ORDER, 10)).isEqualTo(" | 4 | 2 | 6 | 1 | 3 | 5 | 7");
+        }
+
+        @Test
+        @DisplayName("with a limit, then the remaining items are counted")
+        void exportIsLimited() throws IOException {
+            assertThat(export(TraversalOrder.LEVEL_ORDER, 3)).isEqualTo(" | 4 | 2 | 6 | ... (4 more)");
+            assertThat(export(TraversalOrder.IN_ORDER, 0)).isEqualTo(" | ... (7 more)");
+            assertThrows(IllegalArgumentException.class, () -> export(TraversalOrder.IN_ORDER, -1));
+        }
+
+        @Test
+        @DisplayName("without a traversal order, then it throws exception")
+        void export_WhenOrderIsNull_ThrowsException() {
+            assertThrows(NullPointerException.class, () -> export(null, 10));
+        }
+
+        @Test
+        @DisplayName("to a writer, then it receives the same text as toString")
+        void exportToWriter() throws IOException {
+            StringWriter writer = new StringWriter();
+
+            avlTree.export(writer, TraversalOrder.PRE_ORDER, AvlTree.TO_STRING_LIMIT);
+
+            assertThat(writer.toString()).isEqualTo(avlTree.toString());
+        }
+
+        @Test
+        @DisplayName("of a large tree with toString, then only the first items are written")
+        void toStringIsLimited() {
+            AvlTree<Integer> largeTree = AvlTree.naturalOrder();
+            largeTree.bulkLoad(IntStream.range(0, 1_000_000).boxed());
+
+            String text = largeTree.toString();
+
+            assertThat(text).startsWith(" | " + largeTree.getTop().getItem() + " | "
+                    + largeTree.getTop().getLeft().getItem() + " | ");
+            assertThat(text).endsWith(" | ... (" + (1_000_000 - AvlTree.TO_STRING_LIMIT) + " more)");
+            assertThat(text.split(" \\| ")).hasSize(AvlTree.TO_STRING_LIMIT + 2);
+        }
+
+        private String export(TraversalOrder order, int maximumItems) throws IOException {
+            StringBuilder output = new StringBuilder();
+            avlTree.export(output, order, maximumItems);
+            return output.toString();
+        }
+    }
+
+    @Nested
+    @DisplayName("When searching and inserting through a cursor")
+    class cursors {
+
+        @Test
+        @DisplayName("with increasing items, then each insertion compares only with the previous item")
+        void appendingComparesOnce() {
+            AvlTreeMetrics metrics = avlTree.enableMetrics();
+            AvlTree<Integer>.Cursor cursor = avlTree.cursor();
+
+            for (int item = 0; item < 100_000; item++) {
+                cursor.insert(item);
+            }
+
+            assertThat(metrics.getComparisons()).isEqualTo(100_000 - 1);
+            assertThat(cursor.getNode().getItem()).isEqualTo(99_999);
+            assertThat(avlTree.size()).isEqualTo(100_000);
+            assertIsValidAvlTree(avlTree);
+        }
+
+        @Test
+        @DisplayName("with neighbouring items, then a search costs a few comparisons instead of a descent from the top")
+        void neighbouringSearchesAreCheap() {
+            avlTree.bulkLoad(IntStream.range(0, 1 << 16).map(item -> 2 * item).boxed());
+            AvlTreeMetrics metrics = avlTree.enableMetrics();
+            AvlTree<Integer>.Cursor cursor = avlTree.cursor();
+
+            for (int item = 1000; item < 3000; item++) {
+                assertThat(cursor.contains(item)).isEqualTo(item % 2 == 0);
+            }
+            long cursorComparisons = metrics.getComparisons();
+            metrics.reset();
+            for (int item = 1000; item < 3000; item++) {
+                avlTree.search(item);
+            }
+
+            assertThat(cursorComparisons).isLessThan(4 * 2000);
+            assertThat(metrics.getComparisons()).isGreaterThan(12 * 2000);
+        }
+
+        @Test
+        @DisplayName("and the item is on the other side of the top, then it is found")
+        void itemsFarFromTheCursorAreFound() {
+            insertNodes(avlTree, 4, 2, 6, 1, 3, 5, 7);
+            AvlTree<Integer>.Cursor cursor = avlTree.cursor();
+
+            assertThat(cursor.search(3).getItem()).isEqualTo(3);
+            assertThat(cursor.search(5).getItem()).isEqualTo(5);
+            assertThat(cursor.search(4).getItem()).isEqualTo(4);
+            assertThat(cursor.search(1).getItem()).isEqualTo(1);
+            assertThat(cursor.search(8)).isNull();
+            assertThat(cursor.getNode().getItem()).isEqualTo(7);
+            assertThat(cursor.search(0)).isNull();
+            assertThat(cursor.getNode().getItem()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("and an item is deleted, then the cursor starts again at the top")
+        void deletionInvalidatesTheCursor() {
+            insertNodes(avlTree, 1, 2, 3);
+            AvlTree<Integer>.Cursor cursor = avlTree.cursor();
+            cursor.search(3);
+
+            avlTree.delete(3);
+            avlTree.delete(2);
+
+            assertThat(cursor.getNode()).isNull();
+            assertThat(cursor.search(3)).isNull();
+            cursor.insert(0);
+            assertThat(avlTree).containsExactly(0, 1);
+        }
+
+        @Test
+        @DisplayName("mixed with other operations, then the tree matches a TreeSet")
+        void cursorMatchesTreeSet() {
+            Random random = new Random(1);
+            TreeSet<Integer> expected = new TreeSet<>();
+            AvlTree<Integer>.Cursor cursor = avlTree.cursor();
+            int position = 0;
+            for (int i = 0; i < 50_000; i++) {
+                position = Math.max(0, position + random.nextInt(21) - 8);
+                switch (random.nextInt(5)) {
+                    case 0:
+                        avlTree.insert(position + 3);
+                        expected.add(position + 3);
+                        break;
+                    case 1:
+                        avlTree.delete(position - 5);
+                        expected.remove(position - 5);
+                        break;
+                    case 2:
+                        assertThat(cursor.contains(position)).isEqualTo(expected.contains(position));
+                        break;
+                    default:
+                        cursor.insert(position);
+                        expected.add(position);
+                        break;
+                }
+            }
+
+            assertThat(avlTree).containsExactlyElementsOf(expected);
+            assertIsValidAvlTree(avlTree);
+        }
+    }
+
+    @Nested
+    @DisplayName("When the tree is ordered by a key or by the natural ordering")
+    class typedComparators {
+
+        @Test
+        @DisplayName("by an int key, then items are found, ordered and rebalanced by that key")
+        void intKeyTree() {
+            AvlTree<String> stringTree = AvlTree.comparingInt(String::length);
+            insertNodes(stringTree, "ccc", "a", "bb", "dddd", "eeeee", "xx");
+
+            assertThat(stringTree.search("yy").getItem()).isEqualTo("bb");
+            assertThat(stringTree.contains("zzzzzz")).isFalse();
+            assertThat(stringTree).containsExactly("a", "bb", "ccc", "dddd", "eeeee");
+            assertThat(stringTree.ceiling("")).isEqualTo("a");
+            assertIsValidAvlTree(stringTree);
+
+            stringTree.delete("qqq");
+            assertThat(stringTree).containsExactly("a", "bb", "dddd", "eeeee");
+        }
+
+        @Test
+        @DisplayName("by a long key, then items are found by that key")
+        void longKeyTree() {
+            AvlTree<Long> longTree = AvlTree.comparingLong(item -> -item);
+            for (long item = 0; item < 100; item++) {
+                longTree.insert(item * Integer.MAX_VALUE);
+            }
+
+            assertThat(longTree.contains(42L * Integer.MAX_VALUE)).isTrue();
+            assertThat(longTree.contains(42L)).isFalse();
+            assertThat(longTree.getTop().getItem()).isEqualTo(63L * Integer.MAX_VALUE);
+            assertThat(longTree.select(0)).isEqualTo(99L * Integer.MAX_VALUE);
+            assertIsValidAvlTree(longTree);
+        }
+
+        @Test
+        @DisplayName("by the natural ordering, then it behaves as with an equivalent comparator")
+        void naturalOrderTree() {
+            AvlTree<Integer> naturalTree = AvlTree.naturalOrder();
+            Random random = new Random(1);
+            for (int i = 0; i < 2000; i++) {
+                int item = random.nextInt(500);
+                if (random.nextBoolean()) {
+                    avlTree.insert(item);
+                    naturalTree.insert(item);
+                } else {
+                    avlTree.delete(item);
+                    naturalTree.delete(item);
+                }
+                assertThat(naturalTree.contains(i % 500)).isEqualTo(avlTree.contains(i % 500));
+            }
+
+            assertThat(naturalTree).containsExactlyElementsOf(avlTree);
+            assertIsValidAvlTree(naturalTree);
+        }
+
+        @Test
+        @DisplayName("and the tree is split, then both halves keep the key ordering")
+        void splitKeepsKeyOrdering() {
+            AvlTree<String> stringTree = AvlTree.comparingInt(String::length);
+            insertNodes(stringTree, "a", "bb", "ccc", "dddd");
+
+            AvlTree.Split<String> split = stringTree.split("xx");
+
+            assertThat(split.getItem()).isEqualTo("bb");
+            assertThat(split.getRight().contains("zzz")).isTrue();
+            assertThat(split.getLeft().search("z").getItem()).isEqualTo("a");
+        }
+
+        @Test
+        @DisplayName("and metrics are enabled, then searches still count their comparisons")
+        void metricsCountKeyComparisons() {
+            AvlTree<Integer> intTree = AvlTree.comparingInt(item -> item);
+            insertNodes(intTree, 2, 1, 3);
+            AvlTreeMetrics metrics = intTree.enableMetrics();
+
+            intTree.search(3);
+
+            assertThat(metrics.getComparisons()).isEqualTo(2);
+        }
+    }
+
     private <T> void insertNodes(AvlTree<T> avlTree, T... objects) {
         for (T object : objects) {
             avlTree.insert(object);
@@ -578,4 +1619,32 @@ class AvlTreeTest {
     private <T> AvlNode<T> getNode(T item) {
         return new AvlNode<>(item);
     }
+
+    private <T> void assertIsValidAvlTree(AvlTree<T> avlTree) {
+        if (avlTree.getTop() != null) {
+            assertThat(avlTree.getTop().hasParent()).isFalse();
+            checkSubtree(avlTree, avlTree.getTop());
+        }
+    }
+
+    private <T> int checkSubtree(AvlTree<T> avlTree, AvlNode<T> node) {
+        int leftHeight = -1;
+        int rightHeight = -1;
+        if (node.hasLeft()) {
+            assertThat(node.getLeft().getParent()).isSameAs(node);
+            assertThat(avlTree.compareNodes(node.getLeft(), node)).isNegative();
+            leftHeight = checkSubtree(avlTree, node.getLeft());
+        }
+        if (node.hasRight()) {
+            assertThat(node.getRight().getParent()).isSameAs(node);
+            assertThat(avlTree.compareNodes(node.getRight(), node)).isPositive();
+            rightHeight = checkSubtree(avlTree, node.getRight());
+        }
+        assertThat(node.getHeight()).isEqualTo(1 + Math.max(leftHeight, rightHeight));
+        assertThat(Math.abs(rightHeight - leftHeight)).isLessThanOrEqualTo(1);
+        assertThat(node.getSize()).isEqualTo(1
+                + (node.hasLeft() ? node.getLeft().getSize() : 0)
+                + (node.hasRight() ? node.getRight().getSize() : 0));
+        return node.getHeight();
+    }
 }
@@ -0,0 +1,214 @@
+package avl;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Given a compact AVL tree")
+class CompactAvlTreeTest {
+
+    private CompactAvlTree<Integer> avlTree;
+
+    @BeforeEach
+    public void setUp() {
+        avlTree = new CompactAvlTree<>(Comparator.comparingInt((Integer o) -> o));
+    }
+
+    @Test
+    @DisplayName("When created, the tree is empty")
+    void avlIsEmptyWhenCreated() {
+        assertThat(avlTree.avlIsEmpty()).isTrue();
+        assertThat(avlTree.size()).isZero();
+        assertThat(avlTree.search(1)).isNull();
+        assertThat(avlTree.findMinimum()).isNull();
+    }
+
+    @Test
+    @DisplayName("When inserting a null item, throws exception")
+    void insert_WhenItemIsNull_ThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> avlTree.insert(null));
+    }
+
+    @Test
+    @DisplayName("When inserting (7, 4, 3, 2, 1), the tree is rebalanced")
+    void insertedItemsAreRebalanced() {
+        insertItems(7, 4, 3, 2, 1, 3);
+
+        assertThat(avlTree.getTop().getItem()).isEqualTo(4);
+        assertThat(avlTree.getTop().getLeft().getItem()).isEqualTo(2);
+        assertThat(avlTree.getTop().getRight().getItem()).isEqualTo(7);
+        assertThat(avlTree.getTop().getHeight()).isEqualTo(2);
+        assertThat(avlTree).containsExactly(1, 2, 3, 4, 7);
+        assertIsValidAvlTree();
+    }
+
+    @Test
+    @DisplayName("When deleting an item with two children, its successor takes its place")
+    void deletedItemWithTwoChildrenIsReplacedBySuccessor() {
+        insertItems(4, 2, 6, 1, 3, 5, 7);
+
+        avlTree.delete(4);
+        avlTree.delete(8);
+
+        assertThat(avlTree.getTop().getItem()).isEqualTo(5);
+        assertThat(avlTree).containsExactly(1, 2, 3, 5, 6, 7);
+        assertIsValidAvlTree();
+    }
+
+    @Test
+    @DisplayName("When looking up by position, rank and select are inverse")
+    void rankAndSelectAreInverse() {
+        insertItems(50, 10, 40, 20, 30);
+
+        assertThat(avlTree.select(2)).isEqualTo(30);
+        assertThat(avlTree.rank(30)).isEqualTo(2);
+        assertThat(avlTree.rank(35)).isEqualTo(3);
+        assertThat(avlTree.findMaximum().getItem()).isEqualTo(50);
+        assertThrows(IndexOutOfBoundsException.class, () -> avlTree.select(5));
+    }
+
+    @Test
+    @DisplayName("When the tree is modified during an iteration, the iterator throws exception")
+    void iterator_WhenTreeIsModified_ThrowsException() {
+        insertItems(1, 2, 3);
+        Iterator<Integer> iterator = avlTree.iterator();
+        iterator.next();
+
+        avlTree.delete(3);
+
+        assertThrows(ConcurrentModificationException.class, iterator::next);
+    }
+
+    @Test
+    @DisplayName("The tree matches a TreeSet after random insertions and deletions")
+    void treeMatchesTreeSetAfterRandomWorkload() {
+        Random random = new Random(1);
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 50_000; i++) {
+            int item = random.nextInt(2_000);
+            if (random.nextBoolean()) {
+                avlTree.insert(item);
+                expected.add(item);
+            } else {
+                avlTree.delete(item);
+                expected.remove(item);
+            }
+        }
+
+        assertThat(avlTree).containsExactlyElementsOf(expected);
+        assertThat(avlTree.size()).isEqualTo(expected.size());
+        assertIsValidAvlTree();
+    }
+
+    @Nested
+    @DisplayName("When measuring the memory taken by a node")
+    class nodeFootprint {
+        private static final int NUMBER_OF_NODES = 100_000;
+
+        private final Object[] nodes = new Object[NUMBER_OF_NODES];
+
+        @Test
+        @DisplayName("then a compact node takes the header, three references, an int and a byte")
+        void compactNodeFootprint() {
+            assertThat(measureFootprint(CompactAvlNode::new)).isEqualTo(expectedFootprint(3));
+        }
+
+        /**
+         * AvlNode is not measured by allocation, because Mockito instruments its constructor once
+         * another test mocks it; its fields are checked instead
+         */
+        @Test
+        @DisplayName("then an AvlNode has one reference more than a compact node")
+        void avlNodeFields() {
+            assertThat(instanceFieldTypes(AvlNode.class)).containsExactlyInAnyOrder(
+                    AvlNode.class, AvlNode.class, AvlNode.class, Object.class, int.class, byte.class);
+            assertThat(instanceFieldTypes(CompactAvlNode.class)).containsExactlyInAnyOrder(
+                    CompactAvlNode.class, CompactAvlNode.class, Object.class, int.class, byte.class);
+        }
+
+        private List<Class<?>> instanceFieldTypes(Class<?> nodeClass) {
+            return Arrays.stream(nodeClass.getDeclaredFields())
+                    .filter(field -> !Modifier.isStatic(field.getModifiers()))
+                    .map(Field::getType)
+                    .collect(Collectors.toList());
+        }
+
+        private long measureFootprint(Function<Integer, Object> nodeFactory) {
+            com.sun.management.ThreadMXBean threadBean =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long threadId = Thread.currentThread().getId();
+            Integer item = 1;
+            createNodes(nodeFactory, item);
+
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+            createNodes(nodeFactory, item);
+            long allocatedAfter = threadBean.getThreadAllocatedBytes(threadId);
+
+            return (allocatedAfter - allocatedBefore) / NUMBER_OF_NODES;
+        }
+
+        private void createNodes(Function<Integer, Object> nodeFactory, Integer item) {
+            for (int i = 0; i < NUMBER_OF_NODES; i++) {
+                nodes[i] = nodeFactory.apply(item);
+            }
+        }
+
+        /**
+         * Object header, references, the int size and the byte height, aligned to 8 bytes
+         */
+        private long expectedFootprint(int numberOfReferences) {
+            HotSpotDiagnosticMXBean diagnosticBean =
+                    ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            boolean compressedOops =
+                    Boolean.parseBoolean(diagnosticBean.getVMOption("UseCompressedOops").getValue());
+            boolean compressedClassPointers = Boolean.parseBoolean(
+                    diagnosticBean.getVMOption("UseCompressedClassPointers").getValue());
+
+            long header = compressedClassPointers ? 12 : 16;
+            long bytes = header + numberOfReferences * (compressedOops ? 4 : 8) + Integer.BYTES + 1;
+            return (bytes + 7) / 8 * 8;
+        }
+    }
+
+    private void insertItems(int... items) {
+        for (int item : items) {
+            avlTree.insert(item);
+        }
+    }
+
+    private void assertIsValidAvlTree() {
+        checkSubtree(avlTree.getTop(), Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    private int checkSubtree(CompactAvlNode<Integer> node, int lowerBound, int upperBound) {
+        if (node == null) {
+            return -1;
+        }
+        assertThat(node.getItem()).isBetween(lowerBound, upperBound);
+        int leftHeight = checkSubtree(node.getLeft(), lowerBound, node.getItem() - 1);
+        int rightHeight = checkSubtree(node.getRight(), node.getItem() + 1, upperBound);
+        assertThat(node.getHeight()).isEqualTo(1 + Math.max(leftHeight, rightHeight));
+        assertThat(Math.abs(rightHeight - leftHeight)).isLessThanOrEqualTo(1);
+        assertThat(node.getSize()).isEqualTo(1 + CompactAvlNode.size(node.getLeft())
+                + CompactAvlNode.size(node.getRight()));
+        return node.getHeight();
+    }
+}
@@ -0,0 +1,101 @@
+package avl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Given a concurrent AVL tree")
+class ConcurrentAvlTreeTest {
+
+    private ConcurrentAvlTree<Integer> avlTree;
+
+    @BeforeEach
+    public void setUp() {
+        avlTree = new ConcurrentAvlTree<>(Comparator.comparingInt((Integer o) -> o));
+    }
+
+    @Test
+    @DisplayName("When items are inserted and deleted, lookups reflect the changes")
+    void lookupsReflectChanges() {
+        avlTree.insertAll(Arrays.asList(30, 10, 50, 20, 40));
+        avlTree.insert(60);
+        avlTree.delete(10);
+
+        assertThat(avlTree.size()).isEqualTo(5);
+        assertThat(avlTree.contains(10)).isFalse();
+        assertThat(avlTree.get(60)).isEqualTo(60);
+        assertThat(avlTree.floor(35)).isEqualTo(30);
+        assertThat(avlTree.lower(30)).isEqualTo(20);
+        assertThat(avlTree.ceiling(35)).isEqualTo(40);
+        assertThat(avlTree.higher(60)).isNull();
+        assertThat(avlTree.lower(20)).isNull();
+    }
+
+    @Test
+    @DisplayName("When created, the tree is empty")
+    void avlIsEmptyWhenCreated() {
+        assertThat(avlTree.avlIsEmpty()).isTrue();
+        assertThat(avlTree.get(1)).isNull();
+        assertThat(avlTree.floor(1)).isNull();
+    }
+
+    @Test
+    @DisplayName("When readers run alongside writers, readers always see a consistent tree")
+    void readersSeeConsistentTreeWhileWritersRun() throws Exception {
+        int numberOfItems = 10_000;
+        for (int item = 0; item < numberOfItems; item += 2) {
+            avlTree.insert(item);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int writer = 0; writer < 2; writer++) {
+            int seed = writer;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 50_000; i++) {
+                    int oddItem = 2 * random.nextInt(numberOfItems / 2) + 1;
+                    if (random.nextBoolean()) {
+                        avlTree.insert(oddItem);
+                    } else {
+                        avlTree.delete(oddItem);
+                    }
+                }
+            }));
+        }
+        for (int reader = 0; reader < 4; reader++) {
+            int seed = 10 + reader;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 200_000; i++) {
+                    int evenItem = 2 * random.nextInt(numberOfItems / 2);
+                    assertThat(avlTree.contains(evenItem)).isTrue();
+                    assertThat(avlTree.floor(evenItem)).isEqualTo(evenItem);
+                    Integer higher = avlTree.higher(evenItem);
+                    assertThat(higher == null || higher > evenItem).isTrue();
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        List<Integer> items = new ArrayList<>();
+        avlTree.forEach(items::add);
+        assertThat(items).isSorted().hasSize(avlTree.size());
+    }
+}
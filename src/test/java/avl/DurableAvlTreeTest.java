@@ -0,0 +1,253 @@
+package avl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Given a durable AVL tree")
+class DurableAvlTreeTest {
+
+    @TempDir
+    Path directory;
+
+    private DurableAvlTree<Integer> durableTree;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        durableTree = DurableAvlTree.open(directory, AvlTree.naturalOrder(), ItemCodec.integers());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        durableTree.close();
+    }
+
+    @Test
+    @DisplayName("When the process stops without closing the tree, then the mutations are recovered")
+    void mutationsAreRecoveredWithoutClosing() throws IOException {
+        for (int item = 0; item < 100; item++) {
+            durableTree.insert(item);
+        }
+        for (int item = 0; item < 100; item += 2) {
+            durableTree.delete(item);
+        }
+        durableTree.insert(1);
+        durableTree.delete(1000);
+
+        AvlTree<Integer> recoveredTree = recover();
+
+        assertThat(recoveredTree.size()).isEqualTo(50);
+        assertThat(recoveredTree).containsExactlyElementsOf(
+                IntStream.range(0, 50).map(item -> 2 * item + 1).boxed()::iterator);
+        assertThat(durableTree.getSyncCount()).isEqualTo(150);
+    }
+
+    @Test
+    @DisplayName("When a checkpoint is taken, then the log is emptied and later mutations are replayed on the snapshot")
+    void checkpointEmptiesTheLog() throws IOException {
+        for (int item = 0; item < 1000; item++) {
+            durableTree.insert(item);
+        }
+
+        durableTree.checkpoint();
+        long logSizeAfterCheckpoint = Files.size(directory.resolve(DurableAvlTree.LOG_FILE_NAME));
+        durableTree.delete(0);
+        durableTree.insert(1000);
+
+        assertThat(logSizeAfterCheckpoint).isEqualTo(WriteAheadLog.HEADER_SIZE);
+        AvlTree<Integer> recoveredTree = recover();
+        assertThat(recoveredTree.size()).isEqualTo(1000);
+        assertThat(recoveredTree.findMinimum().getItem()).isEqualTo(1);
+        assertThat(recoveredTree.findMaximum().getItem()).isEqualTo(1000);
+    }
+
+    @Test
+    @DisplayName("When several threads mutate the tree, then every mutation is durable with at most one sync each")
+    void concurrentMutationsAreDurable() throws Exception {
+        int numberOfThreads = 4;
+        int itemsPerThread = 250;
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < numberOfThreads; thread++) {
+                int firstItem = thread * itemsPerThread;
+                futures.add(executor.submit(() -> {
+                    for (int item = firstItem; item < firstItem + itemsPerThread; item++) {
+                        durableTree.insert(item);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(durableTree.getSyncCount()).isLessThanOrEqualTo(numberOfThreads * itemsPerThread);
+        assertThat(recover()).containsExactlyElementsOf(
+                IntStream.range(0, numberOfThreads * itemsPerThread).boxed()::iterator);
+    }
+
+    @Test
+    @DisplayName("When the tree is a multiset, then every occurrence is logged and recovered")
+    void multisetOccurrencesAreRecovered() throws IOException {
+        Path multisetDirectory = directory.resolve("multiset");
+        Files.createDirectory(multisetDirectory);
+        try (DurableAvlTree<Integer> multiset = DurableAvlTree.open(multisetDirectory,
+                AvlTree.<Integer>naturalOrder().enableMultiset(), ItemCodec.integers())) {
+            multiset.insert(1);
+            multiset.insert(1);
+            multiset.checkpoint();
+            multiset.insert(1);
+            multiset.delete(1);
+            multiset.insert(2);
+        }
+
+        AvlTree<Integer> recoveredTree = AvlTree.<Integer>naturalOrder().enableMultiset();
+        DurableAvlTree.open(multisetDirectory, recoveredTree, ItemCodec.integers()).close();
+
+        assertThat(recoveredTree.count(1)).isEqualTo(2);
+        assertThat(recoveredTree.totalCount()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("When a crash leaves the log of a checkpoint next to its new snapshot, then the log is not replayed")
+    void logIncludedInTheSnapshotIsDiscarded() throws IOException {
+        Path multisetDirectory = directory.resolve("multiset");
+        Files.createDirectory(multisetDirectory);
+        Path logPath = multisetDirectory.resolve(DurableAvlTree.LOG_FILE_NAME);
+        Path oldLog = directory.resolve("old.log");
+        try (DurableAvlTree<Integer> multiset = DurableAvlTree.open(multisetDirectory,
+                AvlTree.<Integer>naturalOrder().enableMultiset(), ItemCodec.integers())) {
+            multiset.insert(1);
+            multiset.insert(1);
+            multiset.insert(2);
+            Files.copy(logPath, oldLog);
+            multiset.checkpoint();
+        }
+        Files.copy(oldLog, logPath, StandardCopyOption.REPLACE_EXISTING);
+
+        AvlTree<Integer> recoveredTree = AvlTree.<Integer>naturalOrder().enableMultiset();
+        try (DurableAvlTree<Integer> recovered = DurableAvlTree.open(multisetDirectory,
+                recoveredTree, ItemCodec.integers())) {
+            recovered.insert(3);
+        }
+        AvlTree<Integer> reopenedTree = AvlTree.<Integer>naturalOrder().enableMultiset();
+        DurableAvlTree.open(multisetDirectory, reopenedTree, ItemCodec.integers()).close();
+
+        assertThat(recoveredTree.count(1)).isEqualTo(2);
+        assertThat(reopenedTree.count(1)).isEqualTo(2);
+        assertThat(reopenedTree.totalCount()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("When the tree given to open is not empty, throws exception")
+    void open_WhenTreeIsNotEmpty_ThrowsException() {
+        AvlTree<Integer> tree = AvlTree.naturalOrder();
+        tree.insert(1);
+
+        assertThrows(IllegalStateException.class,
+                () -> DurableAvlTree.open(directory.resolve("other"), tree, ItemCodec.integers()));
+    }
+
+    @Test
+    @DisplayName("When a record cannot be appended to the log, then the tree is not changed")
+    void insert_WhenItemIsTooLargeForTheLog_LeavesTreeUnchanged() throws IOException {
+        Path otherDirectory = directory.resolve("other");
+        Files.createDirectory(otherDirectory);
+        try (DurableAvlTree<Integer> tree = DurableAvlTree.open(otherDirectory,
+                AvlTree.naturalOrder(), OVERSIZED_MINUS_ONE)) {
+            tree.insert(1);
+
+            assertThrows(IOException.class, () -> tree.insert(-1));
+            assertThat(tree.contains(-1)).isFalse();
+            assertThat(tree.size()).isEqualTo(1);
+
+            tree.insert(2);
+            tree.checkpoint();
+        }
+
+        AvlTree<Integer> reopenedTree = AvlTree.naturalOrder();
+        DurableAvlTree.open(otherDirectory, reopenedTree, OVERSIZED_MINUS_ONE).close();
+        assertThat(reopenedTree).containsExactly(1, 2);
+    }
+
+    @Test
+    @DisplayName("When a write to the log fails, then every later operation throws exception until the tree is reopened")
+    void operations_WhenLogWriteFailed_ThrowException() throws IOException {
+        durableTree.insert(1);
+
+        Thread.currentThread().interrupt(); // closes the channel of the log during the write
+        try {
+            assertThrows(IOException.class, () -> durableTree.insert(2));
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertThrows(IOException.class, () -> durableTree.insert(3));
+        assertThrows(IOException.class, () -> durableTree.delete(1));
+        assertThrows(IOException.class, durableTree::checkpoint);
+        assertThrows(IllegalStateException.class, () -> durableTree.contains(2));
+        assertThat(directory.resolve(DurableAvlTree.SNAPSHOT_FILE_NAME)).doesNotExist();
+        durableTree.close();
+
+        assertThat(recover()).containsExactly(1);
+    }
+
+    private AvlTree<Integer> recover() throws IOException {
+        AvlTree<Integer> recoveredTree = AvlTree.naturalOrder();
+        try (DurableAvlTree<Integer> recovered =
+                DurableAvlTree.open(directory, recoveredTree, ItemCodec.integers())) {
+            assertThat(recovered.size()).isEqualTo(recoveredTree.size());
+        }
+        return recoveredTree;
+    }
+
+    /**
+     * Encodes integers in four bytes, except -1, which takes one byte more than the maximum
+     */
+    private static final ItemCodec<Integer> OVERSIZED_MINUS_ONE = new ItemCodec<Integer>() {
+        @Override
+        public int fixedSize() {
+            return ItemCodec.VARIABLE_SIZE;
+        }
+
+        @Override
+        public int maximumEncodedSize(Integer item) {
+            return (item == -1) ? ItemCodec.MAXIMUM_ENCODED_SIZE + 1 : Integer.BYTES;
+        }
+
+        @Override
+        public void encode(Integer item, ByteBuffer buffer) {
+            if (item == -1) {
+                buffer.position(buffer.position() + ItemCodec.MAXIMUM_ENCODED_SIZE + 1);
+            } else {
+                buffer.putInt(item);
+            }
+        }
+
+        @Override
+        public Integer decode(ByteBuffer buffer, int size) {
+            return buffer.getInt();
+        }
+    };
+}
@@ -0,0 +1,131 @@
+package avl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Given a long AVL tree")
+class LongAvlTreeTest {
+
+    private LongAvlTree avlTree;
+
+    @BeforeEach
+    public void setUp() {
+        avlTree = new LongAvlTree(4);
+    }
+
+    @Test
+    @DisplayName("When created, the tree is empty")
+    void avlIsEmptyWhenCreated() {
+        assertThat(avlTree.avlIsEmpty()).isTrue();
+        assertThat(avlTree.size()).isZero();
+        assertThat(avlTree.search(5)).isEqualTo(LongAvlTree.NIL);
+    }
+
+    @Test
+    @DisplayName("When the initial capacity is not positive, throws exception")
+    void constructor_WhenCapacityIsNotPositive_ThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> new LongAvlTree(0));
+    }
+
+    @Nested
+    @DisplayName("When items are inserted")
+    class insertedItems {
+
+        @Test
+        @DisplayName("(7, 4, 3, 2, 1), then the tree is rebalanced")
+        void treeIsRebalanced() {
+            for (long key : new long[]{7, 4, 3, 2, 1}) {
+                assertThat(avlTree.insert(key)).isTrue();
+            }
+
+            int top = avlTree.getTop();
+            assertThat(avlTree.getKey(top)).isEqualTo(4L);
+            assertThat(avlTree.getKey(avlTree.getLeft(top))).isEqualTo(2L);
+            assertThat(avlTree.getKey(avlTree.getRight(top))).isEqualTo(7L);
+            assertThat(avlTree.getHeight(top)).isEqualTo(2);
+            assertThat(avlTree.size()).isEqualTo(5);
+        }
+
+        @Test
+        @DisplayName("twice, then the second insertion is ignored")
+        void duplicateIsIgnored() {
+            avlTree.insert(3);
+
+            assertThat(avlTree.insert(3)).isFalse();
+            assertThat(avlTree.size()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("then findSuccessor returns the next key or NIL")
+        void findSuccessorReturnsNextKey() {
+            for (long key : new long[]{20, 8, 22, 4, 12, 24, 10, 14}) {
+                avlTree.insert(key);
+            }
+
+            assertThat(avlTree.getKey(avlTree.findSuccessor(avlTree.search(8)))).isEqualTo(10L);
+            assertThat(avlTree.getKey(avlTree.findSuccessor(avlTree.search(14)))).isEqualTo(20L);
+            assertThat(avlTree.findSuccessor(avlTree.search(24))).isEqualTo(LongAvlTree.NIL);
+        }
+
+        @Test
+        @DisplayName("after deletions, then freed slots are reused")
+        void freedSlotsAreReused() {
+            for (long key = 0; key < 100; key++) {
+                avlTree.insert(key);
+            }
+            int capacity = avlTree.capacity();
+            for (long key = 0; key < 100; key += 2) {
+                assertThat(avlTree.delete(key)).isTrue();
+            }
+            for (long key = 100; key < 150; key++) {
+                avlTree.insert(key);
+            }
+
+            assertThat(avlTree.capacity()).isEqualTo(capacity);
+            assertThat(avlTree.size()).isEqualTo(100);
+        }
+    }
+
+    @Test
+    @DisplayName("The tree matches a TreeSet after random insertions and deletions")
+    void treeMatchesTreeSetAfterRandomWorkload() {
+        Random random = new Random(1);
+        TreeSet<Long> expected = new TreeSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            long key = random.nextInt(2_000) - 1_000L + Integer.MAX_VALUE;
+            if (random.nextBoolean()) {
+                assertThat(avlTree.insert(key)).isEqualTo(expected.add(key));
+            } else {
+                assertThat(avlTree.delete(key)).isEqualTo(expected.remove(key));
+            }
+        }
+
+        assertThat(avlTree.size()).isEqualTo(expected.size());
+        checkSubtree(avlTree.getTop());
+        int node = avlTree.search(expected.first());
+        for (long key : expected) {
+            assertThat(avlTree.getKey(node)).isEqualTo(key);
+            node = avlTree.findSuccessor(node);
+        }
+        assertThat(node).isEqualTo(LongAvlTree.NIL);
+    }
+
+    private int checkSubtree(int node) {
+        if (node == LongAvlTree.NIL) {
+            return -1;
+        }
+        int leftHeight = checkSubtree(avlTree.getLeft(node));
+        int rightHeight = checkSubtree(avlTree.getRight(node));
+        assertThat(avlTree.getHeight(node)).isEqualTo(1 + Math.max(leftHeight, rightHeight));
+        assertThat(Math.abs(rightHeight - leftHeight)).isLessThanOrEqualTo(1);
+        return avlTree.getHeight(node);
+    }
+}
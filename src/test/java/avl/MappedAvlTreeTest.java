@@ -0,0 +1,134 @@
+package avl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Given a memory-mapped AVL tree")
+class MappedAvlTreeTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("When the index is reopened, then it holds the same keys and values")
+    void reopenedIndexHoldsTheSameKeys() throws IOException {
+        Path path = directory.resolve("index.avl");
+        int numberOfKeys = OffHeapAvlTree.NODES_PER_CHUNK + 1000;
+        try (MappedAvlTree avlTree = MappedAvlTree.create(path, Integer.BYTES, Long.BYTES)) {
+            for (int item = 0; item < numberOfKeys; item++) {
+                avlTree.insert(key(item), value(10L * item));
+            }
+            for (int item = 0; item < numberOfKeys; item += 2) {
+                avlTree.delete(key(item));
+            }
+            avlTree.force();
+        }
+
+        try (MappedAvlTree avlTree = MappedAvlTree.open(path)) {
+            assertThat(avlTree.getKeyWidth()).isEqualTo(Integer.BYTES);
+            assertThat(avlTree.getValueWidth()).isEqualTo(Long.BYTES);
+            assertThat(avlTree.size()).isEqualTo(numberOfKeys / 2);
+            assertThat(avlTree.contains(key(10))).isFalse();
+
+            byte[] value = new byte[Long.BYTES];
+            avlTree.getValue(avlTree.search(key(11)), value);
+            assertThat(ByteBuffer.wrap(value).getLong()).isEqualTo(110L);
+        }
+    }
+
+    @Test
+    @DisplayName("When the reopened index is modified, then freed slots are reused and changes persist")
+    void reopenedIndexCanBeModified() throws IOException {
+        Path path = directory.resolve("index.avl");
+        try (MappedAvlTree avlTree = MappedAvlTree.create(path, Integer.BYTES, 0)) {
+            for (int item = 0; item < 100; item++) {
+                avlTree.insert(key(item));
+            }
+            avlTree.delete(key(50));
+        }
+        long fileSize = Files.size(path);
+
+        try (MappedAvlTree avlTree = MappedAvlTree.open(path)) {
+            avlTree.insert(key(1000));
+        }
+
+        try (MappedAvlTree avlTree = MappedAvlTree.open(path)) {
+            assertThat(avlTree.size()).isEqualTo(100);
+            assertThat(avlTree.contains(key(1000))).isTrue();
+            assertThat(avlTree.contains(key(50))).isFalse();
+        }
+        assertThat(Files.size(path)).isEqualTo(fileSize);
+    }
+
+    @Test
+    @DisplayName("When the file is not an index, throws exception")
+    void open_WhenFileIsNotAnIndex_ThrowsException() throws IOException {
+        Path path = directory.resolve("other.bin");
+        Files.write(path, new byte[MappedAvlTree.HEADER_SIZE]);
+
+        assertThrows(IOException.class, () -> MappedAvlTree.open(path));
+    }
+
+    @Test
+    @DisplayName("When the file is shorter than its header says, opening throws exception and leaves it as is")
+    void open_WhenFileIsTruncated_ThrowsException() throws IOException {
+        Path path = directory.resolve("index.avl");
+        try (MappedAvlTree avlTree = MappedAvlTree.create(path, Integer.BYTES, 0)) {
+            for (int item = 0; item < 1000; item++) {
+                avlTree.insert(key(item));
+            }
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(MappedAvlTree.HEADER_SIZE + 100);
+        }
+
+        IOException exception = assertThrows(IOException.class, () -> MappedAvlTree.open(path));
+
+        assertThat(exception).hasMessageContaining("Truncated AVL index");
+        assertThat(Files.size(path)).isEqualTo(MappedAvlTree.HEADER_SIZE + 100);
+    }
+
+    @Test
+    @DisplayName("When the header fields contradict each other, opening throws exception")
+    void open_WhenHeaderIsCorrupt_ThrowsException() throws IOException {
+        Path path = directory.resolve("index.avl");
+        try (MappedAvlTree avlTree = MappedAvlTree.create(path, Integer.BYTES, 0)) {
+            avlTree.insert(key(1));
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, 2), 20); // size 2, one slot used
+        }
+
+        IOException exception = assertThrows(IOException.class, () -> MappedAvlTree.open(path));
+
+        assertThat(exception).hasMessageContaining("Corrupt AVL index");
+    }
+
+    @Test
+    @DisplayName("When the index is closed, force throws exception")
+    void force_WhenIndexIsClosed_ThrowsException() throws IOException {
+        MappedAvlTree avlTree = MappedAvlTree.create(directory.resolve("index.avl"), 4, 0);
+        avlTree.close();
+
+        assertThrows(IllegalStateException.class, avlTree::force);
+    }
+
+    private byte[] key(int item) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(item).array();
+    }
+
+    private byte[] value(long item) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(item).array();
+    }
+}
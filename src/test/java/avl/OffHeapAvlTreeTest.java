@@ -0,0 +1,196 @@
+package avl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Given an off-heap AVL tree")
+class OffHeapAvlTreeTest {
+
+    private OffHeapAvlTree avlTree;
+
+    @BeforeEach
+    public void setUp() {
+        avlTree = new OffHeapAvlTree(Integer.BYTES, Long.BYTES);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        avlTree.close();
+    }
+
+    @Test
+    @DisplayName("When created, the tree is empty")
+    void avlIsEmptyWhenCreated() {
+        assertThat(avlTree.avlIsEmpty()).isTrue();
+        assertThat(avlTree.search(key(5))).isEqualTo(OffHeapAvlTree.NIL);
+        assertThat(avlTree.reservedBytes()).isZero();
+    }
+
+    @Test
+    @DisplayName("When the key width is not positive, throws exception")
+    void constructor_WhenKeyWidthIsNotPositive_ThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapAvlTree(0, 0));
+    }
+
+    @Test
+    @DisplayName("When a key has the wrong width, throws exception")
+    void insert_WhenKeyHasWrongWidth_ThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> avlTree.insert(new byte[3]));
+    }
+
+    @Test
+    @DisplayName("When the tree is closed, operations throw exception")
+    void search_WhenTreeIsClosed_ThrowsException() {
+        avlTree.insert(key(1));
+        avlTree.close();
+
+        assertThat(avlTree.isClosed()).isTrue();
+        assertThrows(IllegalStateException.class, () -> avlTree.search(key(1)));
+        assertThrows(IllegalStateException.class, () -> avlTree.insert(key(2)));
+        assertThrows(IllegalStateException.class, avlTree::reservedBytes);
+    }
+
+    @Test
+    @DisplayName("When the tree is closed, its off-heap memory is freed at once")
+    void close_FreesOffHeapMemory() {
+        BufferPoolMXBean directPool = ManagementFactory
+                .getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .findFirst().orElseThrow();
+        avlTree.insert(key(1));
+        long reservedBytes = avlTree.reservedBytes();
+        long usedBeforeClose = directPool.getMemoryUsed();
+
+        avlTree.close();
+        avlTree.close();
+
+        assertThat(directPool.getMemoryUsed()).isLessThanOrEqualTo(usedBeforeClose - reservedBytes);
+    }
+
+    @Nested
+    @DisplayName("When keys are inserted")
+    class insertedKeys {
+
+        @Test
+        @DisplayName("(7, 4, 3, 2, 1), then the tree is rebalanced")
+        void treeIsRebalanced() {
+            for (int item : new int[]{7, 4, 3, 2, 1}) {
+                assertThat(avlTree.insert(key(item))).isTrue();
+            }
+
+            int top = avlTree.getTop();
+            assertThat(keyOf(top)).isEqualTo(4);
+            assertThat(keyOf(avlTree.getLeft(top))).isEqualTo(2);
+            assertThat(keyOf(avlTree.getRight(top))).isEqualTo(7);
+            assertThat(avlTree.getHeight(top)).isEqualTo(2);
+        }
+
+        @Test
+        @DisplayName("with a value, then the value can be read and replaced")
+        void valueIsStoredWithTheKey() {
+            avlTree.insert(key(3), value(30));
+
+            assertThat(avlTree.insert(key(3), value(31))).isFalse();
+            assertThat(valueOf(avlTree.search(key(3)))).isEqualTo(31);
+
+            avlTree.setValue(avlTree.search(key(3)), value(32));
+            assertThat(valueOf(avlTree.search(key(3)))).isEqualTo(32);
+        }
+
+        @Test
+        @DisplayName("then keys compare as unsigned numbers")
+        void keysCompareAsUnsignedNumbers() {
+            avlTree.insert(key(-1));
+            avlTree.insert(key(1));
+
+            int first = avlTree.getLeft(avlTree.getTop()) == OffHeapAvlTree.NIL
+                    ? avlTree.getTop() : avlTree.getLeft(avlTree.getTop());
+            assertThat(keyOf(first)).isEqualTo(1);
+            assertThat(keyOf(avlTree.findSuccessor(first))).isEqualTo(-1);
+        }
+
+        @Test
+        @DisplayName("beyond one chunk, then every key is found")
+        void keysSpanningSeveralChunksAreFound() {
+            int numberOfKeys = OffHeapAvlTree.NODES_PER_CHUNK + 1000;
+            for (int item = 0; item < numberOfKeys; item++) {
+                avlTree.insert(key(item), value(item));
+            }
+
+            assertThat(avlTree.size()).isEqualTo(numberOfKeys);
+            for (int item = 0; item < numberOfKeys; item += 97) {
+                assertThat(valueOf(avlTree.search(key(item)))).isEqualTo(item);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("The tree matches a TreeMap after random insertions and deletions")
+    void treeMatchesTreeMapAfterRandomWorkload() {
+        Random random = new Random(1);
+        TreeMap<Integer, Long> expected = new TreeMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            int item = random.nextInt(2_000);
+            if (random.nextBoolean()) {
+                assertThat(avlTree.insert(key(item), value(i))).isEqualTo(!expected.containsKey(item));
+                expected.put(item, (long) i);
+            } else {
+                assertThat(avlTree.delete(key(item))).isEqualTo(expected.remove(item) != null);
+            }
+        }
+
+        assertThat(avlTree.size()).isEqualTo(expected.size());
+        checkSubtree(avlTree.getTop());
+        int node = avlTree.search(key(expected.firstKey()));
+        for (Map.Entry<Integer, Long> entry : expected.entrySet()) {
+            assertThat(keyOf(node)).isEqualTo(entry.getKey());
+            assertThat(valueOf(node)).isEqualTo(entry.getValue());
+            node = avlTree.findSuccessor(node);
+        }
+        assertThat(node).isEqualTo(OffHeapAvlTree.NIL);
+    }
+
+    private int checkSubtree(int node) {
+        if (node == OffHeapAvlTree.NIL) {
+            return -1;
+        }
+        int leftHeight = checkSubtree(avlTree.getLeft(node));
+        int rightHeight = checkSubtree(avlTree.getRight(node));
+        assertThat(avlTree.getHeight(node)).isEqualTo(1 + Math.max(leftHeight, rightHeight));
+        assertThat(Math.abs(rightHeight - leftHeight)).isLessThanOrEqualTo(1);
+        return avlTree.getHeight(node);
+    }
+
+    private byte[] key(int item) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(item).array();
+    }
+
+    private byte[] value(long item) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(item).array();
+    }
+
+    private int keyOf(int node) {
+        byte[] key = new byte[Integer.BYTES];
+        avlTree.getKey(node, key);
+        return ByteBuffer.wrap(key).getInt();
+    }
+
+    private long valueOf(int node) {
+        byte[] value = new byte[Long.BYTES];
+        avlTree.getValue(node, value);
+        return ByteBuffer.wrap(value).getLong();
+    }
+}
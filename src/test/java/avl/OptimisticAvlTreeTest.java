@@ -0,0 +1,282 @@
+package avl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Given an optimistic concurrent AVL tree")
+class OptimisticAvlTreeTest {
+
+    private OptimisticAvlTree<Integer> avlTree;
+
+    @BeforeEach
+    public void setUp() {
+        avlTree = new OptimisticAvlTree<>(Comparator.comparingInt((Integer o) -> o));
+    }
+
+    @Test
+    @DisplayName("When created, the tree is empty")
+    void avlIsEmptyWhenCreated() {
+        assertThat(avlTree.avlIsEmpty()).isTrue();
+        assertThat(avlTree.contains(1)).isFalse();
+        assertThat(avlTree.delete(1)).isFalse();
+        assertThat(avlTree.checkStructure()).isEqualTo(-1);
+    }
+
+    @Test
+    @DisplayName("When inserting a null item, throws exception")
+    void insert_WhenItemIsNull_ThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> avlTree.insert(null));
+    }
+
+    @Test
+    @DisplayName("When inserting (7, 4, 3, 2, 1), the tree is rebalanced")
+    void insertedItemsAreRebalanced() {
+        for (int item : new int[]{7, 4, 3, 2, 1}) {
+            assertThat(avlTree.insert(item)).isTrue();
+        }
+
+        assertThat(avlTree.insert(3)).isFalse();
+        assertThat(avlTree.size()).isEqualTo(5);
+        assertThat(avlTree.checkStructure()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("When an item with two children is deleted and inserted again, it is found")
+    void routingNodeIsRevived() {
+        for (int item : new int[]{2, 1, 3}) {
+            avlTree.insert(item);
+        }
+
+        assertThat(avlTree.delete(2)).isTrue();
+        assertThat(avlTree.contains(2)).isFalse();
+        assertThat(avlTree.delete(2)).isFalse();
+        assertThat(avlTree.insert(2)).isTrue();
+        assertThat(avlTree.contains(2)).isTrue();
+        assertThat(avlTree.size()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("The tree matches a TreeSet after random insertions and deletions")
+    void treeMatchesTreeSetAfterRandomWorkload() {
+        Random random = new Random(1);
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 50_000; i++) {
+            int item = random.nextInt(2_000);
+            if (random.nextBoolean()) {
+                assertThat(avlTree.insert(item)).isEqualTo(expected.add(item));
+            } else {
+                assertThat(avlTree.delete(item)).isEqualTo(expected.remove(item));
+            }
+        }
+
+        avlTree.checkStructure();
+        assertThat(avlTree.size()).isEqualTo(expected.size());
+        for (int item = 0; item < 2_000; item++) {
+            assertThat(avlTree.contains(item)).isEqualTo(expected.contains(item));
+        }
+    }
+
+    @Test
+    @DisplayName("When threads insert and delete concurrently, every successful operation is accounted for once they stop")
+    void concurrentOperationsAreQuiescentlyConsistent() throws Exception {
+        int numberOfKeys = 512;
+        int numberOfWriters = 8;
+        int stableKey = numberOfKeys; // inserted once and never deleted
+        avlTree.insert(stableKey);
+
+        AtomicIntegerArray balance = new AtomicIntegerArray(numberOfKeys);
+        AtomicBoolean writersDone = new AtomicBoolean(false);
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfWriters + 2);
+
+        List<Future<?>> writers = new ArrayList<>();
+        for (int writer = 0; writer < numberOfWriters; writer++) {
+            int seed = writer;
+            writers.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 200_000; i++) {
+                    int item = random.nextInt(numberOfKeys);
+                    if (random.nextBoolean()) {
+                        if (avlTree.insert(item)) {
+                            balance.incrementAndGet(item);
+                        }
+                    } else if (avlTree.delete(item)) {
+                        balance.decrementAndGet(item);
+                    }
+                }
+            }));
+        }
+        List<Future<?>> readers = new ArrayList<>();
+        for (int reader = 0; reader < 2; reader++) {
+            readers.add(executor.submit(() -> {
+                while (!writersDone.get()) {
+                    assertThat(avlTree.contains(stableKey)).isTrue();
+                    assertThat(avlTree.contains(-1)).isFalse();
+                }
+            }));
+        }
+
+        for (Future<?> writer : writers) {
+            writer.get(120, TimeUnit.SECONDS);
+        }
+        writersDone.set(true);
+        for (Future<?> reader : readers) {
+            reader.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        avlTree.checkStructure();
+        int expectedSize = 1;
+        for (int item = 0; item < numberOfKeys; item++) {
+            assertThat(balance.get(item)).isBetween(0, 1);
+            assertThat(avlTree.contains(item)).isEqualTo(balance.get(item) == 1);
+            expectedSize += balance.get(item);
+        }
+        assertThat(avlTree.size()).isEqualTo(expectedSize);
+    }
+
+    @Test
+    @DisplayName("When threads insert, delete and search concurrently, the history of every key is linearizable")
+    void concurrentOperationsAreLinearizable() throws Exception {
+        int numberOfKeys = 8;
+        int numberOfThreads = 4;
+        CyclicBarrier start = new CyclicBarrier(numberOfThreads);
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+
+        List<Future<List<Operation>>> histories = new ArrayList<>();
+        for (int thread = 0; thread < numberOfThreads; thread++) {
+            int seed = thread;
+            histories.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                List<Operation> history = new ArrayList<>();
+                start.await();
+                for (int i = 0; i < 20_000; i++) {
+                    int item = random.nextInt(numberOfKeys);
+                    int kind = random.nextInt(3);
+                    long invoked = System.nanoTime();
+                    boolean result = (kind == Operation.INSERT) ? avlTree.insert(item)
+                            : (kind == Operation.DELETE) ? avlTree.delete(item)
+                            : avlTree.contains(item);
+                    history.add(new Operation(item, kind, result, invoked, System.nanoTime()));
+                }
+                return history;
+            }));
+        }
+
+        List<List<Operation>> threadHistories = new ArrayList<>();
+        for (Future<List<Operation>> history : histories) {
+            threadHistories.add(history.get(120, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        for (int item = 0; item < numberOfKeys; item++) {
+            List<List<Operation>> keyHistories = new ArrayList<>();
+            for (List<Operation> history : threadHistories) {
+                int key = item;
+                keyHistories.add(history.stream()
+                        .filter(operation -> operation.item == key)
+                        .collect(Collectors.toList()));
+            }
+            assertThat(isLinearizable(keyHistories)).as("history of item %d", item).isTrue();
+        }
+    }
+
+    /**
+     * Searches for an order of the operations on a single item that respects the order of the
+     * operations of every thread and their real-time order, and in which every result is the one
+     * of a sequential set. Linearizability is local, so checking every item on its own is enough.
+     * A state is the number of operations of every thread already placed in the order, plus whether
+     * the item is in the set.
+     */
+    private static boolean isLinearizable(List<List<Operation>> histories) {
+        int numberOfThreads = histories.size();
+        Deque<int[]> pending = new ArrayDeque<>();
+        Set<String> visited = new HashSet<>();
+        pending.push(new int[numberOfThreads + 1]);
+        while (!pending.isEmpty()) {
+            int[] state = pending.pop();
+            if (!visited.add(Arrays.toString(state))) {
+                continue;
+            }
+
+            long firstResponse = Long.MAX_VALUE;
+            boolean finished = true;
+            for (int thread = 0; thread < numberOfThreads; thread++) {
+                if (state[thread] < histories.get(thread).size()) {
+                    finished = false;
+                    firstResponse = Math.min(firstResponse,
+                            histories.get(thread).get(state[thread]).responded);
+                }
+            }
+            if (finished) {
+                return true;
+            }
+
+            boolean present = state[numberOfThreads] == 1;
+            for (int thread = 0; thread < numberOfThreads; thread++) {
+                if (state[thread] == histories.get(thread).size()) {
+                    continue;
+                }
+                Operation operation = histories.get(thread).get(state[thread]);
+                if (operation.invoked > firstResponse || !operation.isAllowedWhen(present)) {
+                    continue;
+                }
+                int[] next = state.clone();
+                next[thread]++;
+                next[numberOfThreads] = operation.isPresentAfter(present) ? 1 : 0;
+                pending.push(next);
+            }
+        }
+        return false;
+    }
+
+    private static final class Operation {
+        static final int INSERT = 0;
+        static final int DELETE = 1;
+        static final int CONTAINS = 2;
+
+        final int item;
+        final int kind;
+        final boolean result;
+        final long invoked;
+        final long responded;
+
+        Operation(int item, int kind, boolean result, long invoked, long responded) {
+            this.item = item;
+            this.kind = kind;
+            this.result = result;
+            this.invoked = invoked;
+            this.responded = responded;
+        }
+
+        boolean isAllowedWhen(boolean present) {
+            return result == ((kind == INSERT) != present);
+        }
+
+        boolean isPresentAfter(boolean present) {
+            return (kind == INSERT) || (kind == CONTAINS && present);
+        }
+    }
+}
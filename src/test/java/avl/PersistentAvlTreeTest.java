@@ -0,0 +1,146 @@
+package avl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Given a persistent AVL tree")
+class PersistentAvlTreeTest {
+
+    private PersistentAvlTree<Integer> emptyTree;
+
+    @BeforeEach
+    public void setUp() {
+        emptyTree = new PersistentAvlTree<>(Comparator.comparingInt((Integer o) -> o));
+    }
+
+    @Test
+    @DisplayName("When created, the tree is empty")
+    void avlIsEmptyWhenCreated() {
+        assertThat(emptyTree.avlIsEmpty()).isTrue();
+        assertThat(emptyTree.size()).isZero();
+        assertThat(emptyTree.search(1)).isNull();
+    }
+
+    @Test
+    @DisplayName("When inserting a null item, throws exception")
+    void insert_WhenItemIsNull_ThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> emptyTree.insert(null));
+    }
+
+    @Nested
+    @DisplayName("When a new version is created")
+    class versions {
+
+        @Test
+        @DisplayName("by inserting (7, 4, 3, 2, 1), then it is rebalanced")
+        void newVersionIsRebalanced() {
+            PersistentAvlTree<Integer> avlTree = emptyTree;
+            for (int item : new int[]{7, 4, 3, 2, 1}) {
+                avlTree = avlTree.insert(item);
+            }
+
+            assertThat(avlTree.getTop().getItem()).isEqualTo(4);
+            assertThat(avlTree.getTop().getLeft().getItem()).isEqualTo(2);
+            assertThat(avlTree.getTop().getRight().getItem()).isEqualTo(7);
+            assertThat(avlTree.getTop().getHeight()).isEqualTo(2);
+            assertThat(avlTree).containsExactly(1, 2, 3, 4, 7);
+        }
+
+        @Test
+        @DisplayName("then the previous version is unchanged")
+        void previousVersionIsUnchanged() {
+            PersistentAvlTree<Integer> snapshot = emptyTree.insert(2).insert(1).insert(3);
+
+            PersistentAvlTree<Integer> avlTree = snapshot.insert(4).delete(1);
+
+            assertThat(snapshot).containsExactly(1, 2, 3);
+            assertThat(avlTree).containsExactly(2, 3, 4);
+            assertThat(emptyTree.avlIsEmpty()).isTrue();
+        }
+
+        @Test
+        @DisplayName("then nodes off the modified path are shared")
+        void nodesOffThePathAreShared() {
+            PersistentAvlTree<Integer> snapshot = emptyTree;
+            for (int item = 1; item <= 15; item++) {
+                snapshot = snapshot.insert(item);
+            }
+
+            PersistentAvlTree<Integer> avlTree = snapshot.insert(16);
+
+            assertThat(avlTree.getTop()).isNotSameAs(snapshot.getTop());
+            assertThat(avlTree.getTop().getLeft()).isSameAs(snapshot.getTop().getLeft());
+        }
+
+        @Test
+        @DisplayName("with an item already present or a missing one, then the same tree is returned")
+        void unchangedTreeIsReturned() {
+            PersistentAvlTree<Integer> avlTree = emptyTree.insert(5);
+
+            assertThat(avlTree.insert(5)).isSameAs(avlTree);
+            assertThat(avlTree.delete(6)).isSameAs(avlTree);
+        }
+    }
+
+    @Test
+    @DisplayName("Every version matches a TreeSet after random insertions and deletions")
+    void versionsMatchTreeSetAfterRandomWorkload() {
+        Random random = new Random(1);
+        List<PersistentAvlTree<Integer>> versions = new ArrayList<>();
+        List<List<Integer>> expectedVersions = new ArrayList<>();
+
+        PersistentAvlTree<Integer> avlTree = emptyTree;
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            int item = random.nextInt(1_000);
+            if (random.nextBoolean()) {
+                avlTree = avlTree.insert(item);
+                expected.add(item);
+            } else {
+                avlTree = avlTree.delete(item);
+                expected.remove(item);
+            }
+            if (i % 1_000 == 0) {
+                versions.add(avlTree);
+                expectedVersions.add(new ArrayList<>(expected));
+            }
+        }
+
+        for (int i = 0; i < versions.size(); i++) {
+            checkSubtree(versions.get(i).getTop());
+            assertThat(versions.get(i)).containsExactlyElementsOf(expectedVersions.get(i));
+            assertThat(versions.get(i).size()).isEqualTo(expectedVersions.get(i).size());
+        }
+        for (int item = 0; item < 1_000; item++) {
+            assertThat(avlTree.contains(item)).isEqualTo(expected.contains(item));
+        }
+    }
+
+    private int checkSubtree(PersistentAvlNode<Integer> node) {
+        if (node == null) {
+            return -1;
+        }
+        int leftHeight = checkSubtree(node.getLeft());
+        int rightHeight = checkSubtree(node.getRight());
+        if (node.hasLeft()) {
+            assertThat(node.getLeft().getItem()).isLessThan(node.getItem());
+        }
+        if (node.hasRight()) {
+            assertThat(node.getRight().getItem()).isGreaterThan(node.getItem());
+        }
+        assertThat(node.getHeight()).isEqualTo(1 + Math.max(leftHeight, rightHeight));
+        assertThat(Math.abs(rightHeight - leftHeight)).isLessThanOrEqualTo(1);
+        return node.getHeight();
+    }
+}
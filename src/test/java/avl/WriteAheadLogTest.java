@@ -0,0 +1,180 @@
+package avl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Given a write-ahead log")
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("When records are appended before a sync, then one sync makes all of them durable")
+    void appendedRecordsShareOneSync() throws IOException {
+        Path path = directory.resolve("tree.log");
+        try (WriteAheadLog<Integer> log = WriteAheadLog.open(path, ItemCodec.integers())) {
+            long first = log.logInsert(1);
+            log.logInsert(2);
+            long last = log.logDelete(1);
+
+            log.sync(last);
+            log.sync(first);
+
+            assertThat(log.getSyncCount()).isEqualTo(1);
+        }
+
+        // header, one frame header and three records of an operation byte and an int
+        assertThat(Files.size(path)).isEqualTo(WriteAheadLog.HEADER_SIZE + 8 + 3 * 5);
+        AvlTree<Integer> tree = AvlTree.naturalOrder();
+        assertThat(WriteAheadLog.replay(path, ItemCodec.integers(), tree)).isEqualTo(3);
+        assertThat(tree).containsExactly(2);
+    }
+
+    @Test
+    @DisplayName("When items have variable size, then replay restores them")
+    void variableSizeItemsAreReplayed() throws IOException {
+        Path path = directory.resolve("tree.log");
+        try (WriteAheadLog<String> log = WriteAheadLog.open(path, ItemCodec.strings())) {
+            log.logInsert("árbol");
+            log.sync(log.logInsert(""));
+            log.logInsert("x".repeat(100_000));
+        }
+
+        AvlTree<String> tree = AvlTree.naturalOrder();
+        assertThat(WriteAheadLog.replay(path, ItemCodec.strings(), tree)).isEqualTo(3);
+        assertThat(tree).containsExactly("", "x".repeat(100_000), "árbol");
+    }
+
+    @Test
+    @DisplayName("When the last frame is torn, then replay stops before it and open cuts it off")
+    void tornFrameIsIgnored() throws IOException {
+        Path path = directory.resolve("tree.log");
+        try (WriteAheadLog<Integer> log = WriteAheadLog.open(path, ItemCodec.integers())) {
+            log.sync(log.logInsert(1));
+            log.sync(log.logInsert(2));
+        }
+        long completeSize = Files.size(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(completeSize - 1);
+        }
+
+        AvlTree<Integer> tree = AvlTree.naturalOrder();
+        assertThat(WriteAheadLog.replay(path, ItemCodec.integers(), tree)).isEqualTo(1);
+        assertThat(tree).containsExactly(1);
+
+        try (WriteAheadLog<Integer> log = WriteAheadLog.open(path, ItemCodec.integers())) {
+            log.logInsert(3);
+        }
+        AvlTree<Integer> reopenedTree = AvlTree.naturalOrder();
+        assertThat(WriteAheadLog.replay(path, ItemCodec.integers(), reopenedTree)).isEqualTo(2);
+        assertThat(reopenedTree).containsExactly(1, 3);
+    }
+
+    @Test
+    @DisplayName("When a record is corrupted, then replay stops at its frame")
+    void corruptFrameIsIgnored() throws IOException {
+        Path path = directory.resolve("tree.log");
+        try (WriteAheadLog<Integer> log = WriteAheadLog.open(path, ItemCodec.integers())) {
+            log.sync(log.logInsert(1));
+            log.sync(log.logInsert(2));
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{7}), Files.size(path) - 1);
+        }
+
+        AvlTree<Integer> tree = AvlTree.naturalOrder();
+        assertThat(WriteAheadLog.replay(path, ItemCodec.integers(), tree)).isEqualTo(1);
+        assertThat(tree).containsExactly(1);
+    }
+
+    @Test
+    @DisplayName("When the log is truncated, then its records are dropped and the new generation is kept")
+    void truncateStartsANewGeneration() throws IOException {
+        Path path = directory.resolve("tree.log");
+        try (WriteAheadLog<Integer> log = WriteAheadLog.open(path, ItemCodec.integers())) {
+            log.sync(log.logInsert(1));
+            long pending = log.logInsert(2);
+
+            log.truncate(3);
+            log.sync(pending);
+
+            assertThat(log.getGeneration()).isEqualTo(3);
+            assertThat(log.getSyncCount()).isEqualTo(1);
+            assertThrows(IllegalArgumentException.class, () -> log.truncate(3));
+            log.logInsert(4);
+        }
+
+        try (WriteAheadLog<Integer> log = WriteAheadLog.open(path, ItemCodec.integers())) {
+            assertThat(log.getGeneration()).isEqualTo(3);
+        }
+        AvlTree<Integer> tree = AvlTree.naturalOrder();
+        assertThat(WriteAheadLog.replay(path, ItemCodec.integers(), tree)).isEqualTo(1);
+        assertThat(tree).containsExactly(4);
+    }
+
+    @Test
+    @DisplayName("When a crash left the header incomplete, then open starts an empty log")
+    void incompleteHeaderIsRewritten() throws IOException {
+        Path path = directory.resolve("tree.log");
+        Files.write(path, new byte[]{0x41, 0x56});
+
+        try (WriteAheadLog<Integer> log = WriteAheadLog.open(path, ItemCodec.integers())) {
+            assertThat(log.getGeneration()).isZero();
+        }
+        assertThat(Files.size(path)).isEqualTo(WriteAheadLog.HEADER_SIZE);
+    }
+
+    @Test
+    @DisplayName("When the length of a record is corrupted in a frame with a valid checksum, replay throws exception")
+    void replay_WhenRecordLengthIsCorrupt_ThrowsException() throws IOException {
+        Path path = directory.resolve("tree.log");
+        WriteAheadLog.open(path, ItemCodec.strings()).close();
+        ByteBuffer records = ByteBuffer.allocate(5).put(WriteAheadLog.INSERT).putInt(Integer.MAX_VALUE);
+        records.flip();
+        CRC32C checksum = new CRC32C();
+        checksum.update(records.duplicate());
+        ByteBuffer frameHeader = ByteBuffer.allocate(8).putInt(5).putInt((int) checksum.getValue());
+        frameHeader.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.APPEND)) {
+            channel.write(new ByteBuffer[]{frameHeader, records});
+        }
+
+        IOException exception = assertThrows(IOException.class,
+                () -> WriteAheadLog.replay(path, ItemCodec.strings(), AvlTree.naturalOrder()));
+        assertThat(exception).hasMessageContaining("item of " + Integer.MAX_VALUE + " bytes");
+    }
+
+    @Test
+    @DisplayName("When the file is not a log, opening or replaying it throws exception")
+    void open_WhenFileIsNotALog_ThrowsException() throws IOException {
+        Path path = directory.resolve("other");
+        Files.write(path, new byte[64]);
+
+        assertThrows(IOException.class, () -> WriteAheadLog.open(path, ItemCodec.integers()));
+        assertThrows(IOException.class,
+                () -> WriteAheadLog.replay(path, ItemCodec.integers(), AvlTree.naturalOrder()));
+    }
+
+    @Test
+    @DisplayName("When the log is closed, appending throws exception")
+    void append_WhenLogIsClosed_ThrowsException() throws IOException {
+        WriteAheadLog<Integer> log = WriteAheadLog.open(directory.resolve("tree.log"),
+                ItemCodec.integers());
+        log.close();
+
+        assertThrows(IllegalStateException.class, () -> log.logInsert(1));
+    }
+}